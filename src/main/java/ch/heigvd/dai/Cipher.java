@@ -5,13 +5,19 @@
  */
 package ch.heigvd.dai;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
-import javax.crypto.SecretKeyFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.PBEParameterSpec;
 
 public class Cipher {
 
@@ -20,25 +26,89 @@ public class Cipher {
     (byte) 0x52, (byte) 0x3e, (byte) 0xea, (byte) 0xf2
   };
 
+  private static final byte VERSION = 0x01;
+  private static final int SALT_LENGTH = 16;
+  private static final int IV_LENGTH = 12;
+  private static final int HEADER_LENGTH = 1 + SALT_LENGTH + IV_LENGTH;
+  private static final int TAG_BITS = 128;
+  private static final int KEY_BITS = 256;
+  private static final int LEGACY_BLOCK = 16;
+  private static final int LEGACY_KEY_BITS = 128;
+  private static KeyCache keys = new KeyCache(0);
+
+  /**
+   * Sets the cache of the keys derived from encryption passwords.
+   *
+   * @param keyCache The {@link KeyCache} to use.
+   */
+  public static void setKeyCache(KeyCache keyCache) {
+    keys = keyCache;
+  }
+
+  /**
+   * Wipes the keys derived from encryption passwords, when a session ends. Best-effort: copies made
+   * by the cipher provider are not reached.
+   */
+  public static void clearKeys() {
+    keys.clear();
+  }
+
+  /**
+   * Decrypts a batch of Base64-encoded, encrypted strings sharing the same password. The key of
+   * each salt is derived at most once for the whole batch.
+   *
+   * @param contents The encrypted contents to decrypt, encoded in Base64.
+   * @param password The password used for decryption.
+   * @return The decrypted contents, in the same order.
+   * @throws IllegalArgumentException If one of the provided contents is invalid.
+   * @throws GeneralSecurityException If a security error occurs during decryption.
+   */
+  public static List<String> decrypt(List<String> contents, String password)
+      throws IllegalArgumentException, GeneralSecurityException {
+    Map<ByteBuffer, SecretKey> derived = new HashMap<>();
+    List<String> decrypted = new ArrayList<>(contents.size());
+    for (String content : contents) {
+      byte[] combined = Base64.getDecoder().decode(content);
+      byte[] decryptedBytes = open(combined, 0, combined.length, password, derived);
+      decrypted.add(new String(decryptedBytes, StandardCharsets.UTF_8));
+    }
+
+    return decrypted;
+  }
+
   /**
-   * Initializes a cipher for encryption or decryption using password-based encryption (PBE).
+   * Encrypts a batch of strings sharing the same password with AES-GCM. The key is derived once for
+   * the whole batch, or reused from the previous operations of the session, and each entry gets its
+   * own random IV.
    *
-   * @param password The password used to derive the encryption key.
-   * @param opmode The cipher operation mode (e.g., {@code Cipher.ENCRYPT_MODE}).
-   * @param ivParameterSpec The initialization vector (IV) specification.
-   * @return The initialized {@link javax.crypto.Cipher} object.
-   * @throws GeneralSecurityException If an error occurs during initialization.
+   * @param contents The plain text contents to encrypt.
+   * @param password The password used for encryption.
+   * @return The encrypted contents, encoded in Base64, in the same order.
+   * @throws GeneralSecurityException If a security error occurs during encryption.
    */
-  private static javax.crypto.Cipher initPBECipher(
-      String password, int opmode, IvParameterSpec ivParameterSpec)
+  public static List<String> encrypt(List<String> contents, String password)
       throws GeneralSecurityException {
-    PBEParameterSpec pbeParameterSpec = new PBEParameterSpec(SALT, 100_000, ivParameterSpec);
-    PBEKeySpec pbeKeySpec = new PBEKeySpec(password.toCharArray());
-    Key key =
-        SecretKeyFactory.getInstance("PBEWithHmacSHA256AndAES_128").generateSecret(pbeKeySpec);
-    javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance("PBEWithHmacSHA256AndAES_128");
-    cipher.init(opmode, key, pbeParameterSpec);
-    return cipher;
+    KeyCache.EncryptionKey key = keys.forEncryption(password, SALT_LENGTH, KEY_BITS);
+
+    List<String> encrypted = new ArrayList<>(contents.size());
+    for (String content : contents) {
+      byte[] plaintext = content.getBytes(StandardCharsets.UTF_8);
+      byte[] combined = new byte[encryptedLength(plaintext.length)];
+      seal(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(combined), key);
+      encrypted.add(Base64.getEncoder().encodeToString(combined));
+    }
+
+    return encrypted;
+  }
+
+  /**
+   * Computes the length of the encrypted form of a content.
+   *
+   * @param length The length of the plain content.
+   * @return The length of the version byte, salt, IV, ciphertext and tag.
+   */
+  public static int encryptedLength(int length) {
+    return HEADER_LENGTH + length + TAG_BITS / 8;
   }
 
   /**
@@ -52,20 +122,7 @@ public class Cipher {
    */
   public static String decrypt(String content, String password)
       throws IllegalArgumentException, GeneralSecurityException {
-    byte[] combined = Base64.getDecoder().decode(content);
-
-    byte[] iv = new byte[16];
-    if (combined.length < iv.length) throw new IllegalArgumentException();
-    System.arraycopy(combined, 0, iv, 0, iv.length);
-    IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-    javax.crypto.Cipher cipher =
-        initPBECipher(password, javax.crypto.Cipher.DECRYPT_MODE, ivParameterSpec);
-
-    byte[] ciphertext = new byte[combined.length - iv.length];
-    System.arraycopy(combined, iv.length, ciphertext, 0, ciphertext.length);
-    byte[] decryptedBytes = cipher.doFinal(ciphertext);
-
-    return new String(decryptedBytes, StandardCharsets.UTF_8);
+    return decrypt(List.of(content), password).getFirst();
   }
 
   /**
@@ -78,19 +135,7 @@ public class Cipher {
    * @throws GeneralSecurityException If a security error occurs during encryption.
    */
   public static String encrypt(String content, String password) throws GeneralSecurityException {
-    byte[] iv = new byte[16];
-    SecureRandom secureRandom = new SecureRandom();
-    secureRandom.nextBytes(iv);
-    IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-    javax.crypto.Cipher cipher =
-        initPBECipher(password, javax.crypto.Cipher.ENCRYPT_MODE, ivParameterSpec);
-    byte[] ciphertext = cipher.doFinal(content.getBytes(StandardCharsets.UTF_8));
-
-    byte[] combined = new byte[iv.length + ciphertext.length];
-    System.arraycopy(iv, 0, combined, 0, iv.length);
-    System.arraycopy(ciphertext, 0, combined, iv.length, ciphertext.length);
-
-    return Base64.getEncoder().encodeToString(combined);
+    return encrypt(List.of(content), password).getFirst();
   }
 
   /**
@@ -98,14 +143,102 @@ public class Cipher {
    *
    * @param toHash The string to hash.
    * @return The hashed string.
-   * @throws GeneralSecurityException If a security error occurs during hashing.
    */
-  public static String hash(String toHash) throws GeneralSecurityException {
-    MessageDigest md = MessageDigest.getInstance("SHA-512");
+  public static String hash(String toHash) {
+    MessageDigest md = CryptoEngine.sha512();
     md.update(SALT);
 
     byte[] hashedPassword = md.digest(toHash.getBytes(StandardCharsets.UTF_8));
 
     return new String(hashedPassword, StandardCharsets.UTF_8);
   }
+
+  /**
+   * Encrypts a content with AES-GCM under a derived key, using the cipher of the calling thread.
+   *
+   * @param content The plain content, consumed.
+   * @param output The buffer receiving the version byte, salt, IV, ciphertext and tag.
+   * @param key The key and its salt.
+   * @throws GeneralSecurityException If a security error occurs during encryption.
+   */
+  private static void seal(ByteBuffer content, ByteBuffer output, KeyCache.EncryptionKey key)
+      throws GeneralSecurityException {
+    byte[] header = new byte[HEADER_LENGTH];
+    header[0] = VERSION;
+    System.arraycopy(key.salt(), 0, header, 1, SALT_LENGTH);
+    byte[] iv = CryptoEngine.randomBytes(IV_LENGTH);
+    System.arraycopy(iv, 0, header, 1 + SALT_LENGTH, IV_LENGTH);
+
+    javax.crypto.Cipher cipher = CryptoEngine.aesGcm();
+    cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, key.key(), new GCMParameterSpec(TAG_BITS, iv));
+    cipher.updateAAD(header, 0, 1 + SALT_LENGTH);
+    output.put(header);
+    cipher.doFinal(content, output);
+  }
+
+  /**
+   * Decrypts a content, using the ciphers of the calling thread.
+   *
+   * <p>Contents starting with {@link #VERSION} hold a salt, an IV and an AES-GCM ciphertext. Older
+   * contents hold an IV and an AES-CBC ciphertext, under a key derived with the fixed salt, as
+   * written by {@code PBEWithHmacSHA256AndAES_128}. Their first byte is random, so a version byte
+   * whose ciphertext fails to authenticate falls back to the older format.
+   *
+   * @param combined The array holding the encrypted content.
+   * @param offset The offset of the content in the array.
+   * @param length The length of the content.
+   * @param password The password used for decryption.
+   * @param derived The keys already derived by the operation, by salt.
+   * @return The decrypted bytes.
+   * @throws IllegalArgumentException If the content is invalid.
+   * @throws GeneralSecurityException If a security error occurs during decryption.
+   */
+  private static byte[] open(
+      byte[] combined, int offset, int length, String password, Map<ByteBuffer, SecretKey> derived)
+      throws IllegalArgumentException, GeneralSecurityException {
+    if (length >= HEADER_LENGTH + TAG_BITS / 8 && combined[offset] == VERSION) {
+      byte[] salt = Arrays.copyOfRange(combined, offset + 1, offset + 1 + SALT_LENGTH);
+      javax.crypto.Cipher gcm = CryptoEngine.aesGcm();
+      gcm.init(
+          javax.crypto.Cipher.DECRYPT_MODE,
+          key(password, salt, KEY_BITS, derived),
+          new GCMParameterSpec(TAG_BITS, combined, offset + 1 + SALT_LENGTH, IV_LENGTH));
+      gcm.updateAAD(combined, offset, 1 + SALT_LENGTH);
+      try {
+        return gcm.doFinal(combined, offset + HEADER_LENGTH, length - HEADER_LENGTH);
+      } catch (AEADBadTagException e) {
+        if (length % LEGACY_BLOCK != 0) throw e;
+      }
+    }
+
+    if (length < LEGACY_BLOCK) throw new IllegalArgumentException();
+    javax.crypto.Cipher cbc = CryptoEngine.aesCbc();
+    cbc.init(
+        javax.crypto.Cipher.DECRYPT_MODE,
+        key(password, SALT, LEGACY_KEY_BITS, derived),
+        new IvParameterSpec(combined, offset, LEGACY_BLOCK));
+    return cbc.doFinal(combined, offset + LEGACY_BLOCK, length - LEGACY_BLOCK);
+  }
+
+  /**
+   * Retrieves the key of a salt, derived once per operation even when keys are not cached.
+   *
+   * @param password The password used for decryption.
+   * @param salt The salt of the key.
+   * @param bits The length of the key in bits.
+   * @param derived The keys already derived by the operation, by salt.
+   * @return The derived AES key.
+   * @throws GeneralSecurityException If the key cannot be derived.
+   */
+  private static SecretKey key(
+      String password, byte[] salt, int bits, Map<ByteBuffer, SecretKey> derived)
+      throws GeneralSecurityException {
+    ByteBuffer id = ByteBuffer.wrap(salt);
+    SecretKey key = derived.get(id);
+    if (key == null) {
+      key = keys.get(password, salt, bits);
+      derived.put(id, key);
+    }
+    return key;
+  }
 }
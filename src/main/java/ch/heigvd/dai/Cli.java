@@ -13,6 +13,8 @@
 package ch.heigvd.dai;
 
 import ch.heigvd.dai.client.Client;
+import ch.heigvd.dai.server.Migrate;
+import ch.heigvd.dai.server.Rebalance;
 import ch.heigvd.dai.server.Server;
 import picocli.CommandLine;
 
@@ -45,6 +47,8 @@ import picocli.CommandLine;
     subcommands = {
       Client.class,
       Server.class,
+      Migrate.class,
+      Rebalance.class,
     },
     scope = CommandLine.ScopeType.INHERIT,
     mixinStandardHelpOptions = true)
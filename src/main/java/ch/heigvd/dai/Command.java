@@ -1,18 +1,44 @@
 /**
  * The {@code Command} class represents a command sent between the client and server in the
  * pass-secure system. It supports parsing, encryption, decryption, and retrieval of arguments.
+ *
+ * <p>Commands travel either as UTF-8 text lines or, once negotiated with {@code HELLO}, as binary
+ * frames: an opcode byte, a varint argument count, then for each argument a varint-length name, a
+ * value kind byte and a varint-length value. Ciphertexts are sent as raw bytes instead of Base64.
  */
 package ch.heigvd.dai;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Command {
 
+  /** The maximum length of a binary frame, or of a request buffered by the server. */
+  public static final int MAX_FRAME_LENGTH = 4 * 1024 * 1024;
+
   private static final String ENCRYPTION_PASSWORD_ARGUMENT = "encryptionPassword";
   private static final String DECRYPTION_PASSWORD_ARGUMENT = "decryptionPassword";
   private static final String PASSWORD_ARGUMENT = "password";
+  private static final String ENTRIES_ARGUMENT = "entries";
+  private static final String LIST_SEPARATOR = ",";
+  private static final String ENTRY_SEPARATOR = ":";
+  private static final int MAX_FIELD_LENGTH = 1024 * 1024;
+  private static final int MAX_ARGUMENTS = 32;
+  private static final int TEXT_VALUE = 0;
+  private static final int BASE64_VALUE = 1;
 
   private final Type type;
   private final HashMap<String, String> arguments;
@@ -39,23 +65,46 @@ public class Command {
 
   /** Represents the different types of commands supported. */
   public enum Type {
-    PING("PING"),
-    REGISTER("REGISTER"),
-    LOGIN("LOGIN"),
-    ADD("ADD"),
-    GENERATE("GENERATE"),
-    GET("GET"),
-    REMOVE("REMOVE"),
-    DISCONNECT("DISCONNECT"),
-    QUIT("QUIT"),
-    OK("OK"),
-    NOK("NOK"),
-    HELP("HELP");
+    PING("PING", 0x01),
+    REGISTER("REGISTER", 0x02),
+    LOGIN("LOGIN", 0x03),
+    ADD("ADD", 0x04),
+    GENERATE("GENERATE", 0x05),
+    GET("GET", 0x06),
+    REMOVE("REMOVE", 0x07),
+    DISCONNECT("DISCONNECT", 0x08),
+    QUIT("QUIT", 0x09),
+    OK("OK", 0x0A),
+    NOK("NOK", 0x0B),
+    HELP("HELP", 0x0C),
+    HELLO("HELLO", 0x0D),
+    MGET("MGET", 0x0E),
+    MADD("MADD", 0x0F),
+    LIST("LIST", 0x10),
+    STATS("STATS", 0x11),
+    SYNC("SYNC", 0x12),
+    SNAPSHOT("SNAPSHOT", 0x13),
+    REPLICATE("REPLICATE", 0x14);
 
     private final String type;
+    private final int opcode;
 
-    Type(String type) {
+    Type(String type, int opcode) {
       this.type = type;
+      this.opcode = opcode;
+    }
+
+    /**
+     * Retrieves the type matching a binary frame opcode.
+     *
+     * @param opcode The opcode read from a frame.
+     * @return The matching {@link Type}, or null if the opcode is unknown.
+     */
+    public static Type fromOpcode(int opcode) {
+      for (Type type : values()) {
+        if (type.opcode == opcode) return type;
+      }
+      return null;
     }
 
     @Override
@@ -64,6 +113,49 @@ public class Command {
     }
   }
 
+  /** Represents the wire formats a connection can use, negotiated with {@code HELLO}. */
+  public enum Protocol {
+    TEXT("text"),
+    BINARY("binary");
+
+    private final String protocol;
+
+    Protocol(String protocol) {
+      this.protocol = protocol;
+    }
+
+    /**
+     * Retrieves the protocol matching a name.
+     *
+     * @param name The name of the protocol.
+     * @return The matching {@link Protocol}, or null if the name is unknown.
+     */
+    public static Protocol fromName(String name) {
+      for (Protocol protocol : values()) {
+        if (protocol.protocol.equals(name)) return protocol;
+      }
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return protocol;
+    }
+  }
+
+  /** A source of bytes for the frame decoder. */
+  @FunctionalInterface
+  private interface ByteSource {
+
+    /**
+     * Reads the next byte.
+     *
+     * @return The byte read, as an unsigned value.
+     * @throws IOException If no byte is available.
+     */
+    int read() throws IOException;
+  }
+
   /**
    * Parses a command string and returns the corresponding {@code Command} object.
    *
@@ -106,15 +198,31 @@ public class Command {
    * @throws PassSecureException If encryption fails or required arguments are missing.
    */
   public void encrypt() throws PassSecureException {
-    if (!arguments.containsKey(ENCRYPTION_PASSWORD_ARGUMENT)
-        || !arguments.containsKey(PASSWORD_ARGUMENT)) return;
+    if (!arguments.containsKey(ENCRYPTION_PASSWORD_ARGUMENT)) return;
 
     String encryptionPassword = arguments.get(ENCRYPTION_PASSWORD_ARGUMENT);
-    String password = arguments.get(PASSWORD_ARGUMENT);
 
     try {
-      String encryptedPassword = Cipher.encrypt(password, encryptionPassword);
-      arguments.replace(PASSWORD_ARGUMENT, encryptedPassword);
+      if (arguments.containsKey(PASSWORD_ARGUMENT)) {
+        String password = arguments.get(PASSWORD_ARGUMENT);
+        String encryptedPassword = Cipher.encrypt(password, encryptionPassword);
+        arguments.replace(PASSWORD_ARGUMENT, encryptedPassword);
+      }
+
+      if (arguments.containsKey(ENTRIES_ARGUMENT)) {
+        // Encrypt the values of a batch together, the key is derived once
+        Map<String, String> entries = getEntries(ENTRIES_ARGUMENT);
+        List<String> encrypted =
+            Cipher.encrypt(new ArrayList<>(entries.values()), encryptionPassword);
+
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        for (String name : entries.keySet()) {
+          if (i > 0) sb.append(LIST_SEPARATOR);
+          sb.append(name).append(ENTRY_SEPARATOR).append(encrypted.get(i++));
+        }
+        arguments.replace(ENTRIES_ARGUMENT, sb.toString());
+      }
     } catch (GeneralSecurityException e) {
       throw new PassSecureException(PassSecureException.Type.CIPHER_ERROR);
     }
@@ -139,6 +247,61 @@ public class Command {
     }
   }
 
+  /**
+   * Decrypts a batch of passwords using the decryption password argument, if present. The key is
+   * derived once for the whole batch.
+   *
+   * @param passwords The encrypted passwords to decrypt.
+   * @return The decrypted passwords, in the same order.
+   * @throws PassSecureException If decryption fails.
+   */
+  public List<String> decrypt(List<String> passwords) throws PassSecureException {
+    if (!arguments.containsKey(DECRYPTION_PASSWORD_ARGUMENT) || passwords.isEmpty())
+      return passwords;
+
+    String decryptionPassword = arguments.get(DECRYPTION_PASSWORD_ARGUMENT);
+
+    try {
+      return Cipher.decrypt(passwords, decryptionPassword);
+    } catch (IllegalArgumentException | GeneralSecurityException e) {
+      throw new PassSecureException(PassSecureException.Type.CIPHER_ERROR);
+    }
+  }
+
+  /**
+   * Retrieves a comma separated list argument by name. Empty items are ignored.
+   *
+   * @param name The name of the argument.
+   * @return The items of the list, or an empty list if not found.
+   */
+  public List<String> getList(String name) {
+    String value = arguments.get(name);
+    List<String> items = new ArrayList<>();
+    if (value == null) return items;
+
+    for (String item : value.split(LIST_SEPARATOR)) {
+      if (!item.isEmpty()) items.add(item);
+    }
+    return items;
+  }
+
+  /**
+   * Retrieves a list of {@code name:value} pairs by name. Each pair is split on its first colon,
+   * pairs without a name or a value are ignored.
+   *
+   * @param name The name of the argument.
+   * @return The pairs in their original order, or an empty map if not found.
+   */
+  public LinkedHashMap<String, String> getEntries(String name) {
+    LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+    for (String item : getList(name)) {
+      int separator = item.indexOf(ENTRY_SEPARATOR);
+      if (separator <= 0 || separator == item.length() - 1) continue;
+      entries.put(item.substring(0, separator), item.substring(separator + 1));
+    }
+    return entries;
+  }
+
   /**
    * Retrieves an integer argument by name. Returns 0 if the argument is missing or invalid.
    *
@@ -156,6 +319,23 @@ public class Command {
     }
   }
 
+  /**
+   * Retrieves a long argument by name. Returns 0 if the argument is missing or invalid.
+   *
+   * @param name The name of the argument.
+   * @return The long value of the argument, or 0 if not found or invalid.
+   */
+  public long getLong(String name) {
+    String value = arguments.get(name);
+    if (value == null) return 0;
+
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
   /**
    * Retrieves a boolean argument by name. Returns false if the argument is missing or invalid.
    *
@@ -207,8 +387,7 @@ public class Command {
     StringBuilder sb = new StringBuilder();
     sb.append(type);
     for (Map.Entry<String, String> entry : arguments.entrySet()) {
-      if (entry.getKey().equals(ENCRYPTION_PASSWORD_ARGUMENT)
-          || entry.getKey().equals(DECRYPTION_PASSWORD_ARGUMENT)) continue;
+      if (isLocalArgument(entry.getKey())) continue;
 
       sb.append(" --");
       sb.append(entry.getKey());
@@ -219,6 +398,237 @@ public class Command {
     return sb.toString();
   }
 
+  /**
+   * Writes the command to a stream using the given protocol, without flushing.
+   *
+   * @param out The {@link OutputStream} to write to.
+   * @param protocol The {@link Protocol} of the connection.
+   * @throws IOException If an I/O error occurs while writing.
+   */
+  public void write(OutputStream out, Protocol protocol) throws IOException {
+    if (protocol == Protocol.TEXT) {
+      out.write((this + "\n").getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+
+    int count = 0;
+    for (String key : arguments.keySet()) {
+      if (!isLocalArgument(key)) ++count;
+    }
+
+    out.write(type.opcode);
+    writeVarint(out, count);
+    for (Map.Entry<String, String> entry : arguments.entrySet()) {
+      if (isLocalArgument(entry.getKey())) continue;
+
+      writeField(out, entry.getKey().getBytes(StandardCharsets.UTF_8));
+      byte[] raw = entry.getKey().equals(PASSWORD_ARGUMENT) ? decodeBase64(entry.getValue()) : null;
+      out.write(raw == null ? TEXT_VALUE : BASE64_VALUE);
+      writeField(out, raw == null ? entry.getValue().getBytes(StandardCharsets.UTF_8) : raw);
+    }
+  }
+
+  /**
+   * Reads the next command from a stream using the given protocol.
+   *
+   * @param in The {@link InputStream} to read from.
+   * @param protocol The {@link Protocol} of the connection.
+   * @return The command read, or null if the stream ended.
+   * @throws IOException If an I/O error occurs or the stream ends within a frame.
+   * @throws PassSecureException If the command is invalid.
+   */
+  public static Command read(InputStream in, Protocol protocol)
+      throws IOException, PassSecureException {
+    if (protocol == Protocol.TEXT) {
+      String line = readLine(in);
+      return line == null ? null : parse(line);
+    }
+
+    int opcode = in.read();
+    if (opcode == -1) return null;
+
+    return decodeFrame(
+        opcode,
+        () -> {
+          int value = in.read();
+          if (value == -1) throw new EOFException();
+          return value;
+        });
+  }
+
+  /**
+   * Decodes the next binary frame of a buffer. If the buffer does not hold a complete frame, its
+   * position is left untouched so that decoding can be retried once more bytes are available.
+   *
+   * @param buffer The {@link ByteBuffer} to decode, in read mode.
+   * @return The decoded command, or null if the frame is incomplete.
+   * @throws IOException If the frame is malformed.
+   * @throws PassSecureException If the command is invalid.
+   */
+  public static Command decode(ByteBuffer buffer) throws IOException, PassSecureException {
+    int start = buffer.position();
+    try {
+      return decodeFrame(buffer.get() & 0xFF, () -> buffer.get() & 0xFF);
+    } catch (BufferUnderflowException e) {
+      buffer.position(start);
+      return null;
+    }
+  }
+
+  /**
+   * Reads a UTF-8 line terminated by {@code \n} from a byte stream. A trailing {@code \r} is
+   * removed. Reading bytes directly, rather than through a {@link java.io.Reader}, leaves the
+   * stream positioned right after the line so that binary frames can follow.
+   *
+   * @param in The {@link InputStream} to read from.
+   * @return The line read, or null if the stream ended before any byte.
+   * @throws IOException If an I/O error occurs or the line is too long.
+   */
+  public static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int value;
+    while ((value = in.read()) != '\n') {
+      if (value == -1) {
+        if (line.size() == 0) return null;
+        break;
+      }
+      if (line.size() >= MAX_FIELD_LENGTH) throw new IOException("Line too long");
+      line.write(value);
+    }
+
+    String result = line.toString(StandardCharsets.UTF_8);
+    return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+  }
+
+  /**
+   * Decodes the remainder of a binary frame once its opcode is known.
+   *
+   * @param opcode The opcode of the frame.
+   * @param source The {@link ByteSource} providing the rest of the frame.
+   * @return The decoded command.
+   * @throws IOException If the frame is malformed, has too many arguments or is too long.
+   * @throws PassSecureException If the opcode is unknown.
+   */
+  private static Command decodeFrame(int opcode, ByteSource source)
+      throws IOException, PassSecureException {
+    // The opcode is the first byte of the frame
+    int[] length = {1};
+    ByteSource in =
+        () -> {
+          if (++length[0] > MAX_FRAME_LENGTH) throw new IOException("Frame too long");
+          return source.read();
+        };
+
+    HashMap<String, String> arguments = new HashMap<>();
+    int count = readVarint(in);
+    if (count < 0 || count > MAX_ARGUMENTS) throw new IOException("Too many arguments");
+    for (int i = 0; i < count; ++i) {
+      String name = new String(readField(in), StandardCharsets.UTF_8);
+      int kind = in.read();
+      byte[] value = readField(in);
+      arguments.put(
+          name,
+          kind == BASE64_VALUE
+              ? Base64.getEncoder().encodeToString(value)
+              : new String(value, StandardCharsets.UTF_8));
+    }
+
+    // The whole frame is consumed before rejecting it, so the stream stays in sync
+    Type type = Type.fromOpcode(opcode);
+    if (type == null) throw new PassSecureException(PassSecureException.Type.INVALID_COMMAND);
+
+    return new Command(type, arguments);
+  }
+
+  /**
+   * Decodes a value if it is canonical Base64, so that it can travel as raw bytes.
+   *
+   * @param value The value to decode.
+   * @return The decoded bytes, or null if the value must travel as text.
+   */
+  private static byte[] decodeBase64(String value) {
+    if (value.isEmpty() || value.length() % 4 != 0) return null;
+
+    try {
+      byte[] raw = Base64.getDecoder().decode(value);
+      return Base64.getEncoder().encodeToString(raw).equals(value) ? raw : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes a varint-length prefixed field.
+   *
+   * @param out The {@link OutputStream} to write to.
+   * @param field The bytes of the field.
+   * @throws IOException If an I/O error occurs while writing.
+   */
+  private static void writeField(OutputStream out, byte[] field) throws IOException {
+    writeVarint(out, field.length);
+    out.write(field);
+  }
+
+  /**
+   * Reads a varint-length prefixed field.
+   *
+   * @param in The {@link ByteSource} to read from.
+   * @return The bytes of the field.
+   * @throws IOException If the field is malformed or too long.
+   */
+  private static byte[] readField(ByteSource in) throws IOException {
+    int length = readVarint(in);
+    if (length < 0 || length > MAX_FIELD_LENGTH) throw new IOException("Field too long");
+
+    byte[] field = new byte[length];
+    for (int i = 0; i < length; ++i) field[i] = (byte) in.read();
+    return field;
+  }
+
+  /**
+   * Writes an unsigned LEB128 varint.
+   *
+   * @param out The {@link OutputStream} to write to.
+   * @param value The value to write.
+   * @throws IOException If an I/O error occurs while writing.
+   */
+  private static void writeVarint(OutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Reads an unsigned LEB128 varint of at most 32 bits.
+   *
+   * @param in The {@link ByteSource} to read from.
+   * @return The value read.
+   * @throws IOException If the varint is malformed or overflows 32 bits.
+   */
+  private static int readVarint(ByteSource in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.read();
+      // The fifth byte only holds the last four bits
+      if (shift == 28 && b > 0x0F) throw new IOException("Malformed varint");
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Checks if an argument only exists on the client and must never be sent.
+   *
+   * @param name The name of the argument.
+   * @return True if the argument is a local encryption or decryption password.
+   */
+  private static boolean isLocalArgument(String name) {
+    return name.equals(ENCRYPTION_PASSWORD_ARGUMENT) || name.equals(DECRYPTION_PASSWORD_ARGUMENT);
+  }
+
   /**
    * Checks if a token represents an argument name.
    *
@@ -0,0 +1,153 @@
+/**
+ * The {@code CryptoEngine} class hands out the cryptographic primitives used by pass-secure.
+ * Looking up a {@link javax.crypto.Cipher}, {@link MessageDigest}, {@link Mac} or {@link
+ * SecretKeyFactory} goes through the provider framework, which locks and allocates on every call,
+ * so each thread keeps its own instance of each primitive and reuses it. A single {@link
+ * SecureRandom}, which is thread-safe, is shared by everyone.
+ *
+ * <p>The returned instances are confined to the calling thread: they must not be handed to another
+ * thread or kept across calls, and each caller fully initializes them before use.
+ */
+package ch.heigvd.dai;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.function.Supplier;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+
+public final class CryptoEngine {
+
+  private static final SecureRandom secureRandom = new SecureRandom();
+
+  private static final ThreadLocal<javax.crypto.Cipher> aesGcm =
+      withInitial(() -> javax.crypto.Cipher.getInstance("AES/GCM/NoPadding"));
+  private static final ThreadLocal<javax.crypto.Cipher> aesCbc =
+      withInitial(() -> javax.crypto.Cipher.getInstance("AES/CBC/PKCS5Padding"));
+  private static final ThreadLocal<MessageDigest> sha256 =
+      withInitial(() -> MessageDigest.getInstance("SHA-256"));
+  private static final ThreadLocal<MessageDigest> sha512 =
+      withInitial(() -> MessageDigest.getInstance("SHA-512"));
+  private static final ThreadLocal<Mac> hmacSha256 =
+      withInitial(() -> Mac.getInstance("HmacSHA256"));
+  private static final ThreadLocal<SecretKeyFactory> pbkdf2Sha256 =
+      withInitial(() -> SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256"));
+  private static final ThreadLocal<SecretKeyFactory> pbkdf2Sha512 =
+      withInitial(() -> SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512"));
+
+  private CryptoEngine() {}
+
+  /** A lookup of a primitive from the providers. */
+  @FunctionalInterface
+  private interface Lookup<T> {
+    T get() throws GeneralSecurityException;
+  }
+
+  /**
+   * Creates a per-thread instance of a primitive.
+   *
+   * @param lookup The lookup of the primitive.
+   * @return The {@link ThreadLocal} holding the instance of each thread.
+   */
+  private static <T> ThreadLocal<T> withInitial(Lookup<T> lookup) {
+    Supplier<T> supplier =
+        () -> {
+          try {
+            return lookup.get();
+          } catch (GeneralSecurityException e) {
+            // Every Java platform is required to support these algorithms
+            throw new IllegalStateException(e);
+          }
+        };
+    return ThreadLocal.withInitial(supplier);
+  }
+
+  /**
+   * Gets the random generator shared by every thread.
+   *
+   * @return The shared {@link SecureRandom}.
+   */
+  public static SecureRandom random() {
+    return secureRandom;
+  }
+
+  /**
+   * Draws random bytes from the shared generator.
+   *
+   * @param length The amount of bytes.
+   * @return The random bytes.
+   */
+  public static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    secureRandom.nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Gets the AES-GCM cipher of the calling thread, to be initialized before use.
+   *
+   * @return The thread's {@code AES/GCM/NoPadding} cipher.
+   */
+  public static javax.crypto.Cipher aesGcm() {
+    return aesGcm.get();
+  }
+
+  /**
+   * Gets the AES-CBC cipher of the calling thread, to be initialized before use.
+   *
+   * @return The thread's {@code AES/CBC/PKCS5Padding} cipher.
+   */
+  public static javax.crypto.Cipher aesCbc() {
+    return aesCbc.get();
+  }
+
+  /**
+   * Gets the SHA-256 digest of the calling thread, reset.
+   *
+   * @return The thread's SHA-256 {@link MessageDigest}.
+   */
+  public static MessageDigest sha256() {
+    MessageDigest digest = sha256.get();
+    digest.reset();
+    return digest;
+  }
+
+  /**
+   * Gets the SHA-512 digest of the calling thread, reset.
+   *
+   * @return The thread's SHA-512 {@link MessageDigest}.
+   */
+  public static MessageDigest sha512() {
+    MessageDigest digest = sha512.get();
+    digest.reset();
+    return digest;
+  }
+
+  /**
+   * Gets the HMAC-SHA256 of the calling thread, to be initialized with its key before use.
+   *
+   * @return The thread's HMAC-SHA256 {@link Mac}.
+   */
+  public static Mac hmacSha256() {
+    return hmacSha256.get();
+  }
+
+  /**
+   * Gets the PBKDF2-HMAC-SHA256 key factory of the calling thread.
+   *
+   * @return The thread's {@code PBKDF2WithHmacSHA256} {@link SecretKeyFactory}.
+   */
+  public static SecretKeyFactory pbkdf2Sha256() {
+    return pbkdf2Sha256.get();
+  }
+
+  /**
+   * Gets the PBKDF2-HMAC-SHA512 key factory of the calling thread.
+   *
+   * @return The thread's {@code PBKDF2WithHmacSHA512} {@link SecretKeyFactory}.
+   */
+  public static SecretKeyFactory pbkdf2Sha512() {
+    return pbkdf2Sha512.get();
+  }
+}
@@ -6,10 +6,16 @@ package ch.heigvd.dai;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 public class File {
 
+  private static final String TEMPORARY_PREFIX = ".pass-secure-";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
   /**
    * Reads the content of a file from a {@link BufferedInputStream}.
    *
@@ -37,14 +43,9 @@ public class File {
    * @throws IOException If an I/O error occurs during reading.
    */
   public static String read(Path path) throws IOException {
-    String content;
-
-    try (FileInputStream fis = new FileInputStream(path.toString());
-        BufferedInputStream bis = new BufferedInputStream(fis)) {
-      content = read(bis);
-    }
-
-    return content;
+    // Read in one go through NIO: no intermediate buffer and no monitor held while blocked, so
+    // virtual threads do not pin their carrier thread
+    return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
   }
 
   /**
@@ -71,16 +72,58 @@ public class File {
   }
 
   /**
-   * Writes text content to a file at the specified {@link Path}.
+   * Writes text content to a file at the specified {@link Path}. The content is written to a
+   * temporary file in the same directory first, then renamed over the destination in one atomic
+   * step, so that readers see either the previous or the new content, never a partial file.
+   *
+   * <p>Temporary files are named {@code .pass-secure-<random>.tmp}, which no vault file ends with,
+   * so that listings ignore those a crash leaves behind until {@link #deleteTemporaryFiles(Path)}
+   * removes them.
    *
    * @param path The {@link Path} of the file to write to.
    * @param content The text content to write as a {@link String}.
    * @throws IOException If an I/O error occurs during writing.
    */
   public static void write(Path path, String content) throws IOException {
-    try (FileOutputStream fos = new FileOutputStream(path.toString());
-        BufferedOutputStream bos = new BufferedOutputStream(fos)) {
-      write(bos, content);
+    Path temporary =
+        Files.createTempFile(path.toAbsolutePath().getParent(), TEMPORARY_PREFIX, TEMPORARY_SUFFIX);
+    try {
+      Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+      Files.move(
+          temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+  }
+
+  /**
+   * Checks if a file is a temporary file of {@link #write(Path, String)}.
+   *
+   * @param path The {@link Path} of the file.
+   * @return True if the file is a temporary file.
+   */
+  public static boolean isTemporary(Path path) {
+    String name = path.getFileName().toString();
+    return name.startsWith(TEMPORARY_PREFIX) && name.endsWith(TEMPORARY_SUFFIX);
+  }
+
+  /**
+   * Deletes the temporary files of {@link #write(Path, String)} left in a directory by writes
+   * interrupted by a crash. Must not run while files of the directory are being written.
+   *
+   * @param directory The {@link Path} of the directory.
+   * @return The amount of deleted files.
+   * @throws IOException If the directory cannot be read or a file cannot be deleted.
+   */
+  public static int deleteTemporaryFiles(Path directory) throws IOException {
+    int deleted = 0;
+    try (DirectoryStream<Path> temporaries =
+        Files.newDirectoryStream(directory, TEMPORARY_PREFIX + "*" + TEMPORARY_SUFFIX)) {
+      for (Path temporary : temporaries) {
+        if (Files.deleteIfExists(temporary)) ++deleted;
+      }
     }
+    return deleted;
   }
 }
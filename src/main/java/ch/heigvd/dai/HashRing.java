@@ -0,0 +1,116 @@
+/**
+ * The {@code HashRing} class assigns each user of a cluster to one of its nodes by consistent
+ * hashing. Every node is placed on the ring at many pseudo-random points, its virtual nodes, and a
+ * user belongs to the node of the first point following the hash of its username. Adding or
+ * removing a node only moves the users of the ring segments it gains or loses, and virtual nodes
+ * spread these users evenly over the other nodes.
+ *
+ * <p>Clients and servers build the same ring from the same list of nodes, in any order.
+ */
+package ch.heigvd.dai;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class HashRing {
+
+  private static final int VIRTUAL_NODES = 160;
+
+  private final TreeMap<Long, String> points = new TreeMap<>();
+  private final List<String> nodes;
+
+  /**
+   * Constructs the ring of a cluster.
+   *
+   * @param nodes The addresses of the nodes, as {@code host:port}.
+   * @throws IllegalArgumentException If there is no node.
+   */
+  public HashRing(Collection<String> nodes) {
+    if (nodes.isEmpty()) throw new IllegalArgumentException("A cluster needs at least one node");
+
+    this.nodes = List.copyOf(nodes);
+    for (String node : nodes) {
+      for (int i = 0; i < VIRTUAL_NODES; ++i) {
+        // Colliding points are settled by address, so that the ring does not depend on the order
+        points.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+      }
+    }
+  }
+
+  /**
+   * Parses a comma separated list of nodes.
+   *
+   * @param nodes The addresses of the nodes, as {@code host:port,host:port}.
+   * @return The ring of these nodes.
+   * @throws IllegalArgumentException If there is no node.
+   */
+  public static HashRing parse(String nodes) {
+    List<String> addresses = new ArrayList<>();
+    for (String node : nodes.split(",")) {
+      if (!node.isBlank()) addresses.add(node.strip());
+    }
+    return new HashRing(addresses);
+  }
+
+  /**
+   * Retrieves the node owning a user.
+   *
+   * @param username The username of the user.
+   * @return The address of the node, as {@code host:port}.
+   */
+  public String nodeFor(String username) {
+    Map.Entry<Long, String> point = points.ceilingEntry(hash(username));
+    return point != null ? point.getValue() : points.firstEntry().getValue();
+  }
+
+  /**
+   * Gets the nodes of the ring.
+   *
+   * @return The addresses of the nodes, as {@code host:port}.
+   */
+  public List<String> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Retrieves the host of a node address.
+   *
+   * @param node The address of the node, as {@code host:port}.
+   * @return The host of the node.
+   * @throws IllegalArgumentException If the address has no port.
+   */
+  public static String getHost(String node) {
+    int separator = node.lastIndexOf(':');
+    if (separator <= 0) throw new IllegalArgumentException("Invalid node address " + node);
+    return node.substring(0, separator);
+  }
+
+  /**
+   * Retrieves the port of a node address.
+   *
+   * @param node The address of the node, as {@code host:port}.
+   * @return The port of the node.
+   * @throws IllegalArgumentException If the address has no valid port.
+   */
+  public static int getPort(String node) {
+    int separator = node.lastIndexOf(':');
+    if (separator <= 0) throw new IllegalArgumentException("Invalid node address " + node);
+    return Integer.parseInt(node.substring(separator + 1));
+  }
+
+  /**
+   * Hashes a key to a point of the ring.
+   *
+   * @param key The username or virtual node to place.
+   * @return The first 64 bits of the SHA-256 of the key.
+   */
+  private static long hash(String key) {
+    return ByteBuffer.wrap(CryptoEngine.sha256().digest(key.getBytes(StandardCharsets.UTF_8)))
+        .getLong();
+  }
+}
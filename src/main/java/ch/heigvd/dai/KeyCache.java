@@ -0,0 +1,225 @@
+/**
+ * The {@code KeyCache} class keeps the keys derived from encryption passwords for a short time, so
+ * that the entries of a session sharing a password and a salt only pay the slow password-based key
+ * derivation once. Each key expires after a fixed delay from its derivation and the cache is
+ * bounded; expired, evicted and cleared keys are overwritten with zeros.
+ *
+ * <p>Every hit hands out the cached key itself, so wiping it reaches every holder. Wiping is still
+ * best-effort: the cipher provider copies the key bytes while initializing a cipher, and those
+ * copies are out of reach.
+ *
+ * <p>Keys are indexed by a SHA-256 digest of their salt and password rather than by the password.
+ */
+package ch.heigvd.dai;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.PBEKeySpec;
+
+public class KeyCache {
+
+  private static final int CAPACITY = 16;
+  private static final int ITERATIONS = 100_000;
+
+  private final long ttlNanos;
+  private final LinkedHashMap<String, Entry> keys = new LinkedHashMap<>(16, 0.75f, true);
+  private final HashMap<String, Salt> encryptionSalts = new HashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * A derived key.
+   *
+   * @param key The key, wiped once the entry leaves the cache.
+   * @param expires The time the key expires at, from {@link System#nanoTime()}.
+   */
+  private record Entry(AesKey key, long expires) {}
+
+  /**
+   * An AES key whose bytes can be overwritten with zeros, unlike those of a {@code SecretKeySpec}.
+   */
+  private static final class AesKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] key;
+    private volatile boolean destroyed;
+
+    private AesKey(byte[] key) {
+      this.key = key;
+    }
+
+    @Override
+    public String getAlgorithm() {
+      return "AES";
+    }
+
+    @Override
+    public String getFormat() {
+      return "RAW";
+    }
+
+    @Override
+    public byte[] getEncoded() {
+      if (destroyed) throw new IllegalStateException("Key destroyed");
+      return key.clone();
+    }
+
+    /** Overwrites the key with zeros. */
+    @Override
+    public void destroy() {
+      destroyed = true;
+      Arrays.fill(key, (byte) 0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+      return destroyed;
+    }
+  }
+
+  /**
+   * The salt of the new entries of a password.
+   *
+   * @param salt The salt to derive the key with.
+   * @param id The index of the key derived from this salt.
+   */
+  private record Salt(byte[] salt, String id) {}
+
+  /**
+   * A key to encrypt new entries with.
+   *
+   * @param salt The salt the key was derived with, stored with the ciphertexts.
+   * @param key The derived AES key.
+   */
+  public record EncryptionKey(byte[] salt, SecretKey key) {}
+
+  /**
+   * Constructs a new {@code KeyCache}.
+   *
+   * @param ttlSeconds The amount of seconds a derived key is kept, {@code 0} to derive the key of
+   *     every operation.
+   */
+  public KeyCache(long ttlSeconds) {
+    this.ttlNanos = ttlSeconds * 1_000_000_000L;
+  }
+
+  /**
+   * Retrieves the key to encrypt new entries with a password. The salt of a password is drawn once
+   * and kept as long as its key, so that the entries encrypted in the meantime share one key.
+   *
+   * @param password The encryption password.
+   * @param salt The length of the salt to draw.
+   * @param bits The length of the key in bits.
+   * @return The salt and the derived key.
+   * @throws GeneralSecurityException If the key cannot be derived.
+   */
+  public EncryptionKey forEncryption(String password, int salt, int bits)
+      throws GeneralSecurityException {
+    lock.lock();
+    try {
+      // Salts whose key left the cache are drawn again
+      encryptionSalts.values().removeIf(current -> !keys.containsKey(current.id()));
+
+      String id = digest(new byte[0], password);
+      Salt current = encryptionSalts.get(id);
+      if (current == null) {
+        byte[] drawn = CryptoEngine.randomBytes(salt);
+        current = new Salt(drawn, digest(drawn, password));
+        encryptionSalts.put(id, current);
+      }
+      return new EncryptionKey(current.salt().clone(), get(password, current.salt(), bits));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the key derived from a password and a salt, deriving it if it is not cached. Keys are
+   * derived under the lock, so that concurrent operations sharing a password derive it once.
+   *
+   * @param password The encryption password.
+   * @param salt The salt stored with the ciphertext.
+   * @param bits The length of the key in bits.
+   * @return The derived AES key, the cached instance itself on a hit.
+   * @throws GeneralSecurityException If the key cannot be derived.
+   */
+  public SecretKey get(String password, byte[] salt, int bits) throws GeneralSecurityException {
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      expire(now);
+
+      String id = digest(salt, password);
+      Entry entry = keys.get(id);
+      if (entry != null) return entry.key();
+
+      PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, bits);
+      AesKey key = new AesKey(CryptoEngine.pbkdf2Sha256().generateSecret(spec).getEncoded());
+      spec.clearPassword();
+      // An uncached key only lives as long as the operation holding it
+      if (ttlNanos <= 0) return key;
+
+      keys.put(id, new Entry(key, now + ttlNanos));
+      if (keys.size() > CAPACITY) {
+        Iterator<Entry> eldest = keys.values().iterator();
+        eldest.next().key().destroy();
+        eldest.remove();
+      }
+      return key;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wipes and forgets every key, at the end of a session. Best-effort, see the {@linkplain KeyCache
+   * class documentation}.
+   */
+  public void clear() {
+    lock.lock();
+    try {
+      for (Entry entry : keys.values()) entry.key().destroy();
+      keys.clear();
+      encryptionSalts.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wipes and forgets the expired keys. The caller must hold the lock.
+   *
+   * @param now The current time, from {@link System#nanoTime()}.
+   */
+  private void expire(long now) {
+    Iterator<Map.Entry<String, Entry>> iterator = keys.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (entry.expires() - now > 0) continue;
+      entry.key().destroy();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Computes the index of a key.
+   *
+   * @param salt The salt of the key.
+   * @param password The password of the key.
+   * @return The Base64 SHA-256 digest of the salt followed by the password.
+   */
+  private static String digest(byte[] salt, String password) {
+    MessageDigest md = CryptoEngine.sha256();
+    md.update(salt);
+    return Base64.getEncoder().encodeToString(md.digest(password.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -7,6 +7,8 @@ package ch.heigvd.dai;
 public class PassSecureException extends Exception {
 
   private final Type type;
+  private final String node;
+  private final long retryAfter;
 
   /**
    * Constructs a new {@code PassSecureException} with the specified type.
@@ -14,7 +16,33 @@ public class PassSecureException extends Exception {
    * @param type The {@link Type} of the exception.
    */
   public PassSecureException(Type type) {
+    this(type, null);
+  }
+
+  /**
+   * Constructs a new {@code PassSecureException} redirecting the client to another node.
+   *
+   * @param type The {@link Type} of the exception.
+   * @param node The address of the node to retry on, as {@code host:port}.
+   */
+  public PassSecureException(Type type, String node) {
+    this(type, node, 0);
+  }
+
+  /**
+   * Constructs a new {@code PassSecureException} asking the client to retry later.
+   *
+   * @param type The {@link Type} of the exception.
+   * @param retryAfter The delay in milliseconds after which the client may retry.
+   */
+  public PassSecureException(Type type, long retryAfter) {
+    this(type, null, retryAfter);
+  }
+
+  private PassSecureException(Type type, String node, long retryAfter) {
     this.type = type;
+    this.node = node;
+    this.retryAfter = retryAfter;
   }
 
   /** Represents the different types of exceptions that can occur in the pass-secure system. */
@@ -30,7 +58,13 @@ public class PassSecureException extends Exception {
     CIPHER_ERROR("cipher_error"),
     INVALID_COMMAND("invalid_command"),
     ENTRY_ALREADY_EXISTS("entry_already_exists"),
-    ENTRY_NOT_FOUND("entry_not_found");
+    ENTRY_NOT_FOUND("entry_not_found"),
+    TRANSACTION_ABORTED("transaction_aborted"),
+    SNAPSHOT_IN_PROGRESS("snapshot_in_progress"),
+    READ_ONLY("read_only"),
+    WRONG_NODE("wrong_node"),
+    RATE_LIMITED("rate_limited"),
+    BUSY("busy");
 
     private final String type;
 
@@ -49,6 +83,34 @@ public class PassSecureException extends Exception {
     }
   }
 
+  /**
+   * Returns the type of the exception.
+   *
+   * @return The {@link Type} of the exception.
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the node the client should retry on.
+   *
+   * @return The address of the node, as {@code host:port}, or null if the error is not a
+   *     redirection.
+   */
+  public String getNode() {
+    return node;
+  }
+
+  /**
+   * Returns the delay after which the client may retry.
+   *
+   * @return The delay in milliseconds, or {@code 0} if the error is not transient.
+   */
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+
   /**
    * Returns a descriptive message for the exception.
    *
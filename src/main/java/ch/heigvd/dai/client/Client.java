@@ -5,13 +5,20 @@
  */
 package ch.heigvd.dai.client;
 
+import ch.heigvd.dai.Cipher;
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.HashRing;
+import ch.heigvd.dai.KeyCache;
 import java.io.*;
-import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.Callable;
 import picocli.CommandLine;
 
-@CommandLine.Command(name = "client", description = "Start the client part of pass-secure.")
+@CommandLine.Command(
+    name = "client",
+    description = "Start the client part of pass-secure.",
+    subcommands = {Import.class})
 public class Client implements Callable<Integer> {
 
   /** The host to connect to. Defaults to "localhost" if not provided. */
@@ -28,11 +35,38 @@ public class Client implements Callable<Integer> {
       defaultValue = "6433")
   private int port;
 
+  /** The wire protocol to negotiate with the server. Defaults to "text" if not provided. */
+  @CommandLine.Option(
+      names = {"--protocol"},
+      description = "Wire protocol, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "text")
+  private Command.Protocol protocol;
+
+  /**
+   * The nodes of a cluster, as {@code host:port,host:port}. Sessions are routed to the node owning
+   * their user, {@code --host} and {@code --port} are then ignored.
+   */
+  @CommandLine.Option(
+      names = {"--nodes"},
+      description = "Nodes of a cluster as host:port,host:port, replaces --host and --port.")
+  private String nodes;
+
+  /**
+   * The amount of seconds a key derived from an encryption password is kept, so that the entries
+   * sharing a password skip the key derivation. Keys are wiped when the session ends.
+   */
+  @CommandLine.Option(
+      names = {"--key-ttl"},
+      description = "Seconds derived keys are cached, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "300")
+  private long keyTtl;
+
   /**
    * Executes the client application by:
    *
    * <ul>
-   *   <li>Establishing a socket connection to the specified host and port.
+   *   <li>Establishing a socket connection to the specified host and port, or to the first node of
+   *       the cluster.
    *   <li>Setting up input and output streams for communication with the server and user input.
    *   <li>Starting a REPL (Read-Eval-Print Loop) to handle user commands and interact with the
    *       server.
@@ -44,30 +78,58 @@ public class Client implements Callable<Integer> {
    */
   @Override
   public Integer call() {
+    HashRing ring = ring();
+    Cluster cluster = new Cluster(ring, protocol);
+    Cipher.setKeyCache(new KeyCache(keyTtl));
+
     try (Reader keyboardReader = new InputStreamReader(System.in, StandardCharsets.UTF_8);
         BufferedReader keyboardIn = new BufferedReader(keyboardReader);
-        Socket socket = new Socket(host, port);
-        Reader socketReader =
-            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-        BufferedReader socketIn = new BufferedReader(socketReader);
-        Writer socketWriter =
-            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
-        BufferedWriter socketOut = new BufferedWriter(socketWriter)) {
+        Connection connection = cluster.connect(ring.getNodes().getFirst())) {
       // Notify user of successful connection
-      System.out.println("[Client] Connected to " + host + ":" + port);
+      System.out.println("[Client] Connected to " + connection.getNode());
       System.out.println();
 
       // Start the REPL for user interaction
-      Repl.run(keyboardIn, socketIn, socketOut);
+      Repl.run(keyboardIn, connection, cluster);
 
       // Notify user of connection closure
       System.out.println("[Client] Closing connection");
     } catch (IOException e) {
       // Rethrow exceptions as UnsupportedOperationException
       throw new UnsupportedOperationException(e);
+    } finally {
+      Cipher.clearKeys();
     }
 
     // Indicate successful termination
     return 0;
   }
+
+  /**
+   * Creates the ring of the nodes given by the options.
+   *
+   * @return The {@link HashRing} of the cluster, or of the single server.
+   */
+  HashRing ring() {
+    // A standalone server is a cluster of a single node
+    return nodes != null ? HashRing.parse(nodes) : new HashRing(List.of(host + ":" + port));
+  }
+
+  /**
+   * Creates the cluster of the nodes given by the options, for the subcommands.
+   *
+   * @return The {@link Cluster} to connect to.
+   */
+  Cluster cluster() {
+    return new Cluster(ring(), protocol);
+  }
+
+  /**
+   * Gets the amount of seconds a key derived from an encryption password is kept.
+   *
+   * @return The lifetime of the derived keys in seconds.
+   */
+  long getKeyTtl() {
+    return keyTtl;
+  }
 }
@@ -0,0 +1,112 @@
+/**
+ * The {@code Cluster} class routes client sessions over the nodes of a pass-secure cluster. Each
+ * user belongs to one node, found by consistent hashing of its username with the same {@link
+ * HashRing} as the servers, so a session connects straight to the right node. A node that
+ * disagrees, for example while the cluster is being rebalanced, answers {@code wrong_node} with the
+ * node to retry on, which {@link #login} follows.
+ *
+ * <p>A standalone server is a cluster of a single node.
+ */
+package ch.heigvd.dai.client;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.HashRing;
+import ch.heigvd.dai.PassSecureException;
+import java.io.IOException;
+import java.util.HashMap;
+
+public class Cluster {
+
+  private static final int MAX_REDIRECTS = 3;
+
+  private final HashRing ring;
+  private final Command.Protocol protocol;
+
+  /**
+   * Constructs a new {@code Cluster}.
+   *
+   * @param ring The {@link HashRing} of the nodes of the cluster.
+   * @param protocol The {@link Command.Protocol} to negotiate with the nodes.
+   */
+  public Cluster(HashRing ring, Command.Protocol protocol) {
+    this.ring = ring;
+    this.protocol = protocol;
+  }
+
+  /**
+   * Retrieves the node owning a user.
+   *
+   * @param username The username of the user.
+   * @return The address of the node, as {@code host:port}.
+   */
+  public String nodeFor(String username) {
+    return ring.nodeFor(username);
+  }
+
+  /**
+   * Opens a connection to a node of the cluster, for commands that need no user.
+   *
+   * @param node The address of the node, as {@code host:port}.
+   * @return The open {@link Connection}.
+   * @throws IOException If the node cannot be reached.
+   */
+  public Connection connect(String node) throws IOException {
+    return Connection.open(HashRing.getHost(node), HashRing.getPort(node), protocol);
+  }
+
+  /**
+   * Opens a session of a user on the node owning it, following redirections.
+   *
+   * @param type {@code Command.Type.LOGIN} to log in an existing user, {@code
+   *     Command.Type.REGISTER} to create it.
+   * @param username The username of the user.
+   * @param password The password of the user.
+   * @return The {@link Connection} on which the user is logged in.
+   * @throws IOException If a node cannot be reached.
+   * @throws PassSecureException If the node rejects the user or redirects it too many times.
+   */
+  public Connection login(Command.Type type, String username, String password)
+      throws IOException, PassSecureException {
+    HashMap<String, String> arguments = new HashMap<>();
+    arguments.put("username", username);
+    arguments.put("password", password);
+
+    String node = nodeFor(username);
+    for (int redirects = 0; redirects <= MAX_REDIRECTS; ++redirects) {
+      Connection connection = connect(node);
+      try {
+        new Command(type, arguments).write(connection.getOut(), connection.getProtocol());
+        connection.getOut().flush();
+
+        Command response = Command.read(connection.getIn(), connection.getProtocol());
+        if (response == null) throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+        if (response.getType() == Command.Type.OK) return connection;
+
+        connection.close();
+        PassSecureException.Type error = parseError(response.getString("message"));
+        if (error != PassSecureException.Type.WRONG_NODE || response.getString("node") == null) {
+          throw new PassSecureException(error);
+        }
+        node = response.getString("node");
+      } catch (IOException | PassSecureException e) {
+        connection.close();
+        throw e;
+      }
+    }
+
+    throw new PassSecureException(PassSecureException.Type.WRONG_NODE, node);
+  }
+
+  /**
+   * Retrieves the type of an error sent by a node.
+   *
+   * @param message The message of the {@code NOK} response.
+   * @return The matching {@link PassSecureException.Type}, or {@code BAD_RESPONSE} if unknown.
+   */
+  private static PassSecureException.Type parseError(String message) {
+    for (PassSecureException.Type type : PassSecureException.Type.values()) {
+      if (type.toString().equals(message)) return type;
+    }
+    return PassSecureException.Type.BAD_RESPONSE;
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * The {@code Connection} class holds a connection to a single server node: its socket, its buffered
+ * streams and the wire protocol negotiated when it was opened.
+ */
+package ch.heigvd.dai.client;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+
+public class Connection implements Closeable {
+
+  private final String node;
+  private final Socket socket;
+  private final BufferedInputStream in;
+  private final BufferedOutputStream out;
+  private final Command.Protocol protocol;
+
+  /**
+   * Constructs a connection over an open socket.
+   *
+   * @param node The address of the node, as {@code host:port}.
+   * @param socket The connected {@link Socket}.
+   * @param protocol The {@link Command.Protocol} to negotiate.
+   * @throws IOException If the streams of the socket cannot be opened.
+   */
+  private Connection(String node, Socket socket, Command.Protocol protocol) throws IOException {
+    this.node = node;
+    this.socket = socket;
+    this.in = new BufferedInputStream(socket.getInputStream());
+    this.out = new BufferedOutputStream(socket.getOutputStream());
+    this.protocol = protocol == Command.Protocol.BINARY ? negotiate(in, out) : protocol;
+  }
+
+  /**
+   * Opens a connection to a node.
+   *
+   * @param host The host of the node.
+   * @param port The port of the node.
+   * @param protocol The {@link Command.Protocol} to negotiate, the connection falls back to text if
+   *     the node does not support it.
+   * @return The open {@code Connection}.
+   * @throws IOException If the node cannot be reached.
+   */
+  public static Connection open(String host, int port, Command.Protocol protocol)
+      throws IOException {
+    Socket socket = new Socket(host, port);
+    try {
+      return new Connection(host + ":" + port, socket, protocol);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Negotiates the binary protocol with the server. The acknowledgement is sent with the text
+   * protocol; a server that does not know {@code HELLO} answers {@code NOK} and the connection
+   * keeps using text.
+   *
+   * @param in BufferedInputStream to read server responses.
+   * @param out BufferedOutputStream to send commands to the server.
+   * @return The protocol to use from now on.
+   */
+  private static Command.Protocol negotiate(BufferedInputStream in, BufferedOutputStream out) {
+    HashMap<String, String> arguments = new HashMap<>();
+    arguments.put("protocol", Command.Protocol.BINARY.toString());
+
+    try {
+      new Command(Command.Type.HELLO, arguments).write(out, Command.Protocol.TEXT);
+      out.flush();
+      Command response = Command.read(in, Command.Protocol.TEXT);
+      if (response == null || response.getType() != Command.Type.OK) {
+        throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+      }
+      return Command.Protocol.BINARY;
+    } catch (PassSecureException | IOException e) {
+      System.err.println("Binary protocol unavailable, using text");
+      return Command.Protocol.TEXT;
+    }
+  }
+
+  /**
+   * Gets the node of the connection.
+   *
+   * @return The address of the node, as {@code host:port}.
+   */
+  public String getNode() {
+    return node;
+  }
+
+  /**
+   * Gets the stream of the responses of the node.
+   *
+   * @return The {@link BufferedInputStream} of the connection.
+   */
+  public BufferedInputStream getIn() {
+    return in;
+  }
+
+  /**
+   * Gets the stream of the commands sent to the node.
+   *
+   * @return The {@link BufferedOutputStream} of the connection.
+   */
+  public BufferedOutputStream getOut() {
+    return out;
+  }
+
+  /**
+   * Gets the wire protocol negotiated with the node.
+   *
+   * @return The {@link Command.Protocol} of the connection.
+   */
+  public Command.Protocol getProtocol() {
+    return protocol;
+  }
+
+  /**
+   * Closes the connection.
+   *
+   * @throws IOException If the socket cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * The {@code CsvExportReader} class reads CSV password exports, as written by Chrome, Firefox,
+ * Bitwarden, LastPass, KeePass or 1Password. The first row names the columns, which are matched to
+ * the fields of a login by name. Fields follow RFC 4180: they may be quoted, and quoted fields may
+ * hold separators, line breaks and doubled quotes.
+ */
+package ch.heigvd.dai.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CsvExportReader implements ExportReader {
+
+  private static final char SEPARATOR = ',';
+  private static final char QUOTE = '"';
+  private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+  private final BufferedReader in;
+  private int line = 1;
+
+  /**
+   * Constructs a new {@code CsvExportReader}.
+   *
+   * @param in The content of the export.
+   */
+  public CsvExportReader(Reader in) {
+    this.in = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in);
+  }
+
+  @Override
+  public void read(Handler handler) throws IOException {
+    List<String> header = readRecord();
+    if (header == null) return;
+
+    // The first column of each field wins, a byte order mark is not part of the first one
+    Map<String, Integer> columns = new HashMap<>();
+    for (int i = 0; i < header.size(); ++i) {
+      String field = ExportReader.fieldOf(header.get(i).replace(BYTE_ORDER_MARK, ""));
+      if (field != null) columns.putIfAbsent(field, i);
+    }
+    if (!columns.containsKey("password")) throw new IOException("No password column");
+
+    int start = line;
+    List<String> record;
+    while ((record = readRecord()) != null) {
+      // Blank lines are not entries
+      if (!(record.size() == 1 && record.getFirst().isEmpty())) {
+        handler.accept(
+            new Entry(
+                "line " + start,
+                field(record, columns, "name"),
+                field(record, columns, "url"),
+                field(record, columns, "username"),
+                field(record, columns, "password")));
+      }
+      start = line;
+    }
+  }
+
+  /**
+   * Retrieves a field of a record.
+   *
+   * @param record The fields of the record.
+   * @param columns The column of each field.
+   * @param field The field to retrieve.
+   * @return The value of the field, or an empty string if the record has no such column.
+   */
+  private static String field(List<String> record, Map<String, Integer> columns, String field) {
+    Integer column = columns.get(field);
+    return column != null && column < record.size() ? record.get(column) : "";
+  }
+
+  /**
+   * Reads the next record, which may span several lines.
+   *
+   * @return The fields of the record, or null at the end of the export.
+   * @throws IOException If the export cannot be read or ends within a quoted field.
+   */
+  private List<String> readRecord() throws IOException {
+    int c = in.read();
+    if (c == -1) return null;
+
+    List<String> record = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    int quotedAt = line;
+    while (true) {
+      if (c == -1) {
+        if (quoted) throw new IOException("Unterminated quoted field at line " + quotedAt);
+        break;
+      }
+
+      if (quoted) {
+        if (c == QUOTE) {
+          in.mark(1);
+          int next = in.read();
+          if (next == QUOTE) field.append(QUOTE);
+          else {
+            quoted = false;
+            if (next != -1) in.reset();
+          }
+        } else {
+          if (c == '\n') ++line;
+          field.append((char) c);
+        }
+      } else if (c == QUOTE && field.isEmpty()) {
+        quoted = true;
+        quotedAt = line;
+      } else if (c == SEPARATOR) {
+        record.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\n') {
+        ++line;
+        break;
+      } else if (c != '\r') {
+        field.append((char) c);
+      }
+
+      c = in.read();
+    }
+
+    record.add(field.toString());
+    return record;
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * The {@code ExportReader} interface reads the entries of a password export, as written by browsers
+ * and password managers, one entry at a time so that large exports are never held in memory.
+ */
+package ch.heigvd.dai.client;
+
+import java.io.IOException;
+import java.io.Reader;
+
+public interface ExportReader {
+
+  /** Represents the formats of the exports that can be read. */
+  enum Format {
+    CSV,
+    JSON;
+
+    /**
+     * Retrieves the format of an export from the extension of its file.
+     *
+     * @param filename The name of the export.
+     * @return The matching {@link Format}, {@code CSV} if the extension is unknown.
+     */
+    public static Format fromFilename(String filename) {
+      return filename.toLowerCase().endsWith(".json") ? JSON : CSV;
+    }
+  }
+
+  /**
+   * A login read from an export. Missing fields are empty.
+   *
+   * @param location The position of the login in the export, for error messages.
+   * @param name The name or title of the login.
+   * @param url The address of the site of the login.
+   * @param username The username of the login.
+   * @param password The password of the login.
+   */
+  record Entry(String location, String name, String url, String username, String password) {}
+
+  /** Receives the entries of an export, in their order. */
+  @FunctionalInterface
+  interface Handler {
+
+    /**
+     * Processes an entry.
+     *
+     * @param entry The {@link Entry} read.
+     * @throws IOException If the entry cannot be processed, which stops the reading.
+     */
+    void accept(Entry entry) throws IOException;
+  }
+
+  /**
+   * Reads every entry of the export.
+   *
+   * @param handler The {@link Handler} receiving the entries.
+   * @throws IOException If the export cannot be read or is malformed.
+   */
+  void read(Handler handler) throws IOException;
+
+  /**
+   * Creates a reader of an export.
+   *
+   * @param format The {@link Format} of the export.
+   * @param in The content of the export.
+   * @return The {@code ExportReader} of the format.
+   */
+  static ExportReader of(Format format, Reader in) {
+    return format == Format.JSON ? new JsonExportReader(in) : new CsvExportReader(in);
+  }
+
+  /**
+   * Retrieves the field of a login from a column or key name, as used by the common exports.
+   *
+   * @param key The column or key name.
+   * @return {@code "name"}, {@code "url"}, {@code "username"} or {@code "password"}, or null if the
+   *     key holds something else.
+   */
+  static String fieldOf(String key) {
+    return switch (key.trim().toLowerCase()) {
+      case "name", "title", "account" -> "name";
+      case "url", "uri", "login_uri", "website", "web site" -> "url";
+      case "username", "login_username", "login name", "user" -> "username";
+      case "password", "login_password" -> "password";
+      default -> null;
+    };
+  }
+}
@@ -0,0 +1,554 @@
+/**
+ * The {@code Import} class imports the logins of a CSV or JSON password export into the vault of a
+ * user. The export is read as a stream and cut into {@code MADD} batches; batches are encrypted in
+ * parallel on a fork-join pool, sent in order while the results of the previous ones are still
+ * awaited, and their results are read by a thread of their own.
+ *
+ * <p>Each login is stored under {@code username@name}, or the host of its address when it has no
+ * name, with the characters the protocol or the vault reserve replaced. Names repeated within the
+ * export get a {@code ~2}, {@code ~3}... suffix. {@code MADD} being a transaction, the valid
+ * entries of a batch rejected for some of its entries are sent again without them.
+ */
+package ch.heigvd.dai.client;
+
+import ch.heigvd.dai.Cipher;
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.KeyCache;
+import ch.heigvd.dai.PassSecureException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "import",
+    description = "Import the logins of a CSV or JSON password export into the vault of a user.")
+public class Import implements Callable<Integer> {
+
+  private static final int MAX_BATCH_SIZE = 1000;
+  private static final int MAX_BATCH_LENGTH = 512 * 1024;
+  private static final int MAX_NAME_LENGTH = 200;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+  private static final Batch END = new Batch();
+
+  /** The client options: nodes, protocol and key lifetime. */
+  @CommandLine.ParentCommand private Client client;
+
+  /** The export to import. */
+  @CommandLine.Parameters(index = "0", description = "CSV or JSON export to import.")
+  private Path file;
+
+  /** The format of the export. Defaults to the format of the file extension. */
+  @CommandLine.Option(
+      names = {"--format"},
+      description =
+          "Format of the export, one of ${COMPLETION-CANDIDATES} (default: from the extension).")
+  private ExportReader.Format format;
+
+  /** The user owning the vault. */
+  @CommandLine.Option(
+      names = {"-u", "--username"},
+      description = "User owning the vault.",
+      required = true)
+  private String username;
+
+  /** The password of the user. */
+  @CommandLine.Option(
+      names = {"--password"},
+      description = "Password of the user.",
+      required = true)
+  private String password;
+
+  /** The password the entries are encrypted with. */
+  @CommandLine.Option(
+      names = {"--encryptionPassword"},
+      description = "Password the entries are encrypted with.",
+      required = true)
+  private String encryptionPassword;
+
+  /** Whether existing entries with the same names are overwritten. */
+  @CommandLine.Option(
+      names = {"--overwrite"},
+      description = "Overwrite the existing entries with the same names.")
+  private boolean overwrite;
+
+  /** The amount of entries of each batch. Defaults to 500 if not provided. */
+  @CommandLine.Option(
+      names = {"--batch-size"},
+      description = "Entries per MADD batch, at most 1000 (default: ${DEFAULT-VALUE}).",
+      defaultValue = "500")
+  private int batchSize;
+
+  /** The amount of batches awaiting their results. Defaults to 4 if not provided. */
+  @CommandLine.Option(
+      names = {"--pipeline"},
+      description = "Batches sent before awaiting their results (default: ${DEFAULT-VALUE}).",
+      defaultValue = "4")
+  private int pipeline;
+
+  /** The amount of encryption threads. Defaults to one per processor if not provided. */
+  @CommandLine.Option(
+      names = {"--threads"},
+      description = "Encryption threads, 0 for one per processor (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  private int threads;
+
+  private final Set<String> names = new HashSet<>();
+  private final ArrayDeque<ForkJoinTask<Batch>> encrypting = new ArrayDeque<>();
+  private final BlockingQueue<Batch> sent = new LinkedBlockingQueue<>();
+  private final ConcurrentLinkedQueue<Batch> retries = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+  private final LongAdder read = new LongAdder();
+  private final LongAdder added = new LongAdder();
+  private Semaphore inFlight;
+  private volatile Exception broken;
+  private long lastProgress;
+
+  /**
+   * An entry that could not be imported.
+   *
+   * @param location The position of the login in the export.
+   * @param name The name of the entry, or null if it had none yet.
+   * @param message The reason of the failure.
+   */
+  record Failure(String location, String name, String message) {}
+
+  /** The entries of a {@code MADD} command, in order. */
+  static final class Batch {
+    final List<String> locations = new ArrayList<>();
+    final List<String> names = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    int length;
+    int attempts;
+
+    void add(String location, String name, String value, int valueLength) {
+      locations.add(location);
+      names.add(name);
+      values.add(value);
+      length += name.length() + valueLength + 2;
+    }
+
+    int size() {
+      return names.size();
+    }
+  }
+
+  /**
+   * Imports the export into the vault of the user.
+   *
+   * @return {@code 0} if every login was imported, {@code 1} otherwise or if the export could not
+   *     be read to its end.
+   */
+  @Override
+  public Integer call() {
+    if (batchSize < 1 || batchSize > MAX_BATCH_SIZE || pipeline < 1 || threads < 0) {
+      System.err.println(PassSecureException.Type.INVALID_ARGUMENT.toString());
+      return 1;
+    }
+
+    ExportReader.Format exportFormat =
+        format != null ? format : ExportReader.Format.fromFilename(file.getFileName().toString());
+    ForkJoinPool pool =
+        new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    Cipher.setKeyCache(new KeyCache(client.getKeyTtl()));
+    inFlight = new Semaphore(pipeline);
+    long started = System.nanoTime();
+    lastProgress = started;
+    boolean complete = true;
+
+    try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        Connection connection = client.cluster().login(Command.Type.LOGIN, username, password)) {
+      System.out.println("[Import] Importing " + file + " on " + connection.getNode());
+
+      Thread receiver = Thread.ofPlatform().name("import-results").start(() -> receive(connection));
+      try {
+        Batch[] batch = {new Batch()};
+        IOException malformed = null;
+        try {
+          ExportReader.of(exportFormat, in)
+              .read(
+                  entry -> {
+                    read.increment();
+                    if (entry.password().isEmpty()) {
+                      failures.add(new Failure(entry.location(), null, "no password"));
+                      return;
+                    }
+
+                    String name = nameOf(entry);
+                    int length = encodedLength(entry.password());
+                    if (batch[0].size() == batchSize
+                        || batch[0].length + name.length() + length > MAX_BATCH_LENGTH) {
+                      encrypt(pool, batch[0], connection);
+                      batch[0] = new Batch();
+                    }
+                    batch[0].add(entry.location(), name, entry.password(), length);
+                  });
+        } catch (IOException e) {
+          // The logins read before a malformed part of the export are still imported
+          if (broken != null) throw e;
+          malformed = e;
+        }
+        if (batch[0].size() > 0) encrypt(pool, batch[0], connection);
+
+        while (!encrypting.isEmpty()) send(encrypting.poll().join(), connection);
+        sendRetries(connection);
+        if (malformed != null) throw malformed;
+      } finally {
+        sent.add(END);
+        receiver.join();
+      }
+    } catch (IOException e) {
+      // The batches already sent are still reported
+      System.out.println("[Import] exception: " + e);
+      complete = false;
+    } catch (PassSecureException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    } finally {
+      pool.shutdown();
+      Cipher.clearKeys();
+    }
+
+    System.out.println(
+        "[Import] "
+            + added.sum()
+            + " entries added, "
+            + failures.size()
+            + " failed in "
+            + (System.nanoTime() - started) / 1_000_000
+            + " ms");
+    for (Failure failure : failures) {
+      System.out.println(
+          "[Import] "
+              + failure.location()
+              + (failure.name() != null ? " (" + failure.name() + ")" : "")
+              + " : "
+              + failure.message());
+    }
+    return complete && failures.isEmpty() ? 0 : 1;
+  }
+
+  /**
+   * Encrypts a batch on the pool. Once more batches are being encrypted than the pool has threads,
+   * the oldest one is awaited and sent, so that the export is read no faster than it is imported.
+   *
+   * @param pool The {@link ForkJoinPool} encrypting the batches.
+   * @param batch The batch of plain passwords.
+   * @param connection The {@link Connection} of the user.
+   * @throws IOException If a batch cannot be sent.
+   */
+  private void encrypt(ForkJoinPool pool, Batch batch, Connection connection) throws IOException {
+    encrypting.add(
+        pool.submit(
+            () -> {
+              try {
+                // The key is derived once per batch, or once per import if it is cached
+                batch.values = Cipher.encrypt(batch.values, encryptionPassword);
+                return batch;
+              } catch (GeneralSecurityException e) {
+                fail(batch, PassSecureException.Type.CIPHER_ERROR.toString());
+                return null;
+              }
+            }));
+    if (encrypting.size() > pool.getParallelism()) send(encrypting.poll().join(), connection);
+  }
+
+  /**
+   * Sends an encrypted batch, once fewer batches than the pipeline length await their results.
+   *
+   * @param batch The batch of encrypted passwords, or null if it could not be encrypted.
+   * @param connection The {@link Connection} of the user.
+   * @throws IOException If the batch cannot be sent, or the results of a previous batch could not
+   *     be read.
+   */
+  private void send(Batch batch, Connection connection) throws IOException {
+    if (batch == null) return;
+
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (broken != null) {
+      inFlight.release();
+      throw new IOException(broken);
+    }
+
+    StringBuilder entries = new StringBuilder(batch.length);
+    for (int i = 0; i < batch.size(); ++i) {
+      if (i > 0) entries.append(',');
+      entries.append(batch.names.get(i)).append(':').append(batch.values.get(i));
+    }
+    HashMap<String, String> arguments = new HashMap<>();
+    arguments.put("entries", entries.toString());
+    if (overwrite) arguments.put("overwrite", Boolean.TRUE.toString());
+
+    ++batch.attempts;
+    // The batch is queued first, so that its results are never read before it is known
+    sent.add(batch);
+    new Command(Command.Type.MADD, arguments).write(connection.getOut(), connection.getProtocol());
+    connection.getOut().flush();
+  }
+
+  /**
+   * Sends again the batches rejected for some of their entries or throttled, until all of them were
+   * applied or failed.
+   *
+   * @param connection The {@link Connection} of the user.
+   * @throws IOException If a batch cannot be sent.
+   * @throws InterruptedException If interrupted while awaiting the results.
+   */
+  private void sendRetries(Connection connection) throws IOException, InterruptedException {
+    while (true) {
+      // Every result is read before looking for batches to send again
+      inFlight.acquire(pipeline);
+      inFlight.release(pipeline);
+
+      if (retries.isEmpty()) return;
+      Batch batch;
+      while ((batch = retries.poll()) != null) send(batch, connection);
+    }
+  }
+
+  /**
+   * Reads the results of the batches in the order they were sent, until the end marker. Once the
+   * connection fails, the remaining batches are failed without reading.
+   *
+   * @param connection The {@link Connection} of the user.
+   */
+  private void receive(Connection connection) {
+    while (true) {
+      Batch batch;
+      try {
+        batch = sent.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (batch == END) return;
+
+      if (broken != null) {
+        fail(batch, PassSecureException.Type.SOCKET_EXCEPTION.toString());
+      } else {
+        try {
+          receive(batch, connection);
+        } catch (IOException | PassSecureException e) {
+          broken = e;
+          fail(batch, PassSecureException.Type.SOCKET_EXCEPTION.toString());
+        } catch (InterruptedException e) {
+          broken = e;
+          fail(batch, PassSecureException.Type.SOCKET_EXCEPTION.toString());
+          Thread.currentThread().interrupt();
+        }
+      }
+      inFlight.release();
+      progress();
+    }
+  }
+
+  /**
+   * Reads the results of a batch: a header holding their amount, followed by one {@code OK} or
+   * {@code NOK} response per entry.
+   *
+   * @param batch The batch the results belong to.
+   * @param connection The {@link Connection} of the user.
+   * @throws IOException If the results cannot be read.
+   * @throws PassSecureException If the results are invalid.
+   * @throws InterruptedException If interrupted while waiting to send a throttled batch again.
+   */
+  private void receive(Batch batch, Connection connection)
+      throws IOException, PassSecureException, InterruptedException {
+    Command header = Command.read(connection.getIn(), connection.getProtocol());
+    if (header == null) throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+
+    // The results are all read first, a broken batch fails as a whole
+    int count = header.getInt("count");
+    List<Command> results = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      Command result = Command.read(connection.getIn(), connection.getProtocol());
+      if (result == null || i >= batch.size()) {
+        throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+      }
+      results.add(result);
+    }
+    List<Failure> rejected = new ArrayList<>();
+    Batch retry = split(batch, results, rejected);
+    failures.addAll(rejected);
+
+    if (header.getType() == Command.Type.OK) {
+      added.add(count);
+      return;
+    }
+
+    // A command rejected as a whole has no result per entry
+    String message = header.getString("message");
+    if (count == 0) {
+      if (PassSecureException.Type.RATE_LIMITED.toString().equals(message)
+          && batch.attempts < MAX_ATTEMPTS) {
+        Thread.sleep(header.getLong("retryAfter"));
+        retries.add(batch);
+      } else {
+        fail(batch, message);
+      }
+      return;
+    }
+
+    // The valid entries of an aborted transaction were not written
+    if (retry.size() == 0) return;
+    if (retry.attempts < MAX_ATTEMPTS) {
+      retry.length = batch.length;
+      retries.add(retry);
+    } else {
+      fail(retry, message);
+    }
+  }
+
+  /**
+   * Splits the entries of a batch according to their results: the rejected entries fail, the
+   * accepted ones are kept for a new attempt, in case the transaction was aborted.
+   *
+   * @param batch The batch the results belong to.
+   * @param results The result of each entry of the batch, in order.
+   * @param rejected The list receiving the failures of the rejected entries.
+   * @return The accepted entries, with the attempts of the batch.
+   */
+  static Batch split(Batch batch, List<Command> results, List<Failure> rejected) {
+    Batch accepted = new Batch();
+    accepted.attempts = batch.attempts;
+    for (int i = 0; i < results.size(); ++i) {
+      Command result = results.get(i);
+      if (result.getType() == Command.Type.NOK) {
+        rejected.add(
+            new Failure(batch.locations.get(i), batch.names.get(i), result.getString("message")));
+      } else {
+        accepted.add(batch.locations.get(i), batch.names.get(i), batch.values.get(i), 0);
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * Fails every entry of a batch.
+   *
+   * @param batch The batch that could not be imported.
+   * @param message The reason of the failure.
+   */
+  private void fail(Batch batch, String message) {
+    for (int i = 0; i < batch.size(); ++i) {
+      failures.add(new Failure(batch.locations.get(i), batch.names.get(i), message));
+    }
+  }
+
+  /** Reports the progress of the import, at most once per second. */
+  private void progress() {
+    long now = System.nanoTime();
+    if (now - lastProgress < PROGRESS_INTERVAL_NANOS) return;
+    lastProgress = now;
+    System.out.println(
+        "[Import] "
+            + read.sum()
+            + " entries read, "
+            + added.sum()
+            + " added, "
+            + failures.size()
+            + " failed");
+  }
+
+  /**
+   * Computes the length of a password once encrypted and encoded in Base64.
+   *
+   * @param password The plain password.
+   * @return The length of its encoded ciphertext.
+   */
+  static int encodedLength(String password) {
+    int length = Cipher.encryptedLength(password.getBytes(StandardCharsets.UTF_8).length);
+    return (length + 2) / 3 * 4;
+  }
+
+  /**
+   * Names the entry of a login, unique within the export.
+   *
+   * @param entry The login read from the export.
+   * @return The name of the entry in the vault.
+   */
+  String nameOf(ExportReader.Entry entry) {
+    String label = !entry.name().isBlank() ? entry.name() : hostOf(entry.url());
+    String name;
+    if (entry.username().isBlank()) name = label;
+    else if (label.isBlank()) name = entry.username();
+    else name = entry.username() + "@" + label;
+
+    String base = sanitize(name.strip());
+    String unique = base;
+    for (int i = 2; !names.add(unique); ++i) unique = base + "~" + i;
+    return unique;
+  }
+
+  /**
+   * Retrieves the host of an address, without its scheme, credentials, port and path.
+   *
+   * @param url The address of a site.
+   * @return The host, or the address itself if it has no host.
+   */
+  static String hostOf(String url) {
+    String host = url.strip().replaceFirst("^[a-zA-Z][a-zA-Z0-9+.-]*://", "");
+    for (char end : new char[] {'/', '?', '#'}) {
+      int index = host.indexOf(end);
+      if (index >= 0) host = host.substring(0, index);
+    }
+    host = host.substring(host.lastIndexOf('@') + 1);
+    int port = host.lastIndexOf(':');
+    return port > 0 && !host.endsWith("]") ? host.substring(0, port) : host;
+  }
+
+  /**
+   * Replaces the characters of a name that the protocol or the vault reserve: separators of
+   * commands, arguments and entries, path separators and control characters. The name is shortened
+   * to leave room for a suffix within the length allowed by the server.
+   *
+   * @param name The name to sanitize.
+   * @return A name accepted by the server.
+   */
+  static String sanitize(String name) {
+    StringBuilder sanitized = new StringBuilder(name.length());
+    for (int i = 0; i < name.length() && sanitized.length() < MAX_NAME_LENGTH - 8; ++i) {
+      char c = name.charAt(i);
+      boolean reserved =
+          c < 0x20
+              || c == 0x7f
+              || c == '/'
+              || c == '\\'
+              || c == ','
+              || c == ':'
+              || Character.isWhitespace(c);
+      sanitized.append(reserved ? '_' : c);
+    }
+
+    // A leading dash would read as an argument name, dots as a path
+    if (!sanitized.isEmpty() && sanitized.charAt(0) == '-') sanitized.setCharAt(0, '_');
+    String result = sanitized.toString();
+    return result.isEmpty() || result.equals(".") || result.equals("..") ? "_" + result : result;
+  }
+}
@@ -0,0 +1,310 @@
+/**
+ * The {@code JsonExportReader} class reads JSON password exports: an array of logins, or an object
+ * holding them in an array, like the {@code items} of a Bitwarden export. Every object of an array
+ * with a password, or with a {@code login} object holding one, and with a name, an address or a
+ * username is a login; its fields are matched by name, at its level and in its {@code login}
+ * object.
+ *
+ * <p>The document is parsed as it is read: logins are handed out as soon as they are complete and
+ * never kept, so only the other values of the document stay in memory.
+ */
+package ch.heigvd.dai.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonExportReader implements ExportReader {
+
+  private static final int MAX_DEPTH = 64;
+  private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+  private final BufferedReader in;
+  private int line = 1;
+
+  /**
+   * Constructs a new {@code JsonExportReader}.
+   *
+   * @param in The content of the export.
+   */
+  public JsonExportReader(Reader in) {
+    this.in = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in);
+  }
+
+  @Override
+  public void read(Handler handler) throws IOException {
+    // A byte order mark is not part of the document
+    in.mark(1);
+    if (in.read() != BYTE_ORDER_MARK) in.reset();
+
+    int start = peek();
+    if (start == -1) return;
+
+    int startLine = line;
+    Object document = readValue(handler, 0);
+    if (peek() != -1) throw error("Unexpected content after the document");
+
+    // An export of a single login
+    if (document instanceof Map<?, ?> object) {
+      Entry entry = toEntry(object, startLine);
+      if (entry != null) handler.accept(entry);
+    }
+  }
+
+  /**
+   * Reads a value. The logins found in its arrays are handed out and left out of it.
+   *
+   * @param handler The {@link Handler} receiving the logins.
+   * @param depth The amount of enclosing arrays and objects.
+   * @return A {@link Map} for an object, a {@link List} for an array, a {@link String} for a string
+   *     or a number, a {@link Boolean}, or null.
+   * @throws IOException If the document cannot be read or is malformed.
+   */
+  private Object readValue(Handler handler, int depth) throws IOException {
+    if (depth > MAX_DEPTH) throw error("Document nested too deeply");
+
+    int c = peek();
+    switch (c) {
+      case '{':
+        return readObject(handler, depth);
+      case '[':
+        return readArray(handler, depth);
+      case '"':
+        in.read();
+        return readString();
+      case 't':
+        expect("true");
+        return Boolean.TRUE;
+      case 'f':
+        expect("false");
+        return Boolean.FALSE;
+      case 'n':
+        expect("null");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) return readNumber();
+        throw error(c == -1 ? "Unexpected end of the document" : "Unexpected character");
+    }
+  }
+
+  /**
+   * Reads an object.
+   *
+   * @param handler The {@link Handler} receiving the logins of its arrays.
+   * @param depth The amount of enclosing arrays and objects.
+   * @return The members of the object, in order.
+   * @throws IOException If the document cannot be read or is malformed.
+   */
+  private Map<String, Object> readObject(Handler handler, int depth) throws IOException {
+    in.read();
+    Map<String, Object> object = new LinkedHashMap<>();
+    if (peek() == '}') {
+      in.read();
+      return object;
+    }
+
+    while (true) {
+      if (peek() != '"') throw error("Expected a member name");
+      in.read();
+      String name = readString();
+      if (peek() != ':') throw error("Expected ':'");
+      in.read();
+      object.put(name, readValue(handler, depth + 1));
+
+      int c = peek();
+      in.read();
+      if (c == '}') return object;
+      if (c != ',') throw error("Expected ',' or '}'");
+    }
+  }
+
+  /**
+   * Reads an array, handing out its logins.
+   *
+   * @param handler The {@link Handler} receiving the logins.
+   * @param depth The amount of enclosing arrays and objects.
+   * @return The elements of the array that are not logins.
+   * @throws IOException If the document cannot be read or is malformed.
+   */
+  private List<Object> readArray(Handler handler, int depth) throws IOException {
+    in.read();
+    List<Object> array = new ArrayList<>();
+    if (peek() == ']') {
+      in.read();
+      return array;
+    }
+
+    while (true) {
+      peek();
+      int startLine = line;
+      Object element = readValue(handler, depth + 1);
+      Entry entry = element instanceof Map<?, ?> object ? toEntry(object, startLine) : null;
+      if (entry != null) handler.accept(entry);
+      else array.add(element);
+
+      int c = peek();
+      in.read();
+      if (c == ']') return array;
+      if (c != ',') throw error("Expected ',' or ']'");
+    }
+  }
+
+  /**
+   * Reads the rest of a string, after its opening quote.
+   *
+   * @return The unescaped string.
+   * @throws IOException If the document cannot be read or the string is malformed.
+   */
+  private String readString() throws IOException {
+    StringBuilder string = new StringBuilder();
+    while (true) {
+      int c = in.read();
+      if (c == -1) throw error("Unterminated string");
+      if (c == '"') return string.toString();
+      if (c < 0x20) throw error("Control character in a string");
+      if (c != '\\') {
+        string.append((char) c);
+        continue;
+      }
+
+      int escaped = in.read();
+      switch (escaped) {
+        case '"', '\\', '/' -> string.append((char) escaped);
+        case 'b' -> string.append('\b');
+        case 'f' -> string.append('\f');
+        case 'n' -> string.append('\n');
+        case 'r' -> string.append('\r');
+        case 't' -> string.append('\t');
+        case 'u' -> {
+          int code = 0;
+          for (int i = 0; i < 4; ++i) {
+            int digit = Character.digit(in.read(), 16);
+            if (digit < 0) throw error("Invalid unicode escape");
+            code = code * 16 + digit;
+          }
+          string.append((char) code);
+        }
+        default -> throw error("Invalid escape");
+      }
+    }
+  }
+
+  /**
+   * Reads a number, kept as written.
+   *
+   * @return The number as a string.
+   * @throws IOException If the document cannot be read.
+   */
+  private String readNumber() throws IOException {
+    StringBuilder number = new StringBuilder();
+    while (true) {
+      in.mark(1);
+      int c = in.read();
+      if (c == -1 || "+-.eE0123456789".indexOf(c) < 0) {
+        if (c != -1) in.reset();
+        return number.toString();
+      }
+      number.append((char) c);
+    }
+  }
+
+  /**
+   * Reads a literal.
+   *
+   * @param literal The expected literal.
+   * @throws IOException If the document cannot be read or holds another word.
+   */
+  private void expect(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); ++i) {
+      if (in.read() != literal.charAt(i)) throw error("Expected " + literal);
+    }
+  }
+
+  /**
+   * Skips whitespace and looks at the next character without consuming it.
+   *
+   * @return The next character, or {@code -1} at the end of the document.
+   * @throws IOException If the document cannot be read.
+   */
+  private int peek() throws IOException {
+    while (true) {
+      in.mark(1);
+      int c = in.read();
+      if (c == '\n') ++line;
+      else if (c != ' ' && c != '\t' && c != '\r') {
+        if (c != -1) in.reset();
+        return c;
+      }
+    }
+  }
+
+  /**
+   * Creates the error of a malformed document.
+   *
+   * @param message The description of the error.
+   * @return The {@link IOException} to throw, with the current line.
+   */
+  private IOException error(String message) {
+    return new IOException(message + " at line " + line);
+  }
+
+  /**
+   * Retrieves the login an object describes.
+   *
+   * @param object The object to inspect.
+   * @param startLine The line the object starts at.
+   * @return The {@link Entry} of the login, or null if the object is not a login.
+   */
+  private static Entry toEntry(Map<?, ?> object, int startLine) {
+    Map<String, String> fields = new HashMap<>();
+    boolean login = collect(object, fields);
+    if (object.get("login") instanceof Map<?, ?> nested) {
+      login = true;
+      collect(nested, fields);
+      // Bitwarden keeps the addresses of a login in a list
+      if (nested.get("uris") instanceof List<?> uris
+          && !uris.isEmpty()
+          && uris.getFirst() instanceof Map<?, ?> uri
+          && uri.get("uri") instanceof String address) {
+        fields.putIfAbsent("url", address);
+      }
+    }
+    // Old passwords kept with a login, like the Bitwarden history, name nothing
+    if (!login
+        || !(fields.containsKey("name")
+            || fields.containsKey("url")
+            || fields.containsKey("username"))) {
+      return null;
+    }
+
+    return new Entry(
+        "line " + startLine,
+        fields.getOrDefault("name", ""),
+        fields.getOrDefault("url", ""),
+        fields.getOrDefault("username", ""),
+        fields.getOrDefault("password", ""));
+  }
+
+  /**
+   * Collects the fields of a login found among the members of an object.
+   *
+   * @param object The object to inspect.
+   * @param fields The fields found so far, the first value of each field wins.
+   * @return True if the object has a password member, even empty.
+   */
+  private static boolean collect(Map<?, ?> object, Map<String, String> fields) {
+    boolean password = false;
+    for (Map.Entry<?, ?> member : object.entrySet()) {
+      String field = ExportReader.fieldOf((String) member.getKey());
+      if (field == null) continue;
+      if (field.equals("password")) password = true;
+      if (member.getValue() instanceof String value) fields.putIfAbsent(field, value);
+    }
+    return password;
+  }
+}
@@ -2,43 +2,156 @@
  * The {@code Repl} class implements a Read-Eval-Print Loop (REPL) for user interaction in the
  * pass-secure system. It handles user commands, communicates with the server, and processes server
  * responses.
+ *
+ * <p>Commands are pipelined: every line already available on the input is sent before the first
+ * response is awaited, and responses are then consumed in the order the commands were sent. An
+ * interactive user therefore sees one round trip per command, while scripted input is only bound by
+ * the network throughput.
  */
 package ch.heigvd.dai.client;
 
+import ch.heigvd.dai.Cipher;
 import ch.heigvd.dai.Command;
 import ch.heigvd.dai.PassSecureException;
 import ch.heigvd.dai.client.commands.Generate;
 import ch.heigvd.dai.client.commands.Help;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
 
 public class Repl {
 
+  private static final int MAX_PIPELINE_LENGTH = 128;
+
+  /** The deferred part of a command, run once the responses of all previous commands are read. */
+  @FunctionalInterface
+  private interface PendingResponse {
+
+    /**
+     * Reads and processes the response of the command, if any.
+     *
+     * @throws PassSecureException If the server rejected the command or its response is invalid.
+     */
+    void receive() throws PassSecureException;
+  }
+
   /**
-   * Sends a {@link Command} to the server, encrypts it, and processes the server's response.
+   * Encrypts a {@link Command} and writes it to the server without flushing.
    *
-   * @param socketIn BufferedReader to read server responses.
-   * @param socketOut BufferedWriter to send commands to the server.
+   * @param socketOut BufferedOutputStream to send commands to the server.
+   * @param protocol The {@link Command.Protocol} of the connection.
    * @param command The command to be sent to the server.
-   * @throws PassSecureException If an error occurs during command encryption, sending, or
-   *     processing the server's response.
+   * @throws PassSecureException If an error occurs during command encryption or sending.
    */
   private static void sendCommand(
-      BufferedReader socketIn, BufferedWriter socketOut, Command command)
+      BufferedOutputStream socketOut, Command.Protocol protocol, Command command)
       throws PassSecureException {
     try {
-      // Encrypt the command and send it to the server
       command.encrypt();
-      socketOut.write(command + "\n");
-      socketOut.flush();
+      command.write(socketOut, protocol);
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
+    }
+  }
 
-      // Read and validate the server's response
-      String response = socketIn.readLine();
-      if (response == null || !isCommandAccepted(Command.parse(response))) {
+  /**
+   * Reads a response from the server and validates it.
+   *
+   * @param socketIn BufferedInputStream to read server responses.
+   * @param protocol The {@link Command.Protocol} of the connection.
+   * @return The accepted response.
+   * @throws PassSecureException If the response is missing, invalid or not {@code OK}.
+   */
+  private static Command receiveResponse(BufferedInputStream socketIn, Command.Protocol protocol)
+      throws PassSecureException {
+    try {
+      Command response = Command.read(socketIn, protocol);
+      if (response == null || !isCommandAccepted(response)) {
         throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
       }
+      return response;
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
+    }
+  }
+
+  /**
+   * Reads the next response from the server without interpreting it.
+   *
+   * @param socketIn BufferedInputStream to read server responses.
+   * @param protocol The {@link Command.Protocol} of the connection.
+   * @return The response read.
+   * @throws PassSecureException If the response is missing or invalid.
+   */
+  private static Command readResponse(BufferedInputStream socketIn, Command.Protocol protocol)
+      throws PassSecureException {
+    try {
+      Command response = Command.read(socketIn, protocol);
+      if (response == null) throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+      return response;
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
+    }
+  }
+
+  /**
+   * Reads the entry following an accepted {@code GET}. The text protocol sends it on its own line,
+   * the binary protocol as an argument of the response.
+   *
+   * @param socketIn BufferedInputStream to read server responses.
+   * @param protocol The {@link Command.Protocol} of the connection.
+   * @param response The accepted response of the {@code GET}.
+   * @return The encrypted entry.
+   * @throws PassSecureException If an I/O error occurs.
+   */
+  private static String receiveEntry(
+      BufferedInputStream socketIn, Command.Protocol protocol, Command response)
+      throws PassSecureException {
+    if (protocol == Command.Protocol.BINARY) return response.getString("password");
+
+    try {
+      return Command.readLine(socketIn);
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
+    }
+  }
+
+  /**
+   * Reads the results of a batch command: a header holding their amount, followed by one {@code OK}
+   * or {@code NOK} response per entry. Failed entries are reported to the user.
+   *
+   * @param socketIn BufferedInputStream to read server responses.
+   * @param protocol The {@link Command.Protocol} of the connection.
+   * @return The successful results.
+   * @throws PassSecureException If the response is missing or invalid, or the batch was rejected.
+   */
+  private static List<Command> receiveResults(
+      BufferedInputStream socketIn, Command.Protocol protocol) throws PassSecureException {
+    try {
+      Command header = Command.read(socketIn, protocol);
+      if (header == null) throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+
+      List<Command> accepted = new ArrayList<>();
+      int count = header.getInt("count");
+      for (int i = 0; i < count; ++i) {
+        Command result = Command.read(socketIn, protocol);
+        if (result == null) throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+
+        if (result.getType() == Command.Type.OK) accepted.add(result);
+        else
+          System.out.println(result.getString("name") + " : Error: " + result.getString("message"));
+      }
+
+      if (!isCommandAccepted(header)) {
+        throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+      }
+      return accepted;
     } catch (IOException e) {
       throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
     }
@@ -51,22 +164,218 @@ public class Repl {
    * @return {@code true} if the command type is {@code Command.Type.OK}, {@code false} otherwise.
    */
   private static boolean isCommandAccepted(Command command) {
-    if (command.getType() == Command.Type.NOK)
+    if (command.getType() == Command.Type.NOK) {
       System.out.println("Error: " + command.getString("message"));
+      if (command.getString("primary") != null) {
+        System.out.println("Primary : " + command.getString("primary"));
+      }
+      if (command.getString("node") != null) {
+        System.out.println("Node : " + command.getString("node"));
+      }
+      if (command.getString("retryAfter") != null) {
+        System.out.println("Retry after : " + command.getString("retryAfter") + " ms");
+      }
+    }
     return command.getType() == Command.Type.OK;
   }
 
+  /**
+   * Parses a user input line, sends it to the server if needed and returns the processing of its
+   * response. Local commands are deferred as well, so that their output keeps the input order.
+   *
+   * @param command The parsed user input line.
+   * @param socketIn BufferedInputStream for server responses.
+   * @param socketOut BufferedOutputStream to send commands to the server.
+   * @param protocol The {@link Command.Protocol} of the connection.
+   * @return The deferred response processing, or {@code null} if the user asked to quit.
+   * @throws PassSecureException If the command cannot be sent.
+   */
+  private static PendingResponse submit(
+      Command command,
+      BufferedInputStream socketIn,
+      BufferedOutputStream socketOut,
+      Command.Protocol protocol)
+      throws PassSecureException {
+    // Process the command based on its type
+    switch (command.getType()) {
+      case Command.Type.PING:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          receiveResponse(socketIn, protocol);
+          System.out.println("PONG");
+        };
+
+      case Command.Type.REGISTER, Command.Type.LOGIN, Command.Type.DISCONNECT:
+        // The keys derived during a session are not kept for the next one
+        Cipher.clearKeys();
+        sendCommand(socketOut, protocol, command);
+        return () -> receiveResponse(socketIn, protocol);
+
+      case Command.Type.ADD, Command.Type.REMOVE:
+        sendCommand(socketOut, protocol, command);
+        return () -> receiveResponse(socketIn, protocol);
+
+      case Command.Type.GET:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          Command response = receiveResponse(socketIn, protocol);
+          String password = command.decrypt(receiveEntry(socketIn, protocol, response));
+          System.out.println("Password : " + password);
+        };
+
+      case Command.Type.MGET:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          List<Command> results = receiveResults(socketIn, protocol);
+          List<String> passwords = new ArrayList<>(results.size());
+          for (Command result : results) passwords.add(result.getString("password"));
+
+          // Decrypt the whole batch at once
+          List<String> decrypted = command.decrypt(passwords);
+          for (int i = 0; i < results.size(); ++i) {
+            System.out.println(results.get(i).getString("name") + " : " + decrypted.get(i));
+          }
+        };
+
+      case Command.Type.MADD:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          List<Command> results = receiveResults(socketIn, protocol);
+          System.out.println(results.size() + " entries added");
+        };
+
+      case Command.Type.LIST:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          Command page = receiveResponse(socketIn, protocol);
+          for (int i = page.getInt("count"); i > 0; --i) {
+            Command entry = readResponse(socketIn, protocol);
+            System.out.println(entry.getString("name"));
+          }
+          if (page.getString("cursor") != null) {
+            System.out.println("Next page : --cursor " + page.getString("cursor"));
+          }
+        };
+
+      case Command.Type.SYNC:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          Command header = receiveResponse(socketIn, protocol);
+          List<Command> changed = new ArrayList<>();
+          List<String> passwords = new ArrayList<>();
+          for (int i = header.getInt("count"); i > 0; --i) {
+            Command entry = readResponse(socketIn, protocol);
+            changed.add(entry);
+            if (!entry.getBoolean("removed")) passwords.add(entry.getString("password"));
+          }
+
+          // Decrypt the whole batch at once
+          Iterator<String> decrypted = command.decrypt(passwords).iterator();
+          for (Command entry : changed) {
+            String change = entry.getBoolean("removed") ? "removed" : decrypted.next();
+            System.out.println(entry.getString("name") + " : " + change);
+          }
+          System.out.println(
+              "Version : "
+                  + header.getString("version")
+                  + (header.getBoolean("snapshot") ? " (snapshot)" : ""));
+        };
+
+      case Command.Type.STATS:
+      case Command.Type.SNAPSHOT:
+        sendCommand(socketOut, protocol, command);
+        return () -> {
+          Command counters = receiveResponse(socketIn, protocol);
+          new TreeMap<>(counters.getArguments())
+              .forEach((name, value) -> System.out.println(name + " : " + value));
+        };
+
+      case Command.Type.GENERATE:
+        String generatedPassword = Generate.generate(command);
+        if (!command.getBoolean("store")) {
+          return () -> System.out.println("Password : " + generatedPassword);
+        }
+
+        HashMap<String, String> arguments = command.getArguments();
+        arguments.put("password", generatedPassword);
+        sendCommand(socketOut, protocol, new Command(Command.Type.ADD, arguments));
+        return () -> {
+          System.out.println("Password : " + generatedPassword);
+          receiveResponse(socketIn, protocol);
+        };
+
+      case Command.Type.HELP:
+        return Help::help;
+
+      case Command.Type.HELLO:
+        // The protocol is negotiated once at startup through the --protocol option
+        throw new PassSecureException(PassSecureException.Type.INVALID_COMMAND);
+
+      case Command.Type.REPLICATE:
+        // Replication streams are opened by followers, never by users
+        throw new PassSecureException(PassSecureException.Type.INVALID_COMMAND);
+
+      case Command.Type.QUIT:
+        return null;
+
+      default:
+        return () -> {};
+    }
+  }
+
+  /**
+   * Retrieves the node a command must be sent to. Sessions start with {@code LOGIN} or {@code
+   * REGISTER}, which go to the node owning the user; other commands stay on the current node.
+   *
+   * @param command The command to route.
+   * @param cluster The {@link Cluster} of the nodes.
+   * @return The address of the node owning the user, or null if the command can use any node.
+   */
+  private static String route(Command command, Cluster cluster) {
+    boolean opensSession =
+        command.getType() == Command.Type.LOGIN || command.getType() == Command.Type.REGISTER;
+    String username = command.getString("username");
+    return opensSession && username != null ? cluster.nodeFor(username) : null;
+  }
+
+  /**
+   * Replaces the current connection by a connection to another node.
+   *
+   * @param current The current {@link Connection}, closed once the new one is open.
+   * @param node The address of the node, as {@code host:port}.
+   * @param cluster The {@link Cluster} of the nodes.
+   * @return The new {@link Connection}.
+   * @throws PassSecureException If the node cannot be reached, the current connection is kept.
+   */
+  private static Connection moveTo(Connection current, String node, Cluster cluster)
+      throws PassSecureException {
+    Connection connection;
+    try {
+      connection = cluster.connect(node);
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
+    }
+
+    try {
+      current.close();
+    } catch (IOException e) {
+      // The previous node is no longer used
+    }
+    System.out.println("[Client] Connected to " + node);
+    return connection;
+  }
+
   /**
    * Runs the REPL loop to handle user commands. Processes input from the user, communicates with
-   * the server, and displays appropriate responses.
+   * the server, and displays appropriate responses. Sessions are moved to the node owning their
+   * user when they log in.
    *
    * @param keyboardIn BufferedReader for user input.
-   * @param socketIn BufferedReader for server responses.
-   * @param socketOut BufferedWriter to send commands to the server.
+   * @param connection The initial {@link Connection}, closed by the caller.
+   * @param cluster The {@link Cluster} of the nodes.
    * @throws IOException If an I/O error occurs during communication.
    */
-  public static void run(
-      BufferedReader keyboardIn, BufferedReader socketIn, BufferedWriter socketOut)
+  public static void run(BufferedReader keyboardIn, Connection connection, Cluster cluster)
       throws IOException {
     // Display the welcome banner and instructions
     System.out.println(
@@ -82,59 +391,63 @@ public class Repl {
                 """);
 
     boolean quit = false;
+    Connection current = connection;
+    String deferredLine = null;
 
     // Begin the REPL loop
-    while (!quit) {
-      String line = keyboardIn.readLine();
-      if (line == null) break;
-
-      try {
-        // Parse the user input into a Command object
-        Command command = Command.parse(line);
-
-        // Process the command based on its type
-        switch (command.getType()) {
-          case Command.Type.PING:
-            sendCommand(socketIn, socketOut, command);
-            System.out.println("PONG");
-            break;
+    try {
+      while (!quit) {
+        List<PendingResponse> pipeline = new ArrayList<>();
 
-          case Command.Type.REGISTER,
-              Command.Type.LOGIN,
-              Command.Type.DISCONNECT,
-              Command.Type.ADD,
-              Command.Type.REMOVE:
-            sendCommand(socketIn, socketOut, command);
+        // Send every command already available on the input before awaiting any response
+        do {
+          String line = deferredLine != null ? deferredLine : keyboardIn.readLine();
+          deferredLine = null;
+          if (line == null) {
+            quit = true;
             break;
+          }
 
-          case Command.Type.GET:
-            sendCommand(socketIn, socketOut, command);
-            String password = command.decrypt(socketIn.readLine());
-            System.out.println("Password : " + password);
-            break;
+          try {
+            // Parse the user input into a Command object
+            Command command = Command.parse(line);
 
-          case Command.Type.GENERATE:
-            String generatedPassword = Generate.generate(command);
-            System.out.println("Password : " + generatedPassword);
-            if (command.getBoolean("store")) {
-              HashMap<String, String> arguments = command.getArguments();
-              arguments.put("password", generatedPassword);
-              sendCommand(socketIn, socketOut, new Command(Command.Type.ADD, arguments));
+            // A session moving to another node waits for the responses of the current one
+            String node = route(command, cluster);
+            if (node != null && !node.equals(current.getNode())) {
+              if (!pipeline.isEmpty()) {
+                deferredLine = line;
+                break;
+              }
+              current = moveTo(current, node, cluster);
             }
-            break;
 
-          case Command.Type.HELP:
-            Help.help();
-            break;
+            PendingResponse pendingResponse =
+                submit(command, current.getIn(), current.getOut(), current.getProtocol());
+            if (pendingResponse == null) quit = true;
+            else pipeline.add(pendingResponse);
+          } catch (PassSecureException e) {
+            pipeline.add(
+                () -> {
+                  throw e;
+                });
+          }
+        } while (!quit && keyboardIn.ready() && pipeline.size() < MAX_PIPELINE_LENGTH);
 
-          case Command.Type.QUIT:
-            quit = true;
-            break;
+        current.getOut().flush();
+
+        // Consume the responses in the order the commands were sent
+        for (PendingResponse pendingResponse : pipeline) {
+          try {
+            pendingResponse.receive();
+          } catch (PassSecureException e) {
+            // Handle and display exceptions to the user
+            System.err.println(e.getMessage());
+          }
         }
-      } catch (PassSecureException e) {
-        // Handle and display exceptions to the user
-        System.err.println(e.getMessage());
       }
+    } finally {
+      if (current != connection) current.close();
     }
   }
 }
@@ -29,6 +29,12 @@ public class Help {
                     | LOGIN         | Connecter un utilisateur existant (requis --username et --password).                                                                                    |
                     | ADD           | Ajouter un mot de passe au coffre (requis --name et --password) (optionnel --encryptionPassword).                                                       |
                     | GET           | Récupérer un mot de passe du coffre (requis --name) (optionnel --decryptionPassword).                                                                   |
+                    | LIST          | Lister les entrées du coffre (optionnel --prefix, --limit et --cursor pour la page suivante).                                                           |
+                    | STATS         | Afficher les compteurs du serveur (cache, ...).                                                                                                         |
+                    | SYNC          | Synchroniser les entrées modifiées (optionnel --since et --decryptionPassword).                                                                         |
+                    | SNAPSHOT      | Archiver tout le coffre côté serveur (administration, en local uniquement).                                                                             |
+                    | MGET          | Récupérer plusieurs mots de passe (requis --names a,b,c) (optionnel --decryptionPassword).                                                              |
+                    | MADD          | Ajouter plusieurs mots de passe d'un coup (requis --entries a:pass,b:pass) (optionnel --encryptionPassword, --overwrite).                               |
                     | REMOVE        | Supprimer un mot de passe du coffre (requis --name).                                                                                                    |
                     | DISCONNECT    | Déconnecter l'utilisateur du serveur.                                                                                                                   |
                     | PING          | Vérifier la connectivité avec le serveur.                                                                                                               |
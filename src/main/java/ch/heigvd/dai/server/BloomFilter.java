@@ -0,0 +1,106 @@
+/**
+ * The {@code BloomFilter} class implements a probabilistic set of strings. It never misses a value
+ * that was added, but may claim to contain a value that was not, with a probability bounded by the
+ * configured rate as long as no more values than expected are added. Values can be added and looked
+ * up concurrently without locking.
+ */
+package ch.heigvd.dai.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class BloomFilter {
+
+  private final AtomicLongArray bits;
+  private final long bitCount;
+  private final int hashCount;
+  private final long capacity;
+  private final AtomicLong count = new AtomicLong();
+
+  /**
+   * Constructs a new, empty {@code BloomFilter}.
+   *
+   * @param capacity The amount of values expected to be added.
+   * @param falsePositiveRate The probability of a false positive once {@code capacity} values have
+   *     been added.
+   */
+  public BloomFilter(long capacity, double falsePositiveRate) {
+    this.capacity = Math.max(capacity, 1);
+    long optimalBits =
+        (long)
+            Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    this.bits = new AtomicLongArray((int) Math.max((optimalBits + 63) / 64, 1));
+    this.bitCount = bits.length() * 64L;
+    this.hashCount = (int) Math.max(Math.round((double) bitCount / this.capacity * Math.log(2)), 1);
+  }
+
+  /**
+   * Adds a value to the filter.
+   *
+   * @param value The value to add.
+   */
+  public void add(String value) {
+    long hash = hash(value);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < hashCount; ++i) {
+      long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+
+      long current;
+      while (((current = bits.get(word)) & mask) == 0
+          && !bits.compareAndSet(word, current, current | mask)) {}
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * Checks if a value may have been added to the filter.
+   *
+   * @param value The value to look up.
+   * @return False if the value was definitely never added, true if it probably was.
+   */
+  public boolean mightContain(String value) {
+    long hash = hash(value);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < hashCount; ++i) {
+      long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks if more values than expected were added, in which case the false positive rate is no
+   * longer guaranteed and the filter should be rebuilt larger.
+   *
+   * @return True if the filter holds more values than its capacity.
+   */
+  public boolean isSaturated() {
+    return count.get() > capacity;
+  }
+
+  /**
+   * Hashes a value with 64-bit FNV-1a followed by a final avalanche mix, so that both halves of the
+   * result can serve as independent hashes.
+   *
+   * @param value The value to hash.
+   * @return The 64-bit hash of the value.
+   */
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); ++i) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
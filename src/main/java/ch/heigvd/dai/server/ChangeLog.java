@@ -0,0 +1,83 @@
+/**
+ * The {@code ChangeLog} class records the version of a user's vault and the names of its most
+ * recent changes, so that mirrors can fetch only what changed since the version they hold. The log
+ * is bounded: once older changes are dropped, mirrors behind them must start over from a snapshot.
+ *
+ * <p>A change log is not thread-safe on its own, it is guarded by the lock of its user in {@link
+ * State}: writers record changes under the write lock, readers query it under the read lock.
+ */
+package ch.heigvd.dai.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ChangeLog {
+
+  private static final int MAX_CHANGES = 1024;
+
+  private final ArrayDeque<Change> changes = new ArrayDeque<>();
+  private long version;
+  private long floor;
+
+  /**
+   * A change of an entry.
+   *
+   * @param version The version of the vault after the change.
+   * @param name The name of the changed entry.
+   * @param removed Whether the entry was removed, rather than added or overwritten.
+   */
+  private record Change(long version, String name, boolean removed) {}
+
+  /**
+   * Constructs a new, empty {@code ChangeLog}. Versions of different runs of the server must not
+   * overlap, so the initial version is derived from the time the server started.
+   *
+   * @param initialVersion The version of the vault before any recorded change.
+   */
+  public ChangeLog(long initialVersion) {
+    this.version = initialVersion;
+    this.floor = initialVersion;
+  }
+
+  /**
+   * Records a change, dropping the oldest one if the log is full.
+   *
+   * @param name The name of the changed entry.
+   * @param removed Whether the entry was removed.
+   */
+  public void record(String name, boolean removed) {
+    changes.addLast(new Change(++version, name, removed));
+    if (changes.size() > MAX_CHANGES) floor = changes.removeFirst().version();
+  }
+
+  /**
+   * Gets the current version of the vault.
+   *
+   * @return The version after the last recorded change.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Retrieves the entries changed since a version, each one with its last change only.
+   *
+   * @param since The version held by the mirror.
+   * @return Whether each changed entry was removed, by name with the most recently changed first,
+   *     or null if the log does not reach back to {@code since} and a snapshot is needed.
+   */
+  public Map<String, Boolean> since(long since) {
+    if (since < floor || since > version) return null;
+
+    LinkedHashMap<String, Boolean> changed = new LinkedHashMap<>();
+    Iterator<Change> newest = changes.descendingIterator();
+    while (newest.hasNext()) {
+      Change change = newest.next();
+      if (change.version() <= since) break;
+      changed.putIfAbsent(change.name(), change.removed());
+    }
+    return changed;
+  }
+}
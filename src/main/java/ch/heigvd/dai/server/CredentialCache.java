@@ -0,0 +1,212 @@
+/**
+ * The {@code CredentialCache} class implements a server-wide, bounded cache of the parsed
+ * credentials of the users, so that logging in does not read the credential file of the user each
+ * time. The least recently used credentials are evicted once the capacity is reached.
+ *
+ * <p>Once a password was verified against a credential, the cache also keeps an HMAC of it under a
+ * random key drawn when the server starts. Later logins of the user with the same password are then
+ * checked against it in constant time, without the slow key derivation of the credential. Replacing
+ * or invalidating the credential drops it.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.CryptoEngine;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class CredentialCache {
+
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+
+  private final int capacity;
+  private final SecretKeySpec verifierKey;
+  private final LinkedHashMap<String, Cached> credentials;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder verifiedLogins = new LongAdder();
+
+  /**
+   * A cached credential.
+   *
+   * @param credential The parsed credential of the user.
+   * @param verifier The HMAC of the last password verified against it, or null.
+   */
+  private record Cached(CredentialHasher.Credential credential, byte[] verifier) {}
+
+  /**
+   * Constructs a new {@code CredentialCache}.
+   *
+   * @param capacity The maximum amount of cached users, {@code 0} disables the cache.
+   */
+  public CredentialCache(int capacity) {
+    this.capacity = capacity;
+    this.credentials =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CredentialCache.this.capacity;
+          }
+        };
+
+    this.verifierKey = new SecretKeySpec(CryptoEngine.randomBytes(32), MAC_ALGORITHM);
+  }
+
+  /**
+   * Retrieves the credential of a user.
+   *
+   * @param username The user.
+   * @return The cached credential, or null if it must be read from the store.
+   */
+  public CredentialHasher.Credential get(String username) {
+    lock.lock();
+    try {
+      Cached cached = credentials.get(username);
+      if (cached == null) {
+        misses.increment();
+        return null;
+      }
+
+      hits.increment();
+      return cached.credential();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Caches the credential of a user read from the store or just written to it. The caller must hold
+   * the user's lock, so that a credential being replaced cannot be cached again once invalidated.
+   *
+   * @param username The user.
+   * @param credential The credential of the user.
+   */
+  public void put(String username, CredentialHasher.Credential credential) {
+    if (capacity == 0) return;
+
+    lock.lock();
+    try {
+      credentials.put(username, new Cached(credential, null));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Forgets the credential of a user. The caller must hold the user's write lock.
+   *
+   * @param username The user.
+   */
+  public void invalidate(String username) {
+    lock.lock();
+    try {
+      credentials.remove(username);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Checks a password against the last password verified against a credential.
+   *
+   * @param username The user.
+   * @param credential The credential the password must match, as retrieved.
+   * @param password The password given by the user.
+   * @return True if the password was already verified against this credential.
+   */
+  public boolean isVerified(
+      String username, CredentialHasher.Credential credential, String password) {
+    byte[] verifier;
+    lock.lock();
+    try {
+      Cached cached = credentials.get(username);
+      if (cached == null || cached.credential() != credential || cached.verifier() == null) {
+        return false;
+      }
+      verifier = cached.verifier();
+    } finally {
+      lock.unlock();
+    }
+
+    if (!MessageDigest.isEqual(verifier, mac(username, password))) return false;
+    verifiedLogins.increment();
+    return true;
+  }
+
+  /**
+   * Remembers a password just verified against a credential, unless the credential was replaced or
+   * evicted meanwhile.
+   *
+   * @param username The user.
+   * @param credential The credential the password was verified against.
+   * @param password The verified password.
+   */
+  public void remember(String username, CredentialHasher.Credential credential, String password) {
+    if (capacity == 0) return;
+
+    byte[] verifier = mac(username, password);
+    lock.lock();
+    try {
+      Cached cached = credentials.get(username);
+      if (cached != null && cached.credential() == credential) {
+        credentials.put(username, new Cached(credential, verifier));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the amount of logins that found the credential of their user in the cache.
+   *
+   * @return The amount of cache hits.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the amount of logins that read the credential of their user from the store.
+   *
+   * @return The amount of cache misses.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the amount of logins verified against a remembered password, without key derivation.
+   *
+   * @return The amount of verified logins.
+   */
+  public long getVerifiedLogins() {
+    return verifiedLogins.sum();
+  }
+
+  /**
+   * Computes the verifier of a password.
+   *
+   * @param username The user, so that equal passwords of different users differ.
+   * @param password The password.
+   * @return The HMAC of the username and password.
+   */
+  private byte[] mac(String username, String password) {
+    try {
+      Mac mac = CryptoEngine.hmacSha256();
+      mac.init(verifierKey);
+      mac.update(username.getBytes(StandardCharsets.UTF_8));
+      mac.update((byte) 0);
+      return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      // The key is a valid HMAC key
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * The {@code CredentialHasher} class hashes and verifies the passwords of users with PBKDF2, on a
+ * small pool of threads of its own. The key derivation is deliberately slow, so running it on the
+ * threads serving connections would let a burst of logins starve every other command; the pool
+ * bounds the CPU it takes and rejects logins with {@code busy} once its queue is full.
+ *
+ * <p>Credentials are stored as {@code $pbkdf2-sha512$<iterations>$<salt>$<hash>}, with a salt of
+ * their own. Credentials without this prefix are single SHA-512 hashes of the first versions; they
+ * are still verified and report that they need an upgrade, like those using fewer iterations than
+ * configured.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.Cipher;
+import ch.heigvd.dai.CryptoEngine;
+import ch.heigvd.dai.PassSecureException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.spec.PBEKeySpec;
+
+public class CredentialHasher {
+
+  private static final String PREFIX = "$pbkdf2-sha512$";
+  private static final int SALT_LENGTH = 16;
+  private static final int HASH_BITS = 512;
+
+  private final int iterations;
+  private final ThreadPoolExecutor executor;
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * A stored credential, parsed once.
+   *
+   * @param encoded The credential as stored.
+   * @param iterations The amount of PBKDF2 iterations, {@code 0} for a legacy hash.
+   * @param salt The salt of the hash, null for a legacy hash.
+   * @param hash The hash of the password.
+   */
+  public record Credential(String encoded, int iterations, byte[] salt, byte[] hash) {
+
+    /**
+     * Checks whether the credential is a single SHA-512 hash of the first versions.
+     *
+     * @return True for a legacy hash.
+     */
+    public boolean isLegacy() {
+      return salt == null;
+    }
+  }
+
+  /**
+   * Constructs a new {@code CredentialHasher}.
+   *
+   * @param iterations The amount of PBKDF2 iterations of new credentials.
+   * @param threads The amount of hashing threads.
+   * @param queue The amount of hashes waiting for a thread before new ones are rejected.
+   */
+  public CredentialHasher(int iterations, int threads, int queue) {
+    this.iterations = iterations;
+
+    AtomicInteger count = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(queue, 1)),
+            runnable -> {
+              Thread thread = new Thread(runnable, "hasher-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Hashes a password into a new credential, with a new salt and the configured iterations.
+   *
+   * @param password The password of the user.
+   * @return The credential to store.
+   * @throws PassSecureException If the pool is saturated, or the hash cannot be computed.
+   */
+  public String hash(String password) throws PassSecureException {
+    byte[] salt = CryptoEngine.randomBytes(SALT_LENGTH);
+    byte[] hash = run(() -> derive(password, salt, iterations));
+
+    Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+    return PREFIX
+        + iterations
+        + "$"
+        + encoder.encodeToString(salt)
+        + "$"
+        + encoder.encodeToString(hash);
+  }
+
+  /**
+   * Parses a stored credential.
+   *
+   * @param encoded The credential as stored.
+   * @return The parsed {@link Credential}.
+   * @throws PassSecureException If the credential is corrupted.
+   */
+  public static Credential parse(String encoded) throws PassSecureException {
+    if (!encoded.startsWith(PREFIX)) {
+      return new Credential(encoded, 0, null, encoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+    if (parts.length != 3) throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    try {
+      return new Credential(
+          encoded,
+          Integer.parseInt(parts[0]),
+          Base64.getDecoder().decode(parts[1]),
+          Base64.getDecoder().decode(parts[2]));
+    } catch (IllegalArgumentException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    }
+  }
+
+  /**
+   * Checks a password against a stored credential, in constant time for a given credential.
+   *
+   * @param password The password given by the user.
+   * @param credential The stored {@link Credential}.
+   * @return True if the password matches.
+   * @throws PassSecureException If the pool is saturated, or the hash cannot be computed.
+   */
+  public boolean verify(String password, Credential credential) throws PassSecureException {
+    byte[] hash =
+        credential.isLegacy()
+            ? run(() -> Cipher.hash(password).getBytes(StandardCharsets.UTF_8))
+            : run(() -> derive(password, credential.salt(), credential.iterations()));
+    return MessageDigest.isEqual(hash, credential.hash());
+  }
+
+  /**
+   * Checks whether a credential is weaker than the new ones: a legacy hash, or fewer iterations.
+   *
+   * @param credential The stored {@link Credential}.
+   * @return True if the credential should be hashed again at the next login.
+   */
+  public boolean needsUpgrade(Credential credential) {
+    return credential.isLegacy() || credential.iterations() < iterations;
+  }
+
+  /**
+   * Gets the amount of hashes rejected because the pool was saturated.
+   *
+   * @return The amount of rejected hashes.
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Runs a hash on the pool and waits for it.
+   *
+   * @param task The hash to compute.
+   * @return The computed hash.
+   * @throws PassSecureException If the queue is full ({@code busy}) or the hash fails.
+   */
+  private byte[] run(Callable<byte[]> task) throws PassSecureException {
+    Future<byte[]> future;
+    try {
+      future = executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      throw new PassSecureException(PassSecureException.Type.BUSY);
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } catch (ExecutionException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    }
+  }
+
+  /**
+   * Derives the hash of a password.
+   *
+   * @param password The password to hash.
+   * @param salt The salt of the credential.
+   * @param rounds The amount of PBKDF2 iterations.
+   * @return The derived hash.
+   * @throws GeneralSecurityException If PBKDF2 is not available.
+   */
+  private static byte[] derive(String password, byte[] salt, int rounds)
+      throws GeneralSecurityException {
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, HASH_BITS);
+    try {
+      return CryptoEngine.pbkdf2Sha512().generateSecret(spec).getEncoded();
+    } finally {
+      spec.clearPassword();
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * The {@code Durability} class forces written files to disk according to the configured policy
+ * before a write is acknowledged. In {@code group} mode, the files written by concurrent sessions
+ * are collected for a few milliseconds and forced together by a single flusher thread, so that
+ * every acknowledged write is durable without paying one disk flush per command.
+ */
+package ch.heigvd.dai.server;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Durability {
+
+  private static final long GROUP_WINDOW_MILLIS = 2;
+
+  /** The policies available to force writes to disk. */
+  public enum Mode {
+    /** Never force, the operating system flushes its cache when it sees fit. */
+    NONE,
+    /** Force the written files before every acknowledgement. */
+    ALWAYS,
+    /** Force the files written by concurrent sessions together, then acknowledge them all. */
+    GROUP
+  }
+
+  private final Mode mode;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition pending = lock.newCondition();
+  private final Condition flushed = lock.newCondition();
+  private Group group = new Group();
+
+  /** The files collected for the next flush and its outcome. */
+  private static class Group {
+    private final Set<Path> files = new LinkedHashSet<>();
+    private boolean done;
+    private IOException error;
+  }
+
+  /**
+   * Constructs a new {@code Durability} and starts the flusher thread in {@code group} mode.
+   *
+   * @param mode The policy to apply.
+   */
+  public Durability(Mode mode) {
+    this.mode = mode;
+    if (mode != Mode.GROUP) return;
+
+    Thread flusher = new Thread(this::flush, "group-commit");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Makes written files durable according to the policy, returning once they are on disk. The
+   * directories holding files that were created, renamed or deleted must be passed as well.
+   *
+   * @param files The written files and modified directories.
+   * @throws IOException If the files cannot be forced to disk.
+   */
+  public void sync(Collection<Path> files) throws IOException {
+    switch (mode) {
+      case NONE -> {}
+      case ALWAYS -> force(files);
+      case GROUP -> {
+        lock.lock();
+        try {
+          Group joined = group;
+          joined.files.addAll(files);
+          pending.signal();
+          while (!joined.done) flushed.awaitUninterruptibly();
+          if (joined.error != null) throw new IOException("Group commit failed", joined.error);
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /** Runs on the flusher thread: waits for written files, then forces each group in turn. */
+  private void flush() {
+    while (true) {
+      lock.lock();
+      try {
+        while (group.files.isEmpty()) pending.awaitUninterruptibly();
+      } finally {
+        lock.unlock();
+      }
+
+      // Let concurrent sessions join the group before closing it
+      try {
+        Thread.sleep(GROUP_WINDOW_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      Group closed;
+      lock.lock();
+      try {
+        closed = group;
+        group = new Group();
+      } finally {
+        lock.unlock();
+      }
+
+      IOException error = null;
+      try {
+        force(closed.files);
+      } catch (IOException e) {
+        System.out.println("[Server] group commit failed: " + e);
+        error = e;
+      }
+
+      lock.lock();
+      try {
+        closed.error = error;
+        closed.done = true;
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Forces files and directories to disk. Directories cannot be opened on every platform, so
+   * failing to force one is ignored.
+   *
+   * @param files The files and directories to force.
+   * @throws IOException If a file cannot be forced.
+   */
+  private static void force(Collection<Path> files) throws IOException {
+    for (Path file : files) {
+      boolean directory = file.toFile().isDirectory();
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        channel.force(true);
+      } catch (IOException e) {
+        if (!directory) throw e;
+      }
+    }
+  }
+}
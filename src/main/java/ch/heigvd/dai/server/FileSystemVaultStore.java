@@ -0,0 +1,242 @@
+/**
+ * The {@code FileSystemVaultStore} class stores the vault on disk: one directory per user holding
+ * its credential hash and one file per entry. User directories are placed according to a {@link
+ * VaultLayout}.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FileSystemVaultStore implements VaultStore {
+
+  private static final String HASH_EXTENSION = ".hs";
+  private static final String ENTRY_EXTENSION = ".ps";
+
+  private final Path root;
+  private final VaultLayout layout;
+  private final Durability durability;
+
+  /**
+   * Constructs a new {@code FileSystemVaultStore} with a flat layout that never forces its writes
+   * to disk.
+   *
+   * @param root The directory holding the users' vaults.
+   */
+  public FileSystemVaultStore(Path root) {
+    this(root, VaultLayout.FLAT, new Durability(Durability.Mode.NONE));
+  }
+
+  /**
+   * Constructs a new {@code FileSystemVaultStore}.
+   *
+   * @param root The directory holding the users' vaults.
+   * @param layout The {@link VaultLayout} placing the users' vaults.
+   * @param durability The {@link Durability} making writes durable before they are acknowledged.
+   */
+  public FileSystemVaultStore(Path root, VaultLayout layout, Durability durability) {
+    this.root = root;
+    this.layout = layout;
+    this.durability = durability;
+  }
+
+  /**
+   * Starts serving the store: deletes the temporary files left in the users' directories by writes
+   * interrupted by a crash. Must be called before any write.
+   */
+  public void start() {
+    int deleted = 0;
+    try {
+      for (String username : listUsers())
+        deleted += File.deleteTemporaryFiles(getUserVault(username));
+    } catch (IOException e) {
+      System.out.println("[Server] cannot delete leftover temporary files: " + e);
+    }
+    if (deleted > 0)
+      System.out.println("[Server] deleted " + deleted + " leftover temporary files");
+  }
+
+  /**
+   * Gets the policy making writes durable.
+   *
+   * @return The {@link Durability} of the store.
+   */
+  protected Durability getDurability() {
+    return durability;
+  }
+
+  /**
+   * Retrieves the vault directory of a user.
+   *
+   * @param username The owner of the vault.
+   * @return The {@link Path} of the user's vault directory.
+   */
+  protected Path getUserVault(String username) {
+    return layout.resolve(root, username);
+  }
+
+  @Override
+  public boolean createUser(String username, String credential) throws IOException {
+    Path vault = getUserVault(username);
+    if (vault.toFile().isDirectory()) return false;
+
+    if (!vault.toFile().mkdirs()) throw new IOException("Cannot create " + vault);
+    Path credentialPath = vault.resolve(username + HASH_EXTENSION);
+    File.write(credentialPath, credential);
+
+    // Shard directories may have been created along with the user's one
+    List<Path> written = new ArrayList<>(List.of(credentialPath));
+    Path top = root.toAbsolutePath().normalize();
+    for (Path directory = vault.toAbsolutePath().normalize();
+        directory != null && directory.startsWith(top);
+        directory = directory.getParent()) {
+      written.add(directory);
+    }
+    durability.sync(written);
+    return true;
+  }
+
+  @Override
+  public Collection<String> listUsers() throws IOException {
+    return layout.listUsers(root);
+  }
+
+  @Override
+  public String getCredential(String username) throws IOException {
+    Path vault = getUserVault(username);
+    if (!vault.toFile().isDirectory()) return null;
+
+    return File.read(vault.resolve(username + HASH_EXTENSION));
+  }
+
+  @Override
+  public void setCredential(String username, String credential) throws IOException {
+    Path vault = getUserVault(username);
+    Path credentialPath = vault.resolve(username + HASH_EXTENSION);
+    File.write(credentialPath, credential);
+    durability.sync(List.of(credentialPath, vault));
+  }
+
+  /** Resolves the user's directory once, in its absolute and normalized form. */
+  @Override
+  public UserVault open(String username) throws IOException {
+    return new FileUserVault(getUserVault(username).toAbsolutePath().normalize());
+  }
+
+  /** The directory of a user, holding one file per entry. */
+  private class FileUserVault implements UserVault {
+
+    private final Path directory;
+
+    /**
+     * Constructs a handle on a user's directory.
+     *
+     * @param directory The absolute, normalized {@link Path} of the user's directory.
+     */
+    private FileUserVault(Path directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    public String getEntry(String name) throws IOException {
+      // A missing file is reported by the read itself rather than checked beforehand
+      try {
+        return File.read(getEntryPath(name));
+      } catch (NoSuchFileException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public boolean containsEntry(String name) {
+      return Files.exists(getEntryPath(name));
+    }
+
+    @Override
+    public void putEntry(String name, String value) throws IOException {
+      Path path = getEntryPath(name);
+      File.write(path, value);
+      durability.sync(List.of(path, directory));
+    }
+
+    @Override
+    public boolean removeEntry(String name) throws IOException {
+      if (!Files.deleteIfExists(getEntryPath(name))) return false;
+
+      durability.sync(List.of(directory));
+      return true;
+    }
+
+    @Override
+    public Collection<String> listEntries() throws IOException {
+      // Temporary files of interrupted writes never end with the entry extension
+      List<String> names = new ArrayList<>();
+      try (DirectoryStream<Path> entries =
+          Files.newDirectoryStream(directory, "*" + ENTRY_EXTENSION)) {
+        for (Path entry : entries) {
+          String fileName = entry.getFileName().toString();
+          names.add(fileName.substring(0, fileName.length() - ENTRY_EXTENSION.length()));
+        }
+      }
+      return names;
+    }
+
+    /**
+     * Writes the entries one file at a time, keeping their previous content so that the entries
+     * already written are restored if a write fails. The whole batch is made durable at once.
+     */
+    @Override
+    public void putEntries(Map<String, String> entries) throws IOException {
+      Map<Path, String> previous = new LinkedHashMap<>();
+      try {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+          Path path = getEntryPath(entry.getKey());
+          previous.put(path, Files.exists(path) ? File.read(path) : null);
+          File.write(path, entry.getValue());
+        }
+
+        List<Path> written = new ArrayList<>(previous.keySet());
+        written.add(directory);
+        durability.sync(written);
+      } catch (IOException e) {
+        rollback(previous);
+        throw e;
+      }
+    }
+
+    /**
+     * Retrieves the file of an entry.
+     *
+     * @param name The name of the entry.
+     * @return The {@link Path} of the entry's file.
+     */
+    private Path getEntryPath(String name) {
+      return directory.resolve(name + ENTRY_EXTENSION);
+    }
+  }
+
+  /**
+   * Restores entries written by an aborted batch to their previous content.
+   *
+   * @param previous The previous content of each written entry, null if it did not exist.
+   */
+  private static void rollback(Map<Path, String> previous) {
+    for (Map.Entry<Path, String> entry : previous.entrySet()) {
+      try {
+        if (entry.getValue() == null) Files.deleteIfExists(entry.getKey());
+        else File.write(entry.getKey(), entry.getValue());
+      } catch (IOException e) {
+        System.out.println("[Server] rollback failed for " + entry.getKey() + ": " + e);
+      }
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * The {@code Follower} class keeps the vault of a read-only server in sync with its primary. It
+ * subscribes to the primary's {@link ReplicationLog} over a binary connection, applies the received
+ * mutations through {@link State} and reconnects from the last applied mutation whenever the
+ * connection drops.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+public class Follower implements Runnable {
+
+  private static final int READ_TIMEOUT_MILLIS = 30_000;
+  private static final long RETRY_DELAY_MILLIS = 1_000;
+
+  private final String host;
+  private final int port;
+  private final String key;
+  private long sequence = -1;
+
+  /**
+   * Constructs a new {@code Follower}.
+   *
+   * @param host The host of the primary.
+   * @param port The port of the primary.
+   * @param key The replication key of the primary.
+   */
+  public Follower(String host, int port, String key) {
+    this.host = host;
+    this.port = port;
+    this.key = key;
+  }
+
+  /** Starts following the primary on a daemon thread and returns immediately. */
+  public void start() {
+    Thread thread = new Thread(this, "follower");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Follows the primary until the server stops, reconnecting after each failure. */
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        follow();
+      } catch (IOException | PassSecureException e) {
+        System.out.println("[Server] replication from " + host + ":" + port + " stopped: " + e);
+      }
+
+      try {
+        Thread.sleep(RETRY_DELAY_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Subscribes to the primary and applies its mutations until the connection drops.
+   *
+   * @throws IOException If the connection fails or a mutation cannot be applied.
+   * @throws PassSecureException If the primary rejects the subscription or sends an invalid record.
+   */
+  private void follow() throws IOException, PassSecureException {
+    try (Socket socket = new Socket(host, port);
+        BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+        BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+      socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+
+      // Names and values are sent as they are, which only binary frames allow
+      HashMap<String, String> hello = new HashMap<>();
+      hello.put("protocol", Command.Protocol.BINARY.toString());
+      new Command(Command.Type.HELLO, hello).write(out, Command.Protocol.TEXT);
+      out.flush();
+      receive(in, Command.Protocol.TEXT);
+
+      HashMap<String, String> arguments = new HashMap<>();
+      arguments.put("key", key);
+      if (sequence >= 0) arguments.put("since", String.valueOf(sequence));
+      new Command(Command.Type.REPLICATE, arguments).write(out, Command.Protocol.BINARY);
+      out.flush();
+
+      Command header = receive(in, Command.Protocol.BINARY);
+      long start = header.getLong("sequence");
+      if (header.getBoolean("dump")) applyDump(in);
+      sequence = start;
+      System.out.println("[Server] Following " + host + ":" + port + " from " + sequence);
+
+      while (true) {
+        ReplicationLog.Record record =
+            ReplicationLog.Record.fromCommand(receive(in, Command.Protocol.BINARY));
+        if (record == null) continue; // The primary is idle
+
+        State.applyRecord(record);
+        sequence = record.sequence();
+      }
+    }
+  }
+
+  /**
+   * Applies a dump of the primary's vault, user by user. Entries of a user missing from the dump
+   * were removed on the primary and are dropped once all of the user's entries are received.
+   *
+   * @param in The {@link BufferedInputStream} of the connection.
+   * @throws IOException If the connection fails or a mutation cannot be applied.
+   * @throws PassSecureException If the primary sends an invalid record.
+   */
+  private void applyDump(BufferedInputStream in) throws IOException, PassSecureException {
+    String username = null;
+    Set<String> stale = new HashSet<>();
+    long users = 0;
+
+    while (true) {
+      Command response = receive(in, Command.Protocol.BINARY);
+      ReplicationLog.Record record = ReplicationLog.Record.fromCommand(response);
+      if (record == null && !response.getBoolean("synced")) continue;
+
+      if (record == null || record.operation() == ReplicationLog.Operation.REGISTER) {
+        if (username != null) dropStale(username, stale);
+        if (record == null) break;
+
+        State.applyRecord(record);
+        username = record.username();
+        stale = new HashSet<>(State.listEntries(username));
+        ++users;
+        continue;
+      }
+
+      State.applyRecord(record);
+      stale.remove(record.name());
+    }
+
+    System.out.println("[Server] Dump of " + users + " users applied");
+  }
+
+  /**
+   * Removes the entries of a user that are missing from the dump.
+   *
+   * @param username The owner of the entries.
+   * @param stale The names of the entries missing from the dump.
+   * @throws IOException If an entry cannot be removed.
+   * @throws PassSecureException If a name is invalid.
+   */
+  private static void dropStale(String username, Set<String> stale)
+      throws IOException, PassSecureException {
+    for (String name : stale) {
+      State.applyRecord(
+          new ReplicationLog.Record(0, ReplicationLog.Operation.REMOVE, username, name, null));
+    }
+  }
+
+  /**
+   * Reads a response of the primary.
+   *
+   * @param in The {@link BufferedInputStream} of the connection.
+   * @param protocol The {@link Command.Protocol} of the connection.
+   * @return The {@code OK} response.
+   * @throws IOException If the connection fails or is closed.
+   * @throws PassSecureException If the response is invalid or not {@code OK}.
+   */
+  private static Command receive(BufferedInputStream in, Command.Protocol protocol)
+      throws IOException, PassSecureException {
+    Command response = Command.read(in, protocol);
+    if (response == null) throw new IOException("Connection closed by the primary");
+    if (response.getType() != Command.Type.OK) {
+      String message = response.getString("message");
+      throw new IOException("Rejected by the primary: " + message);
+    }
+    return response;
+  }
+}
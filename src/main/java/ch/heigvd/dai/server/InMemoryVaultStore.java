@@ -0,0 +1,91 @@
+/**
+ * The {@code InMemoryVaultStore} class keeps the whole vault in memory, for load tests and
+ * ephemeral deployments. Nothing is persisted: the vault is lost when the server stops. Every
+ * operation is lock-free, relying on concurrent maps only.
+ */
+package ch.heigvd.dai.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryVaultStore implements VaultStore {
+
+  private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+
+  /**
+   * A user and its entries.
+   *
+   * @param credential The credential hash of the user.
+   * @param entries The entries of the user, by name.
+   */
+  private record User(String credential, ConcurrentHashMap<String, String> entries) {}
+
+  @Override
+  public boolean createUser(String username, String credential) {
+    return users.putIfAbsent(username, new User(credential, new ConcurrentHashMap<>())) == null;
+  }
+
+  @Override
+  public Collection<String> listUsers() {
+    return new ArrayList<>(users.keySet());
+  }
+
+  @Override
+  public String getCredential(String username) {
+    User user = users.get(username);
+    return user == null ? null : user.credential();
+  }
+
+  @Override
+  public void setCredential(String username, String credential) throws IOException {
+    User user =
+        users.computeIfPresent(
+            username, (name, current) -> new User(credential, current.entries()));
+    if (user == null) throw new IOException("Unknown user " + username);
+  }
+
+  @Override
+  public UserVault open(String username) throws IOException {
+    User user = users.get(username);
+    if (user == null) throw new IOException("Unknown user " + username);
+    return new MemoryUserVault(user.entries());
+  }
+
+  /** The entries of a user, bound once at login. */
+  private record MemoryUserVault(ConcurrentHashMap<String, String> entries) implements UserVault {
+
+    @Override
+    public String getEntry(String name) {
+      return entries.get(name);
+    }
+
+    @Override
+    public boolean containsEntry(String name) {
+      return entries.containsKey(name);
+    }
+
+    @Override
+    public void putEntry(String name, String value) {
+      entries.put(name, value);
+    }
+
+    @Override
+    public boolean removeEntry(String name) {
+      return entries.remove(name) != null;
+    }
+
+    @Override
+    public Collection<String> listEntries() {
+      return new ArrayList<>(entries.keySet());
+    }
+
+    /** Writing to memory cannot fail, so the batch is always applied as a whole. */
+    @Override
+    public void putEntries(Map<String, String> entries) {
+      this.entries.putAll(entries);
+    }
+  }
+}
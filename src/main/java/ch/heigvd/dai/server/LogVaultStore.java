@@ -0,0 +1,681 @@
+/**
+ * The {@code LogVaultStore} class implements a log-structured storage engine for vault entries.
+ * Users and credentials are stored like in {@link FileSystemVaultStore}, but each user's entries
+ * live in a single append-only segment file next to its credentials, indexed in memory by entry
+ * name. Overwritten and removed records are reclaimed by a background compaction.
+ *
+ * <p>Only a bounded amount of segments are kept open: the least recently used one is closed, and
+ * its index dropped, once too many are open. A closed segment is reopened and replayed on its next
+ * access.
+ */
+package ch.heigvd.dai.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+public class LogVaultStore extends FileSystemVaultStore {
+
+  private static final String SEGMENT_EXTENSION = ".log";
+  private static final String COMPACTION_EXTENSION = ".compact";
+  private static final String CORRUPT_EXTENSION = ".corrupt";
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+  private static final int HEADER_SIZE = 1 + 4 + 4;
+  private static final int TRAILER_SIZE = 4;
+  private static final long COMPACTION_THRESHOLD = 64 * 1024;
+  private static final long COMPACTION_PERIOD_SECONDS = 30;
+  private static final int MAX_OPEN_SEGMENTS = 256;
+
+  private final ConcurrentHashMap<Path, Segment> segments = new ConcurrentHashMap<>();
+  private final LinkedHashMap<Path, Segment> openSegments = new LinkedHashMap<>(16, 0.75f, true);
+  private final ReentrantLock openSegmentsLock = new ReentrantLock();
+  private final ScheduledExecutorService compactor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "log-compactor");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * Constructs a new {@code LogVaultStore}. Segments are only compacted once {@link #start()} is
+   * called.
+   *
+   * @param root The directory holding the users' vaults.
+   * @param layout The {@link VaultLayout} placing the users' vaults.
+   * @param durability The {@link Durability} making appends durable before they are acknowledged.
+   */
+  public LogVaultStore(Path root, VaultLayout layout, Durability durability) {
+    super(root, layout, durability);
+  }
+
+  /** Deletes leftover temporary files, then schedules the background compaction of the segments. */
+  @Override
+  public void start() {
+    super.start();
+    compactor.scheduleWithFixedDelay(
+        this::compact, COMPACTION_PERIOD_SECONDS, COMPACTION_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * The location of a live record value in a segment.
+   *
+   * @param recordOffset The offset of the whole record.
+   * @param recordSize The size of the whole record.
+   * @param valueOffset The offset of the value.
+   * @param valueSize The size of the value.
+   */
+  private record Location(long recordOffset, int recordSize, long valueOffset, int valueSize) {}
+
+  /** Opens the user's segment, replaying it if it is not open, and binds the handle to it. */
+  @Override
+  public UserVault open(String username) throws IOException {
+    return new LogUserVault(getSegment(username));
+  }
+
+  /** The segment of a user, bound once at login. */
+  private class LogUserVault implements UserVault {
+
+    private final Segment segment;
+
+    /**
+     * Constructs a handle on a user's segment.
+     *
+     * @param segment The user's {@link Segment}.
+     */
+    private LogUserVault(Segment segment) {
+      this.segment = segment;
+    }
+
+    @Override
+    public String getEntry(String name) throws IOException {
+      return segment.get(name);
+    }
+
+    @Override
+    public boolean containsEntry(String name) throws IOException {
+      return segment.contains(name);
+    }
+
+    @Override
+    public void putEntry(String name, String value) throws IOException {
+      putEntries(Map.of(name, value));
+    }
+
+    /** Appends a tombstone record. */
+    @Override
+    public boolean removeEntry(String name) throws IOException {
+      if (!segment.remove(name)) return false;
+
+      sync(segment);
+      return true;
+    }
+
+    @Override
+    public Collection<String> listEntries() throws IOException {
+      return segment.names();
+    }
+
+    /**
+     * Writes the entries with a single append. The records are only indexed once the whole append
+     * succeeded, so a batch is either fully visible or not at all.
+     */
+    @Override
+    public void putEntries(Map<String, String> entries) throws IOException {
+      segment.put(entries);
+      sync(segment);
+    }
+  }
+
+  /**
+   * Makes the appended records of a segment durable. The directory is forced as well until the
+   * segment file itself is known to be durable.
+   *
+   * @param segment The written {@link Segment}.
+   * @throws IOException If the segment cannot be forced to disk.
+   */
+  private void sync(Segment segment) throws IOException {
+    if (segment.directorySynced) {
+      getDurability().sync(List.of(segment.file));
+      return;
+    }
+
+    getDurability().sync(List.of(segment.file, segment.file.getParent()));
+    segment.directorySynced = true;
+  }
+
+  /**
+   * Retrieves the segment of a user, opening it and rebuilding its index if it is not open. There
+   * is a single {@link Segment} per file, so that no two channels ever append to the same file.
+   *
+   * @param username The owner of the vault.
+   * @return The user's {@link Segment}.
+   * @throws IOException If the segment cannot be opened.
+   */
+  private Segment getSegment(String username) throws IOException {
+    Path file =
+        getUserVault(username).resolve(username + SEGMENT_EXTENSION).toAbsolutePath().normalize();
+    Segment segment = segments.computeIfAbsent(file, Segment::new);
+    // Open it now so that a broken segment fails the login rather than the first command
+    if (!segment.reopen()) used(segment);
+    return segment;
+  }
+
+  /**
+   * Marks a segment as the most recently used of the open segments.
+   *
+   * @param segment The used {@link Segment}.
+   */
+  private void used(Segment segment) {
+    openSegmentsLock.lock();
+    try {
+      openSegments.get(segment.file);
+    } finally {
+      openSegmentsLock.unlock();
+    }
+  }
+
+  /**
+   * Records a segment that was just opened, closing the least recently used one once too many are
+   * open. Must not hold the lock of any segment, as closing takes the lock of another one.
+   *
+   * @param segment The opened {@link Segment}.
+   */
+  private void opened(Segment segment) {
+    Segment eldest = null;
+    openSegmentsLock.lock();
+    try {
+      openSegments.put(segment.file, segment);
+      if (openSegments.size() > MAX_OPEN_SEGMENTS) {
+        Iterator<Segment> iterator = openSegments.values().iterator();
+        eldest = iterator.next();
+        iterator.remove();
+      }
+    } finally {
+      openSegmentsLock.unlock();
+    }
+
+    if (eldest != null) eldest.close();
+  }
+
+  /** Compacts every segment holding enough dead records. Runs on the compactor thread. */
+  void compact() {
+    for (Segment segment : segments.values()) {
+      try {
+        segment.compactIfNeeded();
+      } catch (IOException e) {
+        System.out.println("[Server] compaction failed for " + segment.file + ": " + e);
+      }
+    }
+  }
+
+  /**
+   * The append-only segment of a user. A record is a type byte, the name and value lengths, the
+   * name, the value and a CRC32 of everything before it. Concurrent reads use positional reads
+   * under a shared lock, appends, compaction and closing take the lock exclusively. Every operation
+   * reopens the segment first if it was closed.
+   */
+  private class Segment {
+
+    private final Path file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<String, Location> index = new HashMap<>();
+    private volatile FileChannel channel;
+    private long size;
+    private long deadBytes;
+    private volatile boolean directorySynced;
+
+    /**
+     * Constructs a closed segment, opened on its first access.
+     *
+     * @param file The segment file.
+     */
+    private Segment(Path file) {
+      this.file = file;
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+      return FileChannel.open(
+          file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Opens the segment if it is closed and rebuilds its index by replaying it. Must not hold the
+     * lock.
+     *
+     * @return True if the segment was opened, false if it was already open.
+     * @throws IOException If the segment cannot be opened or read.
+     */
+    private boolean reopen() throws IOException {
+      if (channel != null) return false;
+
+      lock.writeLock().lock();
+      try {
+        if (channel != null) return false;
+
+        channel = open(file);
+        try {
+          replay();
+        } catch (IOException e) {
+          close(channel);
+          channel = null;
+          index.clear();
+          throw e;
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+
+      opened(this);
+      return true;
+    }
+
+    /**
+     * Takes the shared lock on the open segment.
+     *
+     * @throws IOException If the segment cannot be reopened.
+     */
+    private void lockShared() throws IOException {
+      while (true) {
+        lock.readLock().lock();
+        if (channel != null) return;
+        lock.readLock().unlock();
+        reopen();
+      }
+    }
+
+    /**
+     * Takes the exclusive lock on the open segment.
+     *
+     * @throws IOException If the segment cannot be reopened.
+     */
+    private void lockExclusive() throws IOException {
+      while (true) {
+        lock.writeLock().lock();
+        if (channel != null) return;
+        lock.writeLock().unlock();
+        reopen();
+      }
+    }
+
+    /**
+     * Rebuilds the index from the records of the segment.
+     *
+     * <p>A torn tail, left by a crash during an append, is truncated after being saved to a {@code
+     * .corrupt} file next to the segment: a record whose header or declared length runs past the
+     * end of the file, an invalid last record, or invalid records followed by zeros only, as
+     * written by a crash before the data reached the disk. Any other invalid record fails the
+     * replay and leaves the segment untouched, as the records following it are still valid.
+     *
+     * @throws IOException If the segment cannot be read or holds a corrupted record.
+     */
+    private void replay() throws IOException {
+      index.clear();
+      deadBytes = 0;
+
+      long length = channel.size();
+      long position = 0;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (position + HEADER_SIZE + TRAILER_SIZE <= length) {
+        header.clear();
+        channel.read(header, position);
+        header.flip();
+        byte type = header.get();
+        int nameSize = header.getInt();
+        int valueSize = header.getInt();
+
+        long recordSize = (long) HEADER_SIZE + nameSize + valueSize + TRAILER_SIZE;
+        if (nameSize >= 0 && valueSize >= 0 && position + recordSize > length) break;
+        if (nameSize < 0 || valueSize < 0 || (type != PUT && type != REMOVE)) {
+          if (isTornTail(position, position + HEADER_SIZE)) break;
+          throw corrupted(position);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+        while (record.hasRemaining()) channel.read(record, position + record.position());
+        record.flip();
+        if (!isValid(record)) {
+          if (isTornTail(position, position + recordSize)) break;
+          throw corrupted(position);
+        }
+
+        String name = new String(record.array(), HEADER_SIZE, nameSize, StandardCharsets.UTF_8);
+        Location previous =
+            type == PUT
+                ? index.put(
+                    name,
+                    new Location(
+                        position, (int) recordSize, position + HEADER_SIZE + nameSize, valueSize))
+                : index.remove(name);
+        if (previous != null) deadBytes += previous.recordSize();
+        if (type == REMOVE) deadBytes += recordSize;
+
+        position += recordSize;
+      }
+
+      if (position < length) {
+        Path corrupt = file.resolveSibling(file.getFileName() + CORRUPT_EXTENSION);
+        System.out.println(
+            "[Server] truncating torn records of " + file + ", saved to " + corrupt.getFileName());
+        try (FileChannel out =
+            FileChannel.open(
+                corrupt,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+          transfer(position, length - position, out);
+          out.force(true);
+        }
+        channel.truncate(position);
+      }
+      size = position;
+    }
+
+    /**
+     * Checks if an invalid record is the torn tail of the segment: the last record, or followed by
+     * zeros only.
+     *
+     * @param position The offset of the invalid record.
+     * @param end The offset right after the invalid record, as far as it can be told.
+     * @return True if nothing valid can follow the record.
+     * @throws IOException If the segment cannot be read.
+     */
+    private boolean isTornTail(long position, long end) throws IOException {
+      long length = channel.size();
+      if (end >= length) return true;
+
+      ByteBuffer rest = ByteBuffer.allocate(8192);
+      for (long offset = end; offset < length; offset += rest.limit()) {
+        rest.clear();
+        if (channel.read(rest, offset) <= 0) return false;
+        rest.flip();
+        while (rest.hasRemaining()) {
+          if (rest.get() != 0) return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Creates the error of a record corrupted in the middle of the segment.
+     *
+     * @param position The offset of the corrupted record.
+     * @return The {@link IOException} to throw.
+     */
+    private IOException corrupted(long position) {
+      System.out.println("[Server] corrupted record at offset " + position + " of " + file);
+      return new IOException("Corrupted record at offset " + position + " of " + file);
+    }
+
+    private String get(String name) throws IOException {
+      lockShared();
+      try {
+        Location location = index.get(name);
+        if (location == null) return null;
+
+        ByteBuffer value = ByteBuffer.allocate(location.valueSize());
+        while (value.hasRemaining()) {
+          if (channel.read(value, location.valueOffset() + value.position()) < 0) {
+            throw new IOException("Unexpected end of segment " + file);
+          }
+        }
+        return new String(value.array(), StandardCharsets.UTF_8);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private boolean contains(String name) throws IOException {
+      lockShared();
+      try {
+        return index.containsKey(name);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private List<String> names() throws IOException {
+      lockShared();
+      try {
+        return new ArrayList<>(index.keySet());
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private void put(Map<String, String> entries) throws IOException {
+      List<byte[]> names = new ArrayList<>(entries.size());
+      List<ByteBuffer> records = new ArrayList<>(entries.size());
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        names.add(name);
+        records.add(encode(PUT, name, entry.getValue().getBytes(StandardCharsets.UTF_8)));
+      }
+
+      lockExclusive();
+      try {
+        long start = size;
+        append(records.toArray(new ByteBuffer[0]));
+
+        // Index the batch only once it is fully appended
+        long position = start;
+        for (int i = 0; i < records.size(); ++i) {
+          int recordSize = records.get(i).capacity();
+          int valueSize = recordSize - HEADER_SIZE - names.get(i).length - TRAILER_SIZE;
+          String name = new String(names.get(i), StandardCharsets.UTF_8);
+          Location previous =
+              index.put(
+                  name,
+                  new Location(
+                      position,
+                      recordSize,
+                      position + HEADER_SIZE + names.get(i).length,
+                      valueSize));
+          if (previous != null) deadBytes += previous.recordSize();
+          position += recordSize;
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private boolean remove(String name) throws IOException {
+      ByteBuffer record = encode(REMOVE, name.getBytes(StandardCharsets.UTF_8), new byte[0]);
+
+      lockExclusive();
+      try {
+        if (!index.containsKey(name)) return false;
+
+        append(record);
+        deadBytes += index.remove(name).recordSize() + record.capacity();
+        return true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Appends records at the end of the segment. On failure the segment is truncated back to its
+     * previous size so that no partial batch survives. Must hold the write lock.
+     *
+     * @param records The encoded records.
+     * @throws IOException If the records cannot be appended.
+     */
+    private void append(ByteBuffer... records) throws IOException {
+      long length = 0;
+      for (ByteBuffer record : records) length += record.remaining();
+
+      try {
+        long position = size;
+        for (ByteBuffer record : records) {
+          while (record.hasRemaining()) position += channel.write(record, position);
+        }
+      } catch (IOException e) {
+        channel.truncate(size);
+        throw e;
+      }
+      size += length;
+    }
+
+    /**
+     * Rewrites the segment with its live records only, once dead records outweigh live ones. The
+     * new segment is written aside and atomically moved over the old one, which stays open and in
+     * use until the move succeeded, so a failed compaction leaves the segment unchanged.
+     *
+     * @throws IOException If the segment cannot be rewritten.
+     */
+    private void compactIfNeeded() throws IOException {
+      lock.writeLock().lock();
+      try {
+        if (channel == null || deadBytes < COMPACTION_THRESHOLD || deadBytes < size - deadBytes) {
+          return;
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + COMPACTION_EXTENSION);
+        FileChannel out =
+            FileChannel.open(
+                compacted,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        HashMap<String, Location> live = new HashMap<>();
+        long position = 0;
+        boolean moved = false;
+        try {
+          for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            transfer(location.recordOffset(), location.recordSize(), out);
+            live.put(
+                entry.getKey(),
+                new Location(
+                    position,
+                    location.recordSize(),
+                    position + location.valueOffset() - location.recordOffset(),
+                    location.valueSize()));
+            position += location.recordSize();
+          }
+          out.force(true);
+
+          // Renaming over the open segment is allowed, each channel keeps its own file
+          Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE);
+          moved = true;
+        } finally {
+          if (!moved) {
+            out.close();
+            Files.deleteIfExists(compacted);
+          }
+        }
+
+        FileChannel previous = channel;
+        channel = out;
+        index.clear();
+        index.putAll(live);
+        size = position;
+        deadBytes = 0;
+        // The rename is only durable once the directory is forced by the next sync
+        directorySynced = false;
+        close(previous);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Copies a whole record of the segment to the end of another file. Must hold the write lock.
+     *
+     * @param position The offset of the record.
+     * @param length The size of the record.
+     * @param out The file to copy the record to.
+     * @throws IOException If the record cannot be copied entirely.
+     */
+    private void transfer(long position, long length, FileChannel out) throws IOException {
+      while (length > 0) {
+        long copied = channel.transferTo(position, length, out);
+        if (copied <= 0) throw new IOException("Unexpected end of segment " + file);
+        position += copied;
+        length -= copied;
+      }
+    }
+
+    /** Closes the segment and drops its index, once no operation is using it. */
+    private void close() {
+      lock.writeLock().lock();
+      try {
+        if (channel == null) return;
+
+        close(channel);
+        channel = null;
+        index.clear();
+        size = 0;
+        deadBytes = 0;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Closes a channel of the segment, whose content is already written.
+     *
+     * @param channel The channel to close.
+     */
+    private void close(FileChannel channel) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.out.println("[Server] cannot close the segment " + file + ": " + e);
+      }
+    }
+
+    /**
+     * Encodes a record.
+     *
+     * @param type The type of the record.
+     * @param name The name of the entry.
+     * @param value The value of the entry, empty for a tombstone.
+     * @return The encoded record, ready to be written.
+     */
+    private static ByteBuffer encode(byte type, byte[] name, byte[] value) {
+      ByteBuffer record =
+          ByteBuffer.allocate(HEADER_SIZE + name.length + value.length + TRAILER_SIZE);
+      record.put(type).putInt(name.length).putInt(value.length).put(name).put(value);
+
+      CRC32 crc = new CRC32();
+      crc.update(record.array(), 0, record.position());
+      record.putInt((int) crc.getValue());
+      return record.flip();
+    }
+
+    /**
+     * Checks the CRC32 of a record read back from the segment.
+     *
+     * @param record The record, positioned at its start.
+     * @return True if the record is intact.
+     */
+    private static boolean isValid(ByteBuffer record) {
+      CRC32 crc = new CRC32();
+      crc.update(record.array(), 0, record.limit() - TRAILER_SIZE);
+      return (int) crc.getValue() == record.getInt(record.limit() - TRAILER_SIZE);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * The {@code Migrate} class converts the directory layout of a vault, for example from {@code flat}
+ * to {@code sharded}. It must run while no server uses the vault. Users are first moved into a
+ * staging directory and only then to their new place, so that user and shard directories of both
+ * layouts never collide.
+ */
+package ch.heigvd.dai.server;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "migrate",
+    description = "Convert the layout of a vault. The server must be stopped.")
+public class Migrate implements Callable<Integer> {
+
+  /** The path to the vault to convert. Defaults to the current directory if not specified. */
+  @CommandLine.Option(
+      names = {"-v", "--vault"},
+      description = "Path of the vault to convert.",
+      defaultValue = "./")
+  private String vault;
+
+  /** The current layout of the vault. */
+  @CommandLine.Option(
+      names = {"--from"},
+      description = "Current layout, one of ${COMPLETION-CANDIDATES}.",
+      required = true)
+  private VaultLayout from;
+
+  /** The layout to convert the vault to. */
+  @CommandLine.Option(
+      names = {"--to"},
+      description = "New layout, one of ${COMPLETION-CANDIDATES}.",
+      required = true)
+  private VaultLayout to;
+
+  /**
+   * Moves every user of the vault from the current layout to the new one.
+   *
+   * @return {@code 0} on success, {@code 1} if the vault could not be converted.
+   */
+  @Override
+  public Integer call() {
+    if (from == to) {
+      System.out.println(
+          "[Migrate] The vault already uses the " + to.toString().toLowerCase() + " layout");
+      return 0;
+    }
+
+    Path root = Path.of(vault);
+    Path staging = null;
+    try {
+      List<String> usernames = from.listUsers(root);
+      staging = Files.createTempDirectory(root, ".migrate");
+
+      for (String username : usernames) {
+        Path source = from.resolve(root, username);
+        Files.move(source, staging.resolve(username), StandardCopyOption.ATOMIC_MOVE);
+        deleteEmptyParents(root, source.getParent());
+      }
+
+      int moved = 0;
+      for (String username : usernames) {
+        Path target = to.resolve(root, username);
+        Files.createDirectories(target.getParent());
+        Files.move(staging.resolve(username), target, StandardCopyOption.ATOMIC_MOVE);
+
+        if (++moved % 10_000 == 0) System.out.println("[Migrate] " + moved + " users moved");
+      }
+
+      Files.delete(staging);
+      System.out.println(
+          "[Migrate] " + moved + " users moved to the " + to.toString().toLowerCase() + " layout");
+      return 0;
+    } catch (IOException e) {
+      System.out.println("[Migrate] exception: " + e);
+      if (staging != null) {
+        System.out.println("[Migrate] Users not moved yet are left in " + staging);
+      }
+      return 1;
+    }
+  }
+
+  /**
+   * Deletes the shard directories left empty by a moved user, up to the vault directory.
+   *
+   * @param root The vault directory, never deleted.
+   * @param directory The directory that held the moved user.
+   * @throws IOException If a directory cannot be read or deleted.
+   */
+  static void deleteEmptyParents(Path root, Path directory) throws IOException {
+    Path top = root.toAbsolutePath().normalize();
+    for (Path current = directory.toAbsolutePath().normalize();
+        current.startsWith(top) && !current.equals(top);
+        current = current.getParent()) {
+      try (DirectoryStream<Path> children = Files.newDirectoryStream(current)) {
+        if (children.iterator().hasNext()) return;
+      }
+      Files.delete(current);
+    }
+  }
+}
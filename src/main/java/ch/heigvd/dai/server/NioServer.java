@@ -0,0 +1,365 @@
+/**
+ * The {@code NioServer} class implements a non-blocking, selector based event loop for the server
+ * side of the pass-secure system. A single thread multiplexes every client connection and only
+ * complete commands are handed to a small worker pool, so that idle sessions do not hold a thread
+ * while waiting for input.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class NioServer {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+  private static final int MAX_REQUEST_LENGTH = Command.MAX_FRAME_LENGTH;
+  private static final int MAX_PENDING_REQUESTS = 1024;
+  private static final long MAX_OUTGOING_BYTES = 4 * 1024 * 1024;
+
+  private final int port;
+  private final ExecutorService workers;
+  private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+  private Selector selector;
+
+  /**
+   * Constructs a new {@code NioServer}.
+   *
+   * @param port The port on which the server listens for incoming connections.
+   * @param workers The {@link ExecutorService} executing the parsed commands.
+   */
+  public NioServer(int port, ExecutorService workers) {
+    this.port = port;
+    this.workers = workers;
+  }
+
+  /**
+   * Runs the event loop until the server channel is closed. Accepts new connections, reads and
+   * frames incoming requests, dispatches them to the worker pool and writes the responses back once
+   * the workers are done.
+   *
+   * @throws IOException If the selector or the server channel cannot be opened.
+   */
+  public void run() throws IOException {
+    try (Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      this.selector = selector;
+      serverChannel.bind(new InetSocketAddress(port));
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      System.out.println("[Server] Listening on port " + port + " (nio)");
+
+      while (serverChannel.isOpen()) {
+        selector.select();
+
+        // Pick up the responses produced by the workers since the last iteration
+        Connection connection;
+        while ((connection = completed.poll()) != null) connection.onProcessed();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) continue;
+
+          if (key.isAcceptable()) {
+            accept(serverChannel);
+            continue;
+          }
+
+          Connection client = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) client.read();
+            if (key.isValid() && key.isWritable()) client.write();
+          } catch (IOException e) {
+            System.out.println("[Server] exception: " + e.getMessage());
+            client.close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Accepts a pending connection and registers it for reading.
+   *
+   * @param serverChannel The listening {@link ServerSocketChannel}.
+   * @throws IOException If the connection cannot be configured.
+   */
+  private void accept(ServerSocketChannel serverChannel) throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) return;
+
+    channel.configureBlocking(false);
+    InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+    Connection connection = new Connection(channel, address.getAddress());
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+
+    System.out.println(
+        "[Server] New client connected from "
+            + address.getAddress().getHostAddress()
+            + ":"
+            + address.getPort());
+  }
+
+  /**
+   * A request framed by the selector thread: either a command or the error raised while parsing it.
+   *
+   * @param command The parsed {@link Command}, or null if parsing failed.
+   * @param error The {@link PassSecureException} raised while parsing, or null.
+   */
+  private record Request(Command command, PassSecureException error) {}
+
+  /**
+   * A client connection. Framing and dispatching happen on the selector thread only; workers
+   * communicate back through the {@code outgoing} queue and the server's {@code completed} queue,
+   * so at most one command per connection is in flight and responses keep the request order.
+   */
+  private class Connection {
+
+    private final SocketChannel channel;
+    private final State state;
+    private final Queue<Request> requests = new ArrayDeque<>();
+    private final Queue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicLong outgoingBytes = new AtomicLong();
+    private ByteBuffer inbound = ByteBuffer.allocate(BUFFER_SIZE);
+    private Command.Protocol protocol = Command.Protocol.TEXT;
+    private SelectionKey key;
+    private boolean busy;
+    private boolean negotiating;
+    private boolean endOfInput;
+    private boolean closed;
+
+    private Connection(SocketChannel channel, InetAddress address) {
+      this.channel = channel;
+      this.state = new State(address);
+    }
+
+    /**
+     * Reads the available bytes and splits them into requests.
+     *
+     * @throws IOException If reading fails or a request exceeds the maximum length.
+     */
+    private void read() throws IOException {
+      if (!inbound.hasRemaining()) {
+        if (inbound.capacity() >= MAX_REQUEST_LENGTH) throw new IOException("Request too long");
+
+        ByteBuffer larger = ByteBuffer.allocate(inbound.capacity() * 2);
+        larger.put(inbound.flip());
+        inbound = larger;
+      }
+
+      if (channel.read(inbound) == -1) {
+        // The client half-closed its side, answer what is left before closing
+        endOfInput = true;
+        updateInterest();
+        closeIfDone();
+        return;
+      }
+
+      frame();
+      dispatch();
+      updateInterest();
+    }
+
+    /**
+     * Splits the buffered bytes into requests using the connection's protocol. Framing pauses after
+     * a {@code HELLO} until it has been executed, since the bytes that follow may already use the
+     * negotiated protocol.
+     *
+     * @throws IOException If a request is malformed.
+     */
+    private void frame() throws IOException {
+      inbound.flip();
+      try {
+        while (!negotiating && inbound.hasRemaining()) {
+          Request request = protocol == Command.Protocol.TEXT ? nextLine() : nextFrame();
+          if (request == null) break;
+
+          requests.add(request);
+          if (request.command() != null && request.command().getType() == Command.Type.HELLO) {
+            negotiating = true;
+          }
+        }
+      } finally {
+        inbound.compact();
+      }
+    }
+
+    /**
+     * Extracts the next text line of the inbound buffer.
+     *
+     * @return The parsed request, or null if no complete line is buffered.
+     */
+    private Request nextLine() {
+      int start = inbound.position();
+      int end = start;
+      while (end < inbound.limit() && inbound.get(end) != '\n') ++end;
+      if (end == inbound.limit()) return null;
+
+      int length = end > start && inbound.get(end - 1) == '\r' ? end - start - 1 : end - start;
+      String line = new String(inbound.array(), start, length, StandardCharsets.UTF_8);
+      inbound.position(end + 1);
+
+      try {
+        return new Request(Command.parse(line), null);
+      } catch (PassSecureException e) {
+        return new Request(null, e);
+      }
+    }
+
+    /**
+     * Extracts the next binary frame of the inbound buffer.
+     *
+     * @return The decoded request, or null if no complete frame is buffered.
+     * @throws IOException If the frame is malformed.
+     */
+    private Request nextFrame() throws IOException {
+      try {
+        Command command = Command.decode(inbound);
+        return command == null ? null : new Request(command, null);
+      } catch (PassSecureException e) {
+        return new Request(null, e);
+      }
+    }
+
+    /**
+     * Hands every pending request to the worker pool as one batch if no command is currently in
+     * flight. Pipelined commands are thus executed in order by a single task and their responses
+     * leave in a single write. Nothing is dispatched while too many response bytes wait for the
+     * client to read them.
+     */
+    private void dispatch() {
+      if (busy || closed || requests.isEmpty() || isBackedUp()) return;
+
+      busy = true;
+      List<Request> batch = new ArrayList<>(requests);
+      requests.clear();
+      workers.execute(() -> process(batch));
+    }
+
+    /**
+     * Executes a batch of requests on a worker thread and queues their responses.
+     *
+     * @param batch The requests to execute, in order.
+     */
+    private void process(List<Request> batch) {
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      try {
+        for (Request request : batch) {
+          if (request.error() != null) Repl.sendError(state, response, request.error());
+          else Repl.execute(state, request.command(), response);
+        }
+      } catch (IOException e) {
+        System.out.println("[Server] exception: " + e.getMessage());
+      } finally {
+        outgoingBytes.addAndGet(response.size());
+        outgoing.add(ByteBuffer.wrap(response.toByteArray()));
+        completed.add(this);
+        selector.wakeup();
+      }
+    }
+
+    /** Called on the selector thread once a worker has produced a response. */
+    private void onProcessed() {
+      busy = false;
+      if (closed) return;
+
+      // Resume framing with the protocol negotiated by a HELLO, if any
+      protocol = state.getProtocol();
+      if (negotiating) {
+        negotiating = false;
+        try {
+          frame();
+        } catch (IOException e) {
+          System.out.println("[Server] exception: " + e.getMessage());
+          close();
+          return;
+        }
+      }
+
+      dispatch();
+      updateInterest();
+      closeIfDone();
+    }
+
+    /**
+     * Writes as much of the queued responses as the socket accepts.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void write() throws IOException {
+      // Gather every queued response into a single write
+      ByteBuffer[] buffers = outgoing.toArray(new ByteBuffer[0]);
+      outgoingBytes.addAndGet(-channel.write(buffers));
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.hasRemaining()) break;
+        outgoing.poll();
+      }
+
+      // Resume the requests held back while the client was not reading
+      dispatch();
+      updateInterest();
+      closeIfDone();
+    }
+
+    /**
+     * Checks if the client reads its responses too slowly, in which case its requests are held back
+     * until the queued responses drain.
+     *
+     * @return True if more response bytes than allowed are waiting to be written.
+     */
+    private boolean isBackedUp() {
+      return outgoingBytes.get() > MAX_OUTGOING_BYTES;
+    }
+
+    /**
+     * Updates the operations the selector watches for. Reading is paused while too many requests
+     * are waiting or too many response bytes are queued, so that clients sending faster than they
+     * are served, or reading slower, are throttled by TCP.
+     */
+    private void updateInterest() {
+      int interestOps = 0;
+      if (!endOfInput && requests.size() < MAX_PENDING_REQUESTS && !isBackedUp())
+        interestOps |= SelectionKey.OP_READ;
+      if (!outgoing.isEmpty()) interestOps |= SelectionKey.OP_WRITE;
+      key.interestOps(interestOps);
+    }
+
+    /** Closes the connection once the client stopped sending and every response was written. */
+    private void closeIfDone() {
+      if (endOfInput && !busy && requests.isEmpty() && outgoing.isEmpty()) close();
+    }
+
+    /** Closes the connection and releases its selection key. */
+    private void close() {
+      if (closed) return;
+      closed = true;
+
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.out.println("[Server] exception: " + e.getMessage());
+      }
+      System.out.println("[Server] Closing connection");
+    }
+  }
+}
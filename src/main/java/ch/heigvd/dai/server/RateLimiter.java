@@ -0,0 +1,144 @@
+/**
+ * The {@code RateLimiter} class bounds the rate of the commands of each client with token buckets.
+ * Every key, a client address or a username, owns a bucket refilled at a constant rate up to a
+ * burst capacity, and each command takes a token from it. Commands finding their bucket empty are
+ * shed with the delay after which a token will be available.
+ *
+ * <p>Buckets are created on first use and those refilled to capacity, which hold no information,
+ * are dropped once there are too many of them.
+ */
+package ch.heigvd.dai.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class RateLimiter {
+
+  private static final int MAX_BUCKETS = 1 << 16;
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final double rate;
+  private final double capacity;
+  private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final ReentrantLock sweepLock = new ReentrantLock();
+  private final LongAdder shed = new LongAdder();
+
+  /** The tokens of a single key. */
+  private static class Bucket {
+    private final ReentrantLock lock = new ReentrantLock();
+    private double tokens;
+    private long updated;
+
+    private Bucket(double tokens, long updated) {
+      this.tokens = tokens;
+      this.updated = updated;
+    }
+  }
+
+  /**
+   * Constructs a new {@code RateLimiter}.
+   *
+   * @param rate The amount of commands allowed per second and key, greater than {@code 0}.
+   * @param burst The amount of commands a key may send at once, or {@code 0} to allow one second of
+   *     commands.
+   */
+  public RateLimiter(double rate, int burst) {
+    this.rate = rate;
+    this.capacity = burst > 0 ? burst : Math.max(1, rate);
+  }
+
+  /**
+   * Takes a token from the bucket of a key.
+   *
+   * @param key The client address or username sending the command.
+   * @return {@code 0} if the command is allowed, otherwise the delay in milliseconds before the
+   *     next token.
+   */
+  public long acquire(String key) {
+    long now = System.nanoTime();
+    if (buckets.size() > MAX_BUCKETS) sweep(now);
+
+    // A bucket swept while in use was full, so a recreated one grants the same tokens
+    Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+    double missing;
+    bucket.lock.lock();
+    try {
+      refill(bucket, now);
+      if (bucket.tokens >= 1) {
+        --bucket.tokens;
+        return 0;
+      }
+      missing = 1 - bucket.tokens;
+    } finally {
+      bucket.lock.unlock();
+    }
+
+    shed.increment();
+    return Math.max(1, (long) Math.ceil(missing * 1000 / rate));
+  }
+
+  /**
+   * Gives back the token taken by an {@link #acquire(String)} that allowed a command, once the
+   * command is rejected by another limit.
+   *
+   * @param key The client address or username the token was taken from.
+   */
+  public void release(String key) {
+    Bucket bucket = buckets.get(key);
+    if (bucket == null) return;
+
+    bucket.lock.lock();
+    try {
+      bucket.tokens = Math.min(capacity, bucket.tokens + 1);
+    } finally {
+      bucket.lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the amount of commands shed since the server started.
+   *
+   * @return The amount of shed commands.
+   */
+  public long getShed() {
+    return shed.sum();
+  }
+
+  /**
+   * Adds the tokens earned by a bucket since its last update. The caller must hold its lock.
+   *
+   * @param bucket The {@link Bucket} to refill.
+   * @param now The current time, from {@link System#nanoTime()}.
+   */
+  private void refill(Bucket bucket, long now) {
+    bucket.tokens =
+        Math.min(capacity, bucket.tokens + (now - bucket.updated) * rate / NANOS_PER_SECOND);
+    bucket.updated = now;
+  }
+
+  /**
+   * Drops the buckets refilled to capacity. A single thread sweeps at a time, the others go on.
+   *
+   * @param now The current time, from {@link System#nanoTime()}.
+   */
+  private void sweep(long now) {
+    if (!sweepLock.tryLock()) return;
+    try {
+      buckets
+          .values()
+          .removeIf(
+              bucket -> {
+                if (!bucket.lock.tryLock()) return false;
+                try {
+                  refill(bucket, now);
+                  return bucket.tokens >= capacity;
+                } finally {
+                  bucket.lock.unlock();
+                }
+              });
+    } finally {
+      sweepLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * The {@code Rebalance} class moves the users of a cluster to the nodes that own them after nodes
+ * were added or removed. Every node is given with the vault directory it serves; each user found on
+ * a node that no longer owns it is moved to the vault of its owner. It must run while the servers
+ * of the cluster are stopped.
+ *
+ * <p>A user is first copied into a staging directory of the target vault, then moved into place and
+ * only then deleted from its previous vault. A user found in both vaults was therefore fully copied
+ * by an interrupted run, and the leftover copy is deleted.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.File;
+import ch.heigvd.dai.HashRing;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "rebalance",
+    description = "Move the users of a cluster to their nodes. The servers must be stopped.")
+public class Rebalance implements Callable<Integer> {
+
+  /** The nodes of the cluster after the change, each with the vault it serves. */
+  @CommandLine.Option(
+      names = {"--node"},
+      description = "Node of the cluster and its vault as host:port=path, once per node.",
+      required = true)
+  private LinkedHashMap<String, Path> nodes;
+
+  /** The layout of every vault of the cluster. Defaults to {@code flat} if not specified. */
+  @CommandLine.Option(
+      names = {"--layout"},
+      description =
+          "Layout of the vaults, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "flat")
+  private VaultLayout layout;
+
+  /** Whether the moves are only listed. */
+  @CommandLine.Option(
+      names = {"--dry-run"},
+      description = "List the moves without moving anything.")
+  private boolean dryRun;
+
+  /**
+   * A user to move.
+   *
+   * @param username The user.
+   * @param from The node holding the user.
+   * @param to The node owning the user.
+   */
+  private record Move(String username, String from, String to) {}
+
+  /**
+   * Moves every user of the cluster to the vault of the node owning it.
+   *
+   * @return {@code 0} on success, {@code 1} if a user could not be moved.
+   */
+  @Override
+  public Integer call() {
+    HashRing ring = new HashRing(nodes.keySet());
+    List<Move> moves = new ArrayList<>();
+    int kept = 0;
+
+    try {
+      // Every vault is listed before anything moves, so that no user is seen twice
+      for (Map.Entry<String, Path> node : nodes.entrySet()) {
+        for (String username : layout.listUsers(node.getValue())) {
+          String owner = ring.nodeFor(username);
+          if (owner.equals(node.getKey())) ++kept;
+          else moves.add(new Move(username, node.getKey(), owner));
+        }
+      }
+
+      for (Move move : moves) {
+        System.out.println(
+            "[Rebalance] " + move.username() + ": " + move.from() + " -> " + move.to());
+        if (!dryRun) move(move.username(), nodes.get(move.from()), nodes.get(move.to()));
+      }
+    } catch (IOException e) {
+      System.out.println("[Rebalance] exception: " + e);
+      return 1;
+    }
+
+    System.out.println(
+        "[Rebalance] "
+            + moves.size()
+            + (dryRun ? " users to move, " : " users moved, ")
+            + kept
+            + " users already in place");
+    return 0;
+  }
+
+  /**
+   * Moves a user from one vault to another.
+   *
+   * @param username The user to move.
+   * @param from The vault holding the user.
+   * @param to The vault of the node owning the user.
+   * @throws IOException If the user cannot be copied or deleted.
+   */
+  private void move(String username, Path from, Path to) throws IOException {
+    Path source = layout.resolve(from, username);
+    Path target = layout.resolve(to, username);
+
+    if (!Files.exists(target)) {
+      Files.createDirectories(to);
+      Path staging = Files.createTempDirectory(to, ".rebalance");
+      try {
+        copy(source, staging.resolve(username));
+        Files.createDirectories(target.getParent());
+        Files.move(staging.resolve(username), target, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        delete(staging);
+      }
+    } else {
+      System.out.println("[Rebalance] " + username + " already copied, removing the leftover");
+    }
+
+    delete(source);
+    Migrate.deleteEmptyParents(from, source.getParent());
+  }
+
+  /**
+   * Copies a directory tree, possibly to another file system.
+   *
+   * @param source The directory to copy.
+   * @param target The copy, which must not exist.
+   * @throws IOException If a file cannot be copied.
+   */
+  private static void copy(Path source, Path target) throws IOException {
+    Files.walkFileTree(
+        source,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+              throws IOException {
+            Files.createDirectory(target.resolve(source.relativize(directory)));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+              throws IOException {
+            // Leftovers of interrupted writes are not part of the vault
+            if (File.isTemporary(file)) return FileVisitResult.CONTINUE;
+            Files.copy(file, target.resolve(source.relativize(file)));
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /**
+   * Deletes a directory tree if it exists.
+   *
+   * @param directory The directory to delete.
+   * @throws IOException If a file cannot be deleted.
+   */
+  private static void delete(Path directory) throws IOException {
+    if (!Files.exists(directory)) return;
+
+    Files.walkFileTree(
+        directory,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+              throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path current, IOException e)
+              throws IOException {
+            if (e != null) throw e;
+            Files.delete(current);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+}
@@ -2,6 +2,9 @@
  * The {@code Repl} class implements a server-side Read-Eval-Print Loop (REPL) for handling client
  * connections and processing commands in the pass-secure system. Each instance of this class is
  * responsible for managing a single client connection.
+ *
+ * <p>Clients may pipeline commands. They are answered strictly in order and responses are only
+ * flushed once every command already received has been answered.
  */
 package ch.heigvd.dai.server;
 
@@ -12,9 +15,11 @@ import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 
 public class Repl implements Runnable {
 
+  private static final long REPLICATION_IDLE_MILLIS = 10_000;
   private final Socket socket;
 
   /**
@@ -27,19 +32,275 @@ public class Repl implements Runnable {
   }
 
   /**
-   * Sends a {@link Command} to the client through the socket's output stream.
+   * Writes a {@link Command} to the client using the session's protocol. Flushing is left to the
+   * caller.
    *
-   * @param socketOut The {@link BufferedWriter} to write the command to.
+   * @param state The {@link State} of the client session.
+   * @param out The {@link OutputStream} to write the command to.
    * @param command The {@link Command} to be sent.
-   * @throws PassSecureException If an I/O error occurs while sending the command.
+   * @throws IOException If an I/O error occurs while writing the command.
    */
-  private static void sendCommand(BufferedWriter socketOut, Command command)
-      throws PassSecureException {
+  private static void sendCommand(State state, OutputStream out, Command command)
+      throws IOException {
+    command.write(out, state.getProtocol());
+  }
+
+  /**
+   * Writes an error response to the client.
+   *
+   * @param state The {@link State} of the client session.
+   * @param out The {@link OutputStream} to write the response to.
+   * @param e The {@link PassSecureException} describing the error.
+   * @throws IOException If an I/O error occurs while writing the response.
+   */
+  public static void sendError(State state, OutputStream out, PassSecureException e)
+      throws IOException {
+    HashMap<String, String> arguments = new HashMap<>();
+    arguments.put("message", e.getMessage());
+    if (e.getType() == PassSecureException.Type.READ_ONLY) {
+      arguments.put("primary", State.getPrimary());
+    }
+    if (e.getNode() != null) arguments.put("node", e.getNode());
+    if (e.getRetryAfter() > 0) arguments.put("retryAfter", String.valueOf(e.getRetryAfter()));
+    sendCommand(state, out, new Command(Command.Type.NOK, arguments));
+  }
+
+  /**
+   * Writes the results of a batch command: a header of the given type holding the amount of
+   * results, followed by one {@code OK} or {@code NOK} response per entry, in order.
+   *
+   * @param state The {@link State} of the client session.
+   * @param out The {@link OutputStream} to write the results to.
+   * @param header The {@link Command} heading the results, its count is set here.
+   * @param results The results of the batch.
+   * @param withValues Whether successful results carry the entry value.
+   * @throws IOException If an I/O error occurs while writing the results.
+   */
+  private static void sendResults(
+      State state,
+      OutputStream out,
+      Command header,
+      List<State.EntryResult> results,
+      boolean withValues)
+      throws IOException {
+    header.getArguments().put("count", String.valueOf(results.size()));
+    sendCommand(state, out, header);
+
+    for (State.EntryResult result : results) {
+      HashMap<String, String> arguments = new HashMap<>();
+      arguments.put("name", result.name());
+      if (result.error() != null) {
+        arguments.put("message", result.error().getMessage());
+        sendCommand(state, out, new Command(Command.Type.NOK, arguments));
+        continue;
+      }
+
+      if (withValues) arguments.put("password", result.value());
+      sendCommand(state, out, new Command(Command.Type.OK, arguments));
+    }
+  }
+
+  /**
+   * Writes a page of entry names: a header holding the amount of names and the cursor of the next
+   * page if any, followed by one {@code OK} response per name.
+   *
+   * @param state The {@link State} of the client session.
+   * @param out The {@link OutputStream} to write the page to.
+   * @param page The {@link State.Page} to send.
+   * @throws IOException If an I/O error occurs while writing the page.
+   */
+  private static void sendPage(State state, OutputStream out, State.Page page) throws IOException {
+    HashMap<String, String> header = new HashMap<>();
+    header.put("count", String.valueOf(page.names().size()));
+    if (page.cursor() != null) header.put("cursor", page.cursor());
+    sendCommand(state, out, new Command(Command.Type.OK, header));
+
+    for (String name : page.names()) {
+      HashMap<String, String> arguments = new HashMap<>();
+      arguments.put("name", name);
+      sendCommand(state, out, new Command(Command.Type.OK, arguments));
+    }
+  }
+
+  /**
+   * Writes the changes of a vault: a header holding the version of the vault, the amount of changed
+   * entries and whether they form a snapshot, followed by one {@code OK} response per entry holding
+   * either its value or a {@code removed} flag.
+   *
+   * @param state The {@link State} of the client session.
+   * @param out The {@link OutputStream} to write the changes to.
+   * @param changes The {@link State.Changes} to send.
+   * @throws IOException If an I/O error occurs while writing the changes.
+   */
+  private static void sendChanges(State state, OutputStream out, State.Changes changes)
+      throws IOException {
+    HashMap<String, String> header = new HashMap<>();
+    header.put("version", String.valueOf(changes.version()));
+    header.put("count", String.valueOf(changes.entries().size()));
+    if (changes.snapshot()) header.put("snapshot", Boolean.TRUE.toString());
+    sendCommand(state, out, new Command(Command.Type.OK, header));
+
+    for (State.EntryResult entry : changes.entries()) {
+      HashMap<String, String> arguments = new HashMap<>();
+      arguments.put("name", entry.name());
+      if (entry.value() != null) arguments.put("password", entry.value());
+      else arguments.put("removed", Boolean.TRUE.toString());
+      sendCommand(state, out, new Command(Command.Type.OK, arguments));
+    }
+  }
+
+  /**
+   * Turns the connection into a replication stream for a follower: a header holding the sequence
+   * number the stream starts from, then a dump of the vault if the follower is too far behind, then
+   * every mutation recorded since, as they happen. A record-less {@code OK} is sent when the
+   * primary is idle, so that the follower can tell a quiet primary from a dead one.
+   *
+   * @param state The {@link State} of the follower's session.
+   * @param log The {@link ReplicationLog} of the primary.
+   * @param command The {@code REPLICATE} {@link Command} of the follower.
+   * @param out The {@link OutputStream} to write the stream to.
+   * @throws IOException If the follower disconnects or falls behind the log.
+   */
+  private static void replicate(State state, ReplicationLog log, Command command, OutputStream out)
+      throws IOException {
+    long since = command.getLong("since");
+    HashMap<String, String> header = new HashMap<>();
     try {
-      socketOut.write(command + "\n");
-      socketOut.flush();
-    } catch (IOException e) {
-      throw new PassSecureException(PassSecureException.Type.SOCKET_EXCEPTION);
+      if (command.getString("since") == null || log.since(since, 0) == null) {
+        // The sequence number is read first, the dump then holds at least every mutation up to it
+        since = log.getSequence();
+        header.put("dump", Boolean.TRUE.toString());
+      }
+      header.put("sequence", String.valueOf(since));
+      sendCommand(state, out, new Command(Command.Type.OK, header));
+
+      if (header.containsKey("dump")) {
+        State.dumpVault(since, record -> sendCommand(state, out, record.toCommand()));
+        HashMap<String, String> end = new HashMap<>();
+        end.put("synced", Boolean.TRUE.toString());
+        sendCommand(state, out, new Command(Command.Type.OK, end));
+      }
+      out.flush();
+      System.out.println("[Server] Follower replicating from " + since);
+
+      while (true) {
+        List<ReplicationLog.Record> records = log.since(since, REPLICATION_IDLE_MILLIS);
+        if (records == null) throw new IOException("Follower fell behind the replication log");
+
+        if (records.isEmpty()) sendCommand(state, out, new Command(Command.Type.OK));
+        for (ReplicationLog.Record record : records) sendCommand(state, out, record.toCommand());
+        if (!records.isEmpty()) since = records.getLast().sequence();
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Replication interrupted", e);
+    }
+  }
+
+  /**
+   * Executes a single command against the given session state and writes the response to {@code
+   * out}. This is shared by the blocking REPL and the {@link NioServer} workers so that both I/O
+   * modes answer commands identically.
+   *
+   * @param state The {@link State} of the client session.
+   * @param command The {@link Command} received from the client.
+   * @param out The {@link OutputStream} receiving the response.
+   * @throws IOException If an I/O error occurs while writing the response.
+   */
+  public static void execute(State state, Command command, OutputStream out) throws IOException {
+    try {
+      state.checkRate();
+
+      // Process the command based on its type
+      switch (command.getType()) {
+        case Command.Type.HELLO:
+          // Acknowledge with the current protocol, then switch
+          Command.Protocol protocol = Hello.hello(state, command);
+          HashMap<String, String> arguments = new HashMap<>();
+          arguments.put("protocol", protocol.toString());
+          sendCommand(state, out, new Command(Command.Type.OK, arguments));
+          state.setProtocol(protocol);
+          return;
+
+        case Command.Type.REGISTER:
+          Register.register(state, command);
+          break;
+
+        case Command.Type.LOGIN:
+          Login.login(state, command);
+          break;
+
+        case Command.Type.ADD:
+          Add.add(state, command);
+          break;
+
+        case Command.Type.GET:
+          String password = Get.get(state, command);
+          if (state.getProtocol() == Command.Protocol.BINARY) {
+            // Binary frames carry the entry as an argument of the response
+            HashMap<String, String> entry = new HashMap<>();
+            entry.put("password", password);
+            sendCommand(state, out, new Command(Command.Type.OK, entry));
+          } else {
+            sendCommand(state, out, new Command(Command.Type.OK));
+            out.write((password + "\n").getBytes(StandardCharsets.UTF_8));
+          }
+          return;
+
+        case Command.Type.MGET:
+          sendResults(state, out, new Command(Command.Type.OK), MGet.mget(state, command), true);
+          return;
+
+        case Command.Type.MADD:
+          List<State.EntryResult> results = MAdd.madd(state, command);
+          boolean applied = results.stream().allMatch(result -> result.error() == null);
+          HashMap<String, String> header = new HashMap<>();
+          if (!applied) {
+            header.put("message", PassSecureException.Type.TRANSACTION_ABORTED.toString());
+          }
+          sendResults(
+              state,
+              out,
+              new Command(applied ? Command.Type.OK : Command.Type.NOK, header),
+              results,
+              false);
+          return;
+
+        case Command.Type.LIST:
+          sendPage(state, out, ListEntries.list(state, command));
+          return;
+
+        case Command.Type.SYNC:
+          sendChanges(state, out, Sync.sync(state, command));
+          return;
+
+        case Command.Type.SNAPSHOT:
+          sendCommand(state, out, new Command(Command.Type.OK, Snapshot.snapshot(state, command)));
+          return;
+
+        case Command.Type.STATS:
+          sendCommand(state, out, new Command(Command.Type.OK, Stats.stats(state, command)));
+          return;
+
+        case Command.Type.REPLICATE:
+          // Streams never end, only connections with a thread of their own can serve them
+          throw new PassSecureException(PassSecureException.Type.INVALID_COMMAND);
+
+        case Command.Type.REMOVE:
+          Remove.remove(state, command);
+          break;
+
+        case Command.Type.DISCONNECT:
+          state.disconnect();
+          break;
+      }
+
+      // Send success response
+      sendCommand(state, out, new Command(Command.Type.OK));
+    } catch (PassSecureException e) {
+      // Handle and send error responses
+      sendError(state, out, e);
     }
   }
 
@@ -56,63 +317,33 @@ public class Repl implements Runnable {
             + ":"
             + socket.getPort());
     try (socket;
-        Reader reader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-        BufferedReader socketIn = new BufferedReader(reader);
-        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
-        BufferedWriter socketOut = new BufferedWriter(writer)) {
+        BufferedInputStream socketIn = new BufferedInputStream(socket.getInputStream());
+        BufferedOutputStream socketOut = new BufferedOutputStream(socket.getOutputStream())) {
 
       // Initialize the server state for the client
-      State state = new State();
+      State state = new State(socket.getInetAddress());
 
       // Main loop to handle client commands
       while (!socket.isClosed()) {
-        String line = socketIn.readLine();
-        if (line == null) break; // Client disconnected
-
         try {
-          // Parse the command received from the client
-          Command command = Command.parse(line);
-
-          // Process the command based on its type
-          switch (command.getType()) {
-            case Command.Type.REGISTER:
-              Register.register(state, command);
-              break;
-
-            case Command.Type.LOGIN:
-              Login.login(state, command);
-              break;
-
-            case Command.Type.ADD:
-              Add.add(state, command);
-              break;
-
-            case Command.Type.GET:
-              String password = Get.get(state, command);
-              sendCommand(socketOut, new Command(Command.Type.OK));
-              socketOut.write(password + "\n");
-              socketOut.flush();
-              continue;
-
-            case Command.Type.REMOVE:
-              Remove.remove(state, command);
-              break;
-
-            case Command.Type.DISCONNECT:
-              state.disconnect();
-              break;
+          // Read the command received from the client
+          Command command = Command.read(socketIn, state.getProtocol());
+          if (command == null) break; // Client disconnected
+
+          if (command.getType() == Command.Type.REPLICATE) {
+            replicate(state, Replicate.replicate(state, command), command, socketOut);
+            break;
           }
 
-          // Send success response
-          sendCommand(socketOut, new Command(Command.Type.OK));
+          execute(state, command, socketOut);
         } catch (PassSecureException e) {
-          // Handle and send error responses
-          HashMap<String, String> arguments = new HashMap<>();
-          arguments.put("message", e.getMessage());
-          sendCommand(socketOut, new Command(Command.Type.NOK, arguments));
+          sendError(state, socketOut, e);
         }
+
+        // Coalesce the responses of pipelined commands, flush once the input is drained
+        if (socketIn.available() == 0) socketOut.flush();
       }
-    } catch (PassSecureException | IOException e) {
+    } catch (IOException e) {
       // Log exceptions for debugging purposes
       System.out.println("[Server] exception: " + e.getMessage());
     } finally {
@@ -0,0 +1,198 @@
+/**
+ * The {@code ReplicationLog} class records the mutations of the primary server in sequence, so that
+ * followers can tail them and apply them in the same order. The log is bounded: a follower behind
+ * the oldest kept mutation must start over from a dump of the vault.
+ *
+ * <p>Mutations carry the resulting state rather than the command that caused it, so applying a
+ * mutation twice, or applying it on top of a dump that already contains it, is harmless.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ReplicationLog {
+
+  private static final int MAX_RECORDS = 1 << 16;
+
+  private final ArrayDeque<Record> records = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition appended = lock.newCondition();
+  private long sequence;
+  private long floor;
+
+  /** The kinds of mutations. */
+  public enum Operation {
+    /** A user was registered, or its credential hash replaced. */
+    REGISTER,
+    /** An entry was added or overwritten. */
+    PUT,
+    /** An entry was removed. */
+    REMOVE
+  }
+
+  /**
+   * A mutation of the vault.
+   *
+   * @param sequence The sequence number of the mutation.
+   * @param operation The {@link Operation} applied.
+   * @param username The user concerned.
+   * @param name The name of the entry, null for {@code REGISTER}.
+   * @param value The credential hash for {@code REGISTER}, the value of the entry for {@code PUT},
+   *     null for {@code REMOVE}.
+   */
+  public record Record(
+      long sequence, Operation operation, String username, String name, String value) {
+
+    /**
+     * Converts the record to the response sending it to a follower.
+     *
+     * @return The {@code OK} {@link Command} holding the record.
+     */
+    public Command toCommand() {
+      HashMap<String, String> arguments = new HashMap<>();
+      arguments.put("sequence", String.valueOf(sequence));
+      arguments.put("operation", operation.name().toLowerCase());
+      arguments.put("username", username);
+      if (name != null) arguments.put("name", name);
+      if (value != null) arguments.put("value", value);
+      return new Command(Command.Type.OK, arguments);
+    }
+
+    /**
+     * Converts a response received from the primary back to a record.
+     *
+     * @param command The {@link Command} holding the record.
+     * @return The {@link Record}, or null if the response holds no record.
+     * @throws PassSecureException If the record is incomplete.
+     */
+    public static Record fromCommand(Command command) throws PassSecureException {
+      String operation = command.getString("operation");
+      if (operation == null) return null;
+
+      Record record;
+      try {
+        record =
+            new Record(
+                command.getLong("sequence"),
+                Operation.valueOf(operation.toUpperCase()),
+                command.getString("username"),
+                command.getString("name"),
+                command.getString("value"));
+      } catch (IllegalArgumentException e) {
+        throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+      }
+
+      boolean complete =
+          record.username() != null
+              && (record.operation() == Operation.REGISTER || record.name() != null)
+              && (record.operation() == Operation.REMOVE || record.value() != null);
+      if (!complete) throw new PassSecureException(PassSecureException.Type.BAD_RESPONSE);
+      return record;
+    }
+  }
+
+  /** Receives the records sent to a follower. */
+  @FunctionalInterface
+  public interface Sink {
+
+    /**
+     * Sends a record.
+     *
+     * @param record The {@link Record} to send.
+     * @throws IOException If the record cannot be sent.
+     */
+    void accept(Record record) throws IOException;
+  }
+
+  /**
+   * Constructs a new, empty {@code ReplicationLog}. Sequence numbers of different runs of the
+   * primary must not overlap, so the initial sequence number is derived from the time the server
+   * started.
+   *
+   * @param initialSequence The sequence number before any recorded mutation.
+   */
+  public ReplicationLog(long initialSequence) {
+    this.sequence = initialSequence;
+    this.floor = initialSequence;
+  }
+
+  /**
+   * Records a mutation, dropping the oldest one if the log is full, and wakes up the followers.
+   * Mutations of a user must be appended while holding the user's write lock, so that they are
+   * numbered in the order they were applied.
+   *
+   * @param operation The {@link Operation} applied.
+   * @param username The user concerned.
+   * @param name The name of the entry, null for {@code REGISTER}.
+   * @param value The credential hash or the value of the entry, null for {@code REMOVE}.
+   */
+  public void append(Operation operation, String username, String name, String value) {
+    lock.lock();
+    try {
+      records.addLast(new Record(++sequence, operation, username, name, value));
+      if (records.size() > MAX_RECORDS) floor = records.removeFirst().sequence();
+      appended.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the sequence number of the last recorded mutation.
+   *
+   * @return The current sequence number.
+   */
+  public long getSequence() {
+    lock.lock();
+    try {
+      return sequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the mutations recorded after a sequence number, waiting for the next one if there is
+   * none yet.
+   *
+   * @param since The sequence number of the last mutation held by the follower.
+   * @param timeout The maximum time to wait for a mutation in milliseconds, 0 to return at once.
+   * @return The mutations after {@code since} in order, empty if none was recorded in time, or null
+   *     if the log does not reach back to {@code since} and a dump is needed.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public List<Record> since(long since, long timeout) throws InterruptedException {
+    lock.lock();
+    try {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+      while (since == sequence && timeout > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) break;
+        appended.awaitNanos(remaining);
+      }
+      if (since < floor || since > sequence) return null;
+
+      // Followers are usually close to the head, so the log is walked from its newest record
+      List<Record> newer = new ArrayList<>((int) (sequence - since));
+      Iterator<Record> newest = records.descendingIterator();
+      while (newest.hasNext()) {
+        Record record = newest.next();
+        if (record.sequence() <= since) break;
+        newer.add(record);
+      }
+      return newer.reversed();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
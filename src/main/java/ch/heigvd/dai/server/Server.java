@@ -1,14 +1,18 @@
 /**
  * The {@code Server} class is responsible for starting and managing the server-side application of
  * the pass-secure system. It handles client connections, delegates requests to REPL handlers, and
- * manages a thread pool for concurrent client processing.
+ * manages a thread pool for concurrent client processing. Connections are either served by one
+ * blocking thread each, or multiplexed by a non-blocking {@link NioServer} event loop. Threads come
+ * from a fixed or cached platform pool, or are virtual threads started per connection.
  */
 package ch.heigvd.dai.server;
 
+import ch.heigvd.dai.HashRing;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -49,35 +53,348 @@ public class Server implements Callable<Integer> {
 
   /**
    * The maximum number of threads available in the server's thread pool for handling client
-   * connections. Defaults to 5 if not specified.
+   * connections. Defaults to 5 if not specified. Only used by the {@code fixed} executor.
    */
   @CommandLine.Option(
       names = {"-t", "--thread"},
-      description = "Maximum amount of threads (default: ${DEFAULT-VALUE}).",
+      description = "Maximum amount of threads of the fixed executor (default: ${DEFAULT-VALUE}).",
       defaultValue = "5")
   private int thread;
 
+  /** The kinds of executors available to run client connections and commands. */
+  public enum ExecutorType {
+    /** A pool of {@code --thread} platform threads. */
+    FIXED,
+    /** An unbounded pool of platform threads, reused when idle. */
+    CACHED,
+    /** One virtual thread per task. */
+    VIRTUAL
+  }
+
+  /**
+   * The executor running client connections (or commands in {@code nio} mode). Defaults to {@code
+   * fixed} if not specified.
+   */
+  @CommandLine.Option(
+      names = {"--executor"},
+      description = "Executor, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "fixed")
+  private ExecutorType executorType;
+
+  /**
+   * The maximum size in bytes of the server-wide cache of vault entries. Defaults to 16 MiB, 0
+   * disables the cache.
+   */
+  @CommandLine.Option(
+      names = {"--cache-size"},
+      description = "Size of the entry cache in bytes, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "16777216")
+  private long cacheSize;
+
+  /** The storage engines available to store the vault. */
+  public enum Storage {
+    /** One file per entry in the user's vault directory. */
+    FILE,
+    /** One append-only, compacted segment file of entries per user. */
+    LOG,
+    /** Everything in memory, lost when the server stops. */
+    MEMORY
+  }
+
+  /** The storage engine of the vault. Defaults to {@code file} if not specified. */
+  @CommandLine.Option(
+      names = {"--storage"},
+      description = "Entry storage, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "file")
+  private Storage storage;
+
+  /**
+   * The policy forcing writes to disk before they are acknowledged. Defaults to {@code none} if not
+   * specified. Ignored by the {@code memory} storage.
+   */
+  @CommandLine.Option(
+      names = {"--fsync"},
+      description =
+          "Durability of writes, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "none")
+  private Durability.Mode fsync;
+
+  /**
+   * The placement of the users' directories in the vault. Defaults to {@code flat} if not
+   * specified. An existing vault is converted with the {@code migrate} command.
+   */
+  @CommandLine.Option(
+      names = {"--layout"},
+      description = "Vault layout, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "flat")
+  private VaultLayout layout;
+
+  /**
+   * The data loaded in the background at startup. Defaults to {@code none} if not specified.
+   * Connections are accepted while the warm-up runs.
+   */
+  @CommandLine.Option(
+      names = {"--warmup"},
+      description =
+          "Warm-up at startup, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "none")
+  private Warmup.Mode warmup;
+
+  /**
+   * The directory receiving the archives written by the {@code SNAPSHOT} command, which is only
+   * accepted from the loopback interface. Snapshots are disabled if not specified.
+   */
+  @CommandLine.Option(
+      names = {"--snapshot-dir"},
+      description = "Directory of the vault snapshots, snapshots are disabled if omitted.")
+  private String snapshotDirectory;
+
+  /**
+   * The key shared by a primary and its followers. A server given a key without {@code --follow} is
+   * a primary and records its mutations for followers. Replication is disabled if not specified.
+   */
+  @CommandLine.Option(
+      names = {"--replication-key"},
+      description = "Key shared with the followers or the primary, replication is off if omitted.")
+  private String replicationKey;
+
+  /**
+   * The primary to follow, as {@code host:port}. A follower applies the mutations of its primary
+   * and rejects writes. Requires {@code --replication-key}.
+   */
+  @CommandLine.Option(
+      names = {"--follow"},
+      description = "Primary to follow as host:port, the server is then read-only.")
+  private String follow;
+
+  /**
+   * The nodes of the cluster, as {@code host:port,host:port}. Users are assigned to nodes by
+   * consistent hashing of their username and each node redirects the users of the others. The
+   * server is standalone if not specified.
+   */
+  @CommandLine.Option(
+      names = {"--nodes"},
+      description =
+          "Nodes of the cluster as host:port,host:port, the server is standalone if omitted.")
+  private String nodes;
+
+  /** The address of this server among the {@code --nodes} of the cluster. */
+  @CommandLine.Option(
+      names = {"--node"},
+      description = "Address of this server among the nodes of the cluster, as host:port.")
+  private String node;
+
+  /**
+   * The amount of commands allowed per second from a single client address. Commands over the limit
+   * are rejected with {@code rate_limited}. Unlimited if {@code 0}, the default.
+   */
+  @CommandLine.Option(
+      names = {"--address-rate"},
+      description =
+          "Commands per second allowed per client address, 0 for no limit (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  private double addressRate;
+
+  /**
+   * The amount of commands allowed per second from a single logged-in user, over all its sessions.
+   * Unlimited if {@code 0}, the default.
+   */
+  @CommandLine.Option(
+      names = {"--user-rate"},
+      description =
+          "Commands per second allowed per logged-in user, 0 for no limit (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  private double userRate;
+
+  /**
+   * The amount of commands a client address or user may send at once above its rate. Defaults to
+   * one second of commands if {@code 0}.
+   */
+  @CommandLine.Option(
+      names = {"--rate-burst"},
+      description =
+          "Commands allowed at once above the rate, 0 for one second of commands (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  private int rateBurst;
+
+  /**
+   * The amount of PBKDF2 iterations of new credentials. Credentials hashed with fewer iterations
+   * are hashed again when their user logs in.
+   */
+  @CommandLine.Option(
+      names = {"--kdf-iterations"},
+      description = "PBKDF2 iterations of the credentials (default: ${DEFAULT-VALUE}).",
+      defaultValue = "210000")
+  private int kdfIterations;
+
+  /**
+   * The amount of threads hashing credentials, apart from the threads serving connections. Defaults
+   * to half the processors if {@code 0}.
+   */
+  @CommandLine.Option(
+      names = {"--hash-threads"},
+      description =
+          "Threads hashing credentials, 0 for half the processors (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  private int hashThreads;
+
+  /**
+   * The amount of credentials waiting for a hashing thread. Logins and registrations beyond it are
+   * rejected with {@code busy}.
+   */
+  @CommandLine.Option(
+      names = {"--hash-queue"},
+      description =
+          "Credentials waiting to be hashed before rejecting logins (default: ${DEFAULT-VALUE}).",
+      defaultValue = "64")
+  private int hashQueue;
+
+  /**
+   * The maximum amount of users whose credential is kept in memory. Defaults to 65536, 0 disables
+   * the cache.
+   */
+  @CommandLine.Option(
+      names = {"--credential-cache"},
+      description = "Users whose credential is cached, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "65536")
+  private int credentialCacheSize;
+
+  /**
+   * Creates the store selected by the {@code --storage} option.
+   *
+   * @return A new {@link VaultStore}.
+   */
+  private VaultStore createStore() {
+    return switch (storage) {
+      case FILE -> {
+        FileSystemVaultStore store =
+            new FileSystemVaultStore(getVault(), layout, new Durability(fsync));
+        store.start();
+        yield store;
+      }
+      case LOG -> {
+        LogVaultStore store = new LogVaultStore(getVault(), layout, new Durability(fsync));
+        store.start();
+        yield store;
+      }
+      case MEMORY -> new InMemoryVaultStore();
+    };
+  }
+
+  /**
+   * Creates the executor selected by the {@code --executor} option.
+   *
+   * @return A new {@link ExecutorService}.
+   */
+  private ExecutorService createExecutor() {
+    return switch (executorType) {
+      case FIXED -> Executors.newFixedThreadPool(thread);
+      case CACHED -> Executors.newCachedThreadPool();
+      case VIRTUAL -> Executors.newVirtualThreadPerTaskExecutor();
+    };
+  }
+
+  /** The I/O models available to serve client connections. */
+  public enum Io {
+    /** One thread of the pool per connection, blocked while reading its next command. */
+    BLOCKING,
+    /** A single selector thread for all connections, the pool only runs complete commands. */
+    NIO
+  }
+
+  /**
+   * The I/O model used to serve client connections. Defaults to {@code blocking} if not specified.
+   */
+  @CommandLine.Option(
+      names = {"--io"},
+      description = "I/O model, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "blocking")
+  private Io io;
+
   /**
    * Starts the server by listening on the specified port, accepting client connections, and
-   * delegating each connection to a {@link Repl} instance managed by a thread pool.
+   * delegating each connection to a {@link Repl} instance managed by a thread pool. In {@code nio}
+   * mode the connections are handled by a {@link NioServer} and the pool only executes commands.
    *
    * @return {@code 0} on successful server shutdown.
    */
   @Override
   public Integer call() {
-    // Set the vault path for the server state
-    State.setVault(getVault());
+    State.setCache(new VaultCache(cacheSize));
+    State.setStore(createStore());
+    if (snapshotDirectory != null) {
+      Path directory = Path.of(snapshotDirectory);
+      if (!directory.toFile().isDirectory() && !directory.toFile().mkdirs()) {
+        System.out.println("[Server] cannot create the snapshot directory " + directory);
+        return 1;
+      }
+      State.setSnapshotDirectory(directory);
+    }
+    if (kdfIterations < 1 || hashThreads < 0 || hashQueue < 1) {
+      System.out.println("[Server] invalid credential hashing parameters");
+      return 1;
+    }
+    int threads =
+        hashThreads > 0 ? hashThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    State.setHasher(new CredentialHasher(kdfIterations, threads, hashQueue));
+    if (credentialCacheSize < 0) {
+      System.out.println("[Server] the credential cache size cannot be negative");
+      return 1;
+    }
+    State.setCredentialCache(new CredentialCache(credentialCacheSize));
+    if (addressRate < 0 || userRate < 0 || rateBurst < 0) {
+      System.out.println("[Server] rates and burst cannot be negative");
+      return 1;
+    }
+    State.setRateLimiters(
+        addressRate > 0 ? new RateLimiter(addressRate, rateBurst) : null,
+        userRate > 0 ? new RateLimiter(userRate, rateBurst) : null);
+    if (follow != null && replicationKey == null) {
+      System.out.println("[Server] --follow requires --replication-key");
+      return 1;
+    }
+    if (follow == null) State.setReplicationKey(replicationKey);
+    if (nodes != null) {
+      try {
+        HashRing ring = HashRing.parse(nodes);
+        if (node == null || !ring.getNodes().contains(node)) {
+          System.out.println("[Server] --node must be one of the --nodes of the cluster");
+          return 1;
+        }
+        State.setCluster(ring, node);
+      } catch (IllegalArgumentException e) {
+        System.out.println("[Server] invalid cluster: " + e.getMessage());
+        return 1;
+      }
+    }
 
-    try (
-    // Initialize the server socket and thread pool
-    ServerSocket serverSocket = new ServerSocket(port);
-        ExecutorService executor = Executors.newFixedThreadPool(thread)) {
-      System.out.println("[Server] Listening on port " + port);
+    try {
+      Collection<String> usernames = State.loadUserFilter();
+      System.out.println("[Server] " + usernames.size() + " users found in the vault");
+      if (warmup != Warmup.Mode.NONE) {
+        new Warmup(usernames, warmup == Warmup.Mode.ENTRIES).start();
+      }
+    } catch (IOException e) {
+      System.out.println("[Server] cannot list the users of the vault: " + e);
+      return 1;
+    }
 
-      // Main loop to accept and handle client connections
-      while (!serverSocket.isClosed()) {
-        Socket socket = serverSocket.accept();
-        executor.submit(new Repl(socket)); // Delegate client handling to a new Repl instance
+    if (follow != null) {
+      try {
+        Follower follower =
+            new Follower(HashRing.getHost(follow), HashRing.getPort(follow), replicationKey);
+        State.setPrimary(follow);
+        follower.start();
+      } catch (IllegalArgumentException e) {
+        System.out.println("[Server] invalid primary address " + follow);
+        return 1;
+      }
+    }
+
+    try (ExecutorService executor = createExecutor()) {
+      switch (io) {
+        case BLOCKING -> serve(executor);
+        case NIO -> new NioServer(port, executor).run();
       }
     } catch (IOException e) {
       // Log any exceptions during server operation
@@ -86,4 +403,23 @@ public class Server implements Callable<Integer> {
 
     return 0; // Indicate successful termination
   }
+
+  /**
+   * Accepts client connections and hands each of them to a {@link Repl} running on the executor.
+   *
+   * @param executor The {@link ExecutorService} running the connections.
+   * @throws IOException If the server socket cannot be opened or accepting fails.
+   */
+  private void serve(ExecutorService executor) throws IOException {
+    // Initialize the server socket
+    try (ServerSocket serverSocket = new ServerSocket(port)) {
+      System.out.println("[Server] Listening on port " + port);
+
+      // Main loop to accept and handle client connections
+      while (!serverSocket.isClosed()) {
+        Socket socket = serverSocket.accept();
+        executor.submit(new Repl(socket)); // Delegate client handling to a new Repl instance
+      }
+    }
+  }
 }
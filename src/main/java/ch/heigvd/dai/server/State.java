@@ -2,65 +2,242 @@
  * The {@code State} class manages the state of a user session on the server side of the pass-secure
  * system. It handles user authentication, vault management, and entry operations while ensuring
  * security and access control.
+ *
+ * <p>No monitor is held while blocking on file I/O, so sessions running on virtual threads never
+ * pin their carrier thread. Coordination between sessions must use {@code java.util.concurrent}
+ * locks rather than {@code synchronized}.
+ *
+ * <p>Sessions of the same user are coordinated by a read/write lock picked from a fixed set of
+ * stripes by username: reads share it, while writes hold it exclusively across the existence check,
+ * the store write and the cache and index updates. Sessions of other users almost always map to
+ * other stripes and never wait on each other.
  */
 package ch.heigvd.dai.server;
 
-import ch.heigvd.dai.Cipher;
-import ch.heigvd.dai.File;
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.HashRing;
 import ch.heigvd.dai.PassSecureException;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class State {
 
-  private static Path vaultPath = Path.of("./");
-  private static final String HASH_EXTENSION = ".hs";
-  private static final String ENTRY_EXTENSION = ".ps";
+  private static final int MAX_NAME_LENGTH = 200;
+  private static final boolean[] FORBIDDEN_CHARACTERS = new boolean[128];
+  private static final ConcurrentHashMap<String, NavigableSet<String>> entryIndexes =
+      new ConcurrentHashMap<>();
+  private static final int LOCK_STRIPES = 256;
+  private static final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[LOCK_STRIPES];
+  private static VaultCache cache = new VaultCache(0);
+  private static VaultStore store = new FileSystemVaultStore(Path.of("./"));
+  private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+  private static final int MIN_USER_FILTER_CAPACITY = 1 << 16;
+  private static final int MIN_ENTRY_FILTER_CAPACITY = 64;
+  private static final ConcurrentHashMap<String, BloomFilter> entryFilters =
+      new ConcurrentHashMap<>();
+  private static volatile BloomFilter userFilter = null;
+  private static final long INITIAL_VERSION = System.currentTimeMillis() * 1000;
+  private static final ConcurrentHashMap<String, ChangeLog> changeLogs = new ConcurrentHashMap<>();
+  private static final ReentrantLock snapshotLock = new ReentrantLock();
+  private static volatile VaultSnapshot snapshot = null;
+  private static Path snapshotDirectory = null;
+  private static ReplicationLog replicationLog = null;
+  private static byte[] replicationKey = null;
+  private static String primary = null;
+  private static HashRing ring = null;
+  private static String node = null;
+  private static CredentialHasher hasher = new CredentialHasher(210_000, 1, 64);
+  private static CredentialCache credentials = new CredentialCache(0);
+  private static RateLimiter addressLimiter = null;
+  private static RateLimiter userLimiter = null;
+  private final String address;
+  private final boolean isLocal;
   private boolean isLoggedIn;
   private String username;
+  private VaultStore.UserVault vault;
+  private Command.Protocol protocol;
 
-  /** Constructs a new {@code State} object with no user logged in. */
-  public State() {
+  static {
+    for (int i = 0; i < LOCK_STRIPES; ++i) locks[i] = new ReentrantReadWriteLock();
+
+    for (char c = 0; c < 0x20; ++c) FORBIDDEN_CHARACTERS[c] = true;
+    FORBIDDEN_CHARACTERS[0x7f] = true;
+    FORBIDDEN_CHARACTERS['/'] = true;
+    FORBIDDEN_CHARACTERS['\\'] = true;
+  }
+
+  /**
+   * The outcome of a batch operation for a single entry.
+   *
+   * @param name The name of the entry.
+   * @param value The value of the entry for reads, null otherwise or on failure.
+   * @param error The {@link PassSecureException} raised for this entry, or null on success.
+   */
+  public record EntryResult(String name, String value, PassSecureException error) {}
+
+  /**
+   * A page of entry names.
+   *
+   * @param names The names of the page, in lexicographic order.
+   * @param cursor The cursor to pass to fetch the next page, or null if this is the last one.
+   */
+  public record Page(List<String> names, String cursor) {}
+
+  /**
+   * The entries of a vault changed since a given version.
+   *
+   * @param version The current version of the vault.
+   * @param snapshot Whether the entries are a full snapshot of the vault rather than its changes.
+   * @param entries The added or overwritten entries with their value, and the removed entries with
+   *     a null value.
+   */
+  public record Changes(long version, boolean snapshot, List<EntryResult> entries) {}
+
+  /**
+   * Constructs a new {@code State} object with no user logged in.
+   *
+   * @param address The address the client is connected from. The loopback interface grants access
+   *     to administration commands.
+   */
+  public State(InetAddress address) {
+    this.address = address.getHostAddress();
+    this.isLocal = address.isLoopbackAddress();
     this.isLoggedIn = false;
     this.username = null;
+    this.protocol = Command.Protocol.TEXT;
   }
 
   /**
-   * Retrieves the vault path for the currently logged-in user.
+   * Retrieves the wire protocol negotiated for the session.
    *
-   * @return The {@link Path} representing the user's vault directory.
-   * @throws PassSecureException If no user is logged in or access is unauthorized.
+   * @return The {@link Command.Protocol} used by the connection.
    */
-  public Path getUserVault() throws PassSecureException {
+  public Command.Protocol getProtocol() {
+    return protocol;
+  }
+
+  /**
+   * Sets the wire protocol used by the session once it has been acknowledged.
+   *
+   * @param protocol The {@link Command.Protocol} to use.
+   */
+  public void setProtocol(Command.Protocol protocol) {
+    this.protocol = protocol;
+  }
+
+  /**
+   * Takes a token from the rate limits of the session: those of the client address and, once a user
+   * is logged in, those of the user. A command rejected by the limit of its user does not cost a
+   * token to its address, which other users may share. Must be called before executing each
+   * command.
+   *
+   * @throws PassSecureException If a limit is exceeded, with the delay before the next token.
+   */
+  public void checkRate() throws PassSecureException {
+    long retryAfter = addressLimiter != null ? addressLimiter.acquire(address) : 0;
+    if (retryAfter == 0 && userLimiter != null && isLoggedIn) {
+      retryAfter = userLimiter.acquire(username);
+      if (retryAfter > 0 && addressLimiter != null) addressLimiter.release(address);
+    }
+    if (retryAfter > 0) {
+      throw new PassSecureException(PassSecureException.Type.RATE_LIMITED, retryAfter);
+    }
+  }
+
+  /**
+   * Retrieves the username of the logged-in user.
+   *
+   * @return The username of the session.
+   * @throws PassSecureException If no user is logged in.
+   */
+  private String getLoggedInUser() throws PassSecureException {
     if (!isLoggedIn) throw new PassSecureException(PassSecureException.Type.UNAUTHORIZED);
-    return getVaultForUser(this.username);
+    return username;
   }
 
   /**
-   * Retrieves the vault path for a specific username.
+   * Retrieves the lock coordinating the sessions of a user.
    *
-   * @param username The username for which to retrieve the vault path.
-   * @return The {@link Path} representing the vault directory for the user.
+   * @param username The username of the user.
+   * @return The {@link ReentrantReadWriteLock} of the user's stripe.
    */
-  private static Path getVaultForUser(String username) {
-    return vaultPath.resolve(username);
+  private static ReentrantReadWriteLock getLock(String username) {
+    return locks[Math.floorMod(username.hashCode(), LOCK_STRIPES)];
   }
 
   /**
-   * Validates that a destination path does not escape the origin directory.
+   * Validates a user or entry name with a lookup table of forbidden characters, so that no name can
+   * designate a path outside of its directory, without building or normalizing any path.
    *
-   * @param origin The origin directory.
-   * @param destination The destination path.
-   * @throws PassSecureException If the destination path is outside the origin directory.
+   * @param name The name to validate.
+   * @throws PassSecureException If the name is empty, too long, a relative path component, or
+   *     contains a path separator or a control character.
    */
-  private static void checkForPathTraversal(Path origin, Path destination)
-      throws PassSecureException {
-    if (!destination.toAbsolutePath().normalize().startsWith(origin.toAbsolutePath().normalize())) {
-      throw new PassSecureException(PassSecureException.Type.UNAUTHORIZED);
+  private static void checkName(String name) throws PassSecureException {
+    int length = name.length();
+    boolean valid =
+        length > 0 && length <= MAX_NAME_LENGTH && !name.equals(".") && !name.equals("..");
+    for (int i = 0; valid && i < length; ++i) {
+      char c = name.charAt(i);
+      valid = c >= FORBIDDEN_CHARACTERS.length || !FORBIDDEN_CHARACTERS[c];
+    }
+
+    if (!valid) throw new PassSecureException(PassSecureException.Type.UNAUTHORIZED);
+  }
+
+  /**
+   * Validates the name of an entry of the logged-in user's vault.
+   *
+   * @param name The name of the entry.
+   * @throws PassSecureException If no user is logged in or the name is invalid.
+   */
+  private void checkEntryName(String name) throws PassSecureException {
+    getLoggedInUser();
+    checkName(name);
+  }
+
+  /**
+   * Redirects users owned by another node of the cluster.
+   *
+   * @param username The username of the user.
+   * @throws PassSecureException If the user belongs to another node.
+   */
+  private static void checkOwner(String username) throws PassSecureException {
+    if (ring == null) return;
+
+    String owner = ring.nodeFor(username);
+    if (!owner.equals(node)) {
+      throw new PassSecureException(PassSecureException.Type.WRONG_NODE, owner);
     }
   }
 
+  /**
+   * Rejects writes on a follower, whose vault only changes by replication from its primary.
+   *
+   * @throws PassSecureException If the server follows a primary.
+   */
+  private static void checkWritable() throws PassSecureException {
+    if (primary != null) throw new PassSecureException(PassSecureException.Type.READ_ONLY);
+  }
+
   /**
    * Retrieves a password entry from the user's vault.
    *
@@ -70,17 +247,29 @@ public class State {
    *     occurs.
    */
   public String getVaultEntry(String name) throws PassSecureException {
-    Path entry = getUserVault().resolve(name + ENTRY_EXTENSION);
-    checkForPathTraversal(getUserVault(), entry);
+    checkEntryName(name);
+
+    String cached = cache.get(username, name);
+    if (cached != null) return cached;
 
-    if (!entry.toFile().exists()) {
+    if (!mightContainEntry(name)) {
       throw new PassSecureException(PassSecureException.Type.ENTRY_NOT_FOUND);
     }
 
+    Lock lock = getLock(username).readLock();
+    lock.lock();
     try {
-      return File.read(entry);
+      String password = vault.getEntry(name);
+      if (password == null) {
+        throw new PassSecureException(PassSecureException.Type.ENTRY_NOT_FOUND);
+      }
+
+      cache.fill(username, name, password);
+      return password;
     } catch (IOException e) {
       throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -92,19 +281,28 @@ public class State {
    *     occurs.
    */
   public void removeVaultEntry(String name) throws PassSecureException {
-    Path entry = getUserVault().resolve(name + ENTRY_EXTENSION);
-    checkForPathTraversal(getUserVault(), entry);
-
-    if (!entry.toFile().exists()) {
+    checkEntryName(name);
+    checkWritable();
+    if (!mightContainEntry(name)) {
       throw new PassSecureException(PassSecureException.Type.ENTRY_NOT_FOUND);
     }
 
+    Lock lock = getLock(username).writeLock();
+    lock.lock();
     try {
-      if (!entry.toFile().delete()) {
-        throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+      preserve(username, vault, List.of(name));
+      if (!vault.removeEntry(name)) {
+        throw new PassSecureException(PassSecureException.Type.ENTRY_NOT_FOUND);
       }
-    } catch (Exception e) {
+
+      cache.remove(username, name);
+      updateEntryIndex(username, name, false);
+      getChangeLog(username).record(name, true);
+      replicate(ReplicationLog.Operation.REMOVE, username, name, null);
+    } catch (IOException e) {
       throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -119,56 +317,879 @@ public class State {
    */
   public void addVaultEntry(String name, String password, boolean overwrite)
       throws PassSecureException {
-    Path entry = getUserVault().resolve(name + ENTRY_EXTENSION);
-    checkForPathTraversal(getUserVault(), entry);
+    checkEntryName(name);
+    checkWritable();
+
+    Lock lock = getLock(username).writeLock();
+    lock.lock();
+    try {
+      if (!overwrite && mightContainEntry(name) && vault.containsEntry(name)) {
+        throw new PassSecureException(PassSecureException.Type.ENTRY_ALREADY_EXISTS);
+      }
+      preserve(username, vault, List.of(name));
+      vault.putEntry(name, password);
+
+      cache.put(username, name, password);
+      updateEntryIndex(username, name, true);
+      addToEntryFilter(username, name);
+      getChangeLog(username).record(name, false);
+      replicate(ReplicationLog.Operation.PUT, username, name, password);
+    } catch (IOException e) {
+      cache.remove(username, name);
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves several password entries from the user's vault. Entries are served from the cache
+   * when possible, the others are fetched from the store in a single batch.
+   *
+   * @param names The names of the entries to retrieve.
+   * @return The result of each entry, in the same order.
+   * @throws PassSecureException If the user is not logged in.
+   */
+  public List<EntryResult> getVaultEntries(List<String> names) throws PassSecureException {
+    getLoggedInUser();
+    List<EntryResult> results = new ArrayList<>(names.size());
+    List<Integer> missed = new ArrayList<>();
+
+    for (String name : names) {
+      try {
+        checkEntryName(name);
+
+        String password = cache.get(username, name);
+        if (password == null && !mightContainEntry(name)) {
+          throw new PassSecureException(PassSecureException.Type.ENTRY_NOT_FOUND);
+        }
+
+        if (password == null) missed.add(results.size());
+        results.add(new EntryResult(name, password, null));
+      } catch (PassSecureException e) {
+        results.add(new EntryResult(name, null, e));
+      }
+    }
+    if (missed.isEmpty()) return results;
+
+    List<String> missedNames = new ArrayList<>(missed.size());
+    for (int i : missed) missedNames.add(results.get(i).name());
+
+    List<String> passwords = null;
+    Lock lock = getLock(username).readLock();
+    lock.lock();
+    try {
+      passwords = vault.getEntries(missedNames);
+      for (int i = 0; i < missed.size(); ++i) {
+        if (passwords.get(i) != null) cache.fill(username, missedNames.get(i), passwords.get(i));
+      }
+    } catch (IOException e) {
+      // Leave passwords null, every missed entry is reported as failed
+    } finally {
+      lock.unlock();
+    }
+
+    for (int i = 0; i < missed.size(); ++i) {
+      String password = passwords == null ? null : passwords.get(i);
+      PassSecureException error = null;
+      if (passwords == null) error = new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+      else if (password == null)
+        error = new PassSecureException(PassSecureException.Type.ENTRY_NOT_FOUND);
+
+      results.set(missed.get(i), new EntryResult(missedNames.get(i), password, error));
+    }
+
+    return results;
+  }
+
+  /**
+   * Adds several password entries to the user's vault as a transaction: every entry is validated
+   * before anything is written, and the store either applies the whole batch or none of it.
+   *
+   * @param entries The entries to add, by name, in order.
+   * @param overwrite Whether to overwrite existing entries with the same names.
+   * @return The result of each entry, in the same order. The batch was applied only if none of them
+   *     holds an error.
+   * @throws PassSecureException If the user is not logged in.
+   */
+  public List<EntryResult> addVaultEntries(Map<String, String> entries, boolean overwrite)
+      throws PassSecureException {
+    getLoggedInUser();
+    checkWritable();
+    Lock lock = getLock(username).writeLock();
+    lock.lock();
+    try {
+      return addVaultEntriesLocked(entries, overwrite);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds several password entries to the user's vault while holding the user's write lock, so that
+   * no other session writes between the validation and the write of the batch.
+   *
+   * @param entries The entries to add, by name, in order.
+   * @param overwrite Whether to overwrite existing entries with the same names.
+   * @return The result of each entry, in the same order.
+   */
+  private List<EntryResult> addVaultEntriesLocked(Map<String, String> entries, boolean overwrite) {
+    List<EntryResult> results = new ArrayList<>(entries.size());
+    boolean valid = true;
+
+    // Validate the whole batch before writing anything
+    for (String name : entries.keySet()) {
+      try {
+        checkEntryName(name);
+        if (!overwrite && mightContainEntry(name) && vault.containsEntry(name)) {
+          throw new PassSecureException(PassSecureException.Type.ENTRY_ALREADY_EXISTS);
+        }
+        results.add(new EntryResult(name, null, null));
+      } catch (PassSecureException e) {
+        results.add(new EntryResult(name, null, e));
+        valid = false;
+      } catch (IOException e) {
+        results.add(
+            new EntryResult(
+                name, null, new PassSecureException(PassSecureException.Type.SERVER_ERROR)));
+        valid = false;
+      }
+    }
+    if (!valid) return results;
+
+    try {
+      preserve(username, vault, entries.keySet());
+      vault.putEntries(entries);
+    } catch (IOException e) {
+      for (String name : entries.keySet()) cache.remove(username, name);
+      results.replaceAll(
+          result ->
+              new EntryResult(
+                  result.name(),
+                  null,
+                  new PassSecureException(PassSecureException.Type.SERVER_ERROR)));
+      return results;
+    }
+
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      cache.put(username, entry.getKey(), entry.getValue());
+      updateEntryIndex(username, entry.getKey(), true);
+      addToEntryFilter(username, entry.getKey());
+      getChangeLog(username).record(entry.getKey(), false);
+      replicate(ReplicationLog.Operation.PUT, username, entry.getKey(), entry.getValue());
+    }
+    return results;
+  }
+
+  /**
+   * Retrieves the entries of the user's vault changed since a version, so that a mirror of the
+   * vault only fetches what it misses. If the change log no longer reaches back to that version,
+   * every entry is returned as a snapshot instead.
+   *
+   * @param since The version of the vault held by the mirror, 0 for a first synchronisation.
+   * @return The {@link Changes} since that version.
+   * @throws PassSecureException If the user is not logged in or the vault cannot be read.
+   */
+  public Changes syncVaultEntries(long since) throws PassSecureException {
+    getLoggedInUser();
+
+    // The read lock keeps writers out, so that the entries match the returned version
+    Lock lock = getLock(username).readLock();
+    lock.lock();
+    try {
+      ChangeLog changeLog = getChangeLog(username);
+      Map<String, Boolean> changed = changeLog.since(since);
+      boolean snapshot = changed == null;
+
+      List<String> names = new ArrayList<>();
+      if (snapshot) names.addAll(vault.listEntries());
+      else changed.forEach((name, removed) -> names.add(name));
+
+      List<EntryResult> entries = new ArrayList<>(names.size());
+      for (String name : names) {
+        boolean removed = !snapshot && changed.get(name);
+        String value = removed ? null : cache.get(username, name);
+        if (!removed && value == null) value = vault.getEntry(name);
+        entries.add(new EntryResult(name, value, null));
+      }
+
+      return new Changes(changeLog.getVersion(), snapshot, entries);
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Preserves the current value of entries about to be written if a snapshot is running. Must hold
+   * the user's write lock.
+   *
+   * @param username The owner of the entries.
+   * @param vault The opened {@link VaultStore.UserVault} of the user.
+   * @param names The names of the entries about to be written.
+   * @throws IOException If the current values cannot be read.
+   */
+  private static void preserve(
+      String username, VaultStore.UserVault vault, Collection<String> names) throws IOException {
+    VaultSnapshot pending = snapshot;
+    if (pending != null) pending.preserve(username, vault, names);
+  }
+
+  /**
+   * Writes a consistent point-in-time archive of every user to the snapshot directory while
+   * sessions keep reading and writing. Once the snapshot is published, each stripe is locked in
+   * turn only to wait for the writes that started before it, then users are archived one at a time
+   * under their read lock, writers of users not archived yet preserving the values they replace.
+   *
+   * @return The {@link VaultSnapshot.Summary} of the snapshot.
+   * @throws PassSecureException If the client is not local, snapshots are disabled, another
+   *     snapshot is running, or the archive cannot be written.
+   */
+  public VaultSnapshot.Summary snapshotVault() throws PassSecureException {
+    if (!isLocal || snapshotDirectory == null) {
+      throw new PassSecureException(PassSecureException.Type.UNAUTHORIZED);
+    }
+    if (!snapshotLock.tryLock()) {
+      throw new PassSecureException(PassSecureException.Type.SNAPSHOT_IN_PROGRESS);
+    }
+
+    VaultSnapshot started = null;
+    try {
+      String name =
+          "vault-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+      started = new VaultSnapshot(snapshotDirectory.resolve(name + ".zip"));
+      snapshot = started;
+      for (ReentrantReadWriteLock stripe : locks) {
+        stripe.writeLock().lock();
+        stripe.writeLock().unlock();
+      }
+
+      for (String user : store.listUsers()) {
+        if (started.isExcluded(user)) continue;
+
+        String credential;
+        SortedMap<String, String> values = new TreeMap<>();
+        Lock lock = getLock(user).readLock();
+        lock.lock();
+        try {
+          credential = readUser(user, values);
+          started.restore(user, values);
+        } finally {
+          lock.unlock();
+        }
+
+        if (credential != null) started.write(user, credential, values);
+      }
+
+      VaultSnapshot.Summary summary = started.finish();
+      started = null;
+      return summary;
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      snapshot = null;
+      if (started != null) started.abort();
+      snapshotLock.unlock();
+    }
+  }
+
+  /**
+   * Reads the credential hash and every entry of a user straight from the store. Must hold the
+   * user's lock.
+   *
+   * @param username The user to read.
+   * @param values Receives the entries of the user, by name.
+   * @return The credential hash of the user, or null if it does not exist.
+   * @throws IOException If the user cannot be read.
+   */
+  private static String readUser(String username, Map<String, String> values) throws IOException {
+    String credential = store.getCredential(username);
+    if (credential == null) return null;
+
+    VaultStore.UserVault userVault = store.open(username);
+    List<String> names = new ArrayList<>(userVault.listEntries());
+    List<String> current = userVault.getEntries(names);
+    for (int i = 0; i < names.size(); ++i) {
+      if (current.get(i) != null) values.put(names.get(i), current.get(i));
+    }
+    return credential;
+  }
+
+  /**
+   * Records a mutation in the replication log, if this server is a primary. Must hold the user's
+   * write lock.
+   *
+   * @param operation The {@link ReplicationLog.Operation} applied.
+   * @param username The user concerned.
+   * @param name The name of the entry, null for {@code REGISTER}.
+   * @param value The credential hash or the value of the entry, null for {@code REMOVE}.
+   */
+  private static void replicate(
+      ReplicationLog.Operation operation, String username, String name, String value) {
+    if (replicationLog != null) replicationLog.append(operation, username, name, value);
+  }
+
+  /**
+   * Opens the replication log for a follower.
+   *
+   * @param key The replication key sent by the follower.
+   * @return The {@link ReplicationLog} of the server.
+   * @throws PassSecureException If the server is not a primary or the key is wrong.
+   */
+  public static ReplicationLog openReplication(String key) throws PassSecureException {
+    if (replicationLog == null
+        || key == null
+        || !MessageDigest.isEqual(replicationKey, key.getBytes(StandardCharsets.UTF_8))) {
+      throw new PassSecureException(PassSecureException.Type.UNAUTHORIZED);
+    }
+    return replicationLog;
+  }
+
+  /**
+   * Sends every user of the vault to a follower, user by user under their read lock. The dump is
+   * not a point-in-time copy: the follower replays the mutations recorded after {@code sequence} on
+   * top of it, which brings every entry to its latest state.
+   *
+   * @param sequence The sequence number of the replication log read before the dump started.
+   * @param sink The {@link ReplicationLog.Sink} sending the records to the follower.
+   * @throws IOException If the vault cannot be read or the records cannot be sent.
+   */
+  public static void dumpVault(long sequence, ReplicationLog.Sink sink) throws IOException {
+    for (String user : store.listUsers()) {
+      String credential;
+      Map<String, String> values = new TreeMap<>();
+      Lock lock = getLock(user).readLock();
+      lock.lock();
+      try {
+        credential = readUser(user, values);
+      } finally {
+        lock.unlock();
+      }
+      if (credential == null) continue;
+
+      sink.accept(
+          new ReplicationLog.Record(
+              sequence, ReplicationLog.Operation.REGISTER, user, null, credential));
+      for (Map.Entry<String, String> entry : values.entrySet()) {
+        sink.accept(
+            new ReplicationLog.Record(
+                sequence, ReplicationLog.Operation.PUT, user, entry.getKey(), entry.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Applies a mutation received from the primary, keeping the cache, indexes, filters and change
+   * logs up to date as a local write would.
+   *
+   * @param record The {@link ReplicationLog.Record} to apply.
+   * @throws PassSecureException If a name of the record is invalid.
+   * @throws IOException If the mutation cannot be written.
+   */
+  public static void applyRecord(ReplicationLog.Record record)
+      throws PassSecureException, IOException {
+    String username = record.username();
+    checkName(username);
+    if (record.operation() != ReplicationLog.Operation.REGISTER) checkName(record.name());
+
+    Lock lock = getLock(username).writeLock();
+    lock.lock();
+    try {
+      switch (record.operation()) {
+        case REGISTER -> {
+          // An existing user takes the credential of the primary, which may have been upgraded
+          if (store.createUser(username, record.value())) registered(username, record.value());
+          else if (!record.value().equals(store.getCredential(username))) {
+            store.setCredential(username, record.value());
+            cacheCredential(username, record.value());
+          }
+        }
+        case PUT -> {
+          VaultStore.UserVault userVault = store.open(username);
+          preserve(username, userVault, List.of(record.name()));
+          try {
+            userVault.putEntry(record.name(), record.value());
+          } catch (IOException e) {
+            cache.remove(username, record.name());
+            throw e;
+          }
+
+          cache.put(username, record.name(), record.value());
+          updateEntryIndex(username, record.name(), true);
+          addToEntryFilter(username, record.name());
+          getChangeLog(username).record(record.name(), false);
+        }
+        case REMOVE -> {
+          VaultStore.UserVault userVault = store.open(username);
+          preserve(username, userVault, List.of(record.name()));
+          if (!userVault.removeEntry(record.name())) return;
+
+          cache.remove(username, record.name());
+          updateEntryIndex(username, record.name(), false);
+          getChangeLog(username).record(record.name(), true);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Lists the names of the entries of a user straight from the store, so that a follower can drop
+   * the entries missing from a dump.
+   *
+   * @param username The owner of the entries.
+   * @return The names of the entries, in no particular order.
+   * @throws IOException If the vault cannot be read.
+   */
+  public static Collection<String> listEntries(String username) throws IOException {
+    Lock lock = getLock(username).readLock();
+    lock.lock();
+    try {
+      return store.open(username).listEntries();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Makes this server a primary, recording its mutations for followers.
+   *
+   * @param key The key followers must present, or null to disable replication.
+   */
+  public static void setReplicationKey(String key) {
+    replicationKey = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+    replicationLog = key == null ? null : new ReplicationLog(INITIAL_VERSION);
+  }
+
+  /**
+   * Makes this server a node of a cluster, serving only the users the ring assigns to it.
+   *
+   * @param clusterRing The {@link HashRing} of the cluster.
+   * @param address The address of this node in the ring, as {@code host:port}.
+   */
+  public static void setCluster(HashRing clusterRing, String address) {
+    ring = clusterRing;
+    node = address;
+  }
+
+  /**
+   * Makes this server a read-only follower of a primary.
+   *
+   * @param address The address of the primary, as {@code host:port}, given to clients whose writes
+   *     are rejected.
+   */
+  public static void setPrimary(String address) {
+    primary = address;
+  }
+
+  /**
+   * Gets the primary this server follows.
+   *
+   * @return The address of the primary, or null if this server accepts writes.
+   */
+  public static String getPrimary() {
+    return primary;
+  }
+
+  /**
+   * Sets the hasher of the credentials of the users.
+   *
+   * @param credentialHasher The {@link CredentialHasher} to use.
+   */
+  public static void setHasher(CredentialHasher credentialHasher) {
+    hasher = credentialHasher;
+  }
+
+  /**
+   * Gets the hasher of the credentials of the users.
+   *
+   * @return The {@link CredentialHasher} in use.
+   */
+  public static CredentialHasher getHasher() {
+    return hasher;
+  }
+
+  /**
+   * Sets the cache of the credentials of the users.
+   *
+   * @param credentialCache The {@link CredentialCache} to use.
+   */
+  public static void setCredentialCache(CredentialCache credentialCache) {
+    credentials = credentialCache;
+  }
+
+  /**
+   * Gets the cache of the credentials of the users.
+   *
+   * @return The {@link CredentialCache} in use.
+   */
+  public static CredentialCache getCredentialCache() {
+    return credentials;
+  }
+
+  /**
+   * Sets the rate limits of the sessions.
+   *
+   * @param byAddress The {@link RateLimiter} of the client addresses, or null for no limit.
+   * @param byUser The {@link RateLimiter} of the logged-in users, or null for no limit.
+   */
+  public static void setRateLimiters(RateLimiter byAddress, RateLimiter byUser) {
+    addressLimiter = byAddress;
+    userLimiter = byUser;
+  }
+
+  /**
+   * Gets the amount of commands shed by the rate limit of the client addresses.
+   *
+   * @return The amount of shed commands, {@code 0} if there is no limit.
+   */
+  public static long getShedByAddress() {
+    return addressLimiter != null ? addressLimiter.getShed() : 0;
+  }
+
+  /**
+   * Gets the amount of commands shed by the rate limit of the logged-in users.
+   *
+   * @return The amount of shed commands, {@code 0} if there is no limit.
+   */
+  public static long getShedByUser() {
+    return userLimiter != null ? userLimiter.getShed() : 0;
+  }
+
+  /**
+   * Sets the directory receiving the archives of {@code SNAPSHOT}.
+   *
+   * @param directory The directory of the archives, or null to disable snapshots.
+   */
+  public static void setSnapshotDirectory(Path directory) {
+    snapshotDirectory = directory;
+  }
+
+  /**
+   * Retrieves the change log of a user, creating it on first access. Versions start from the time
+   * the server started, so that they keep increasing across restarts.
+   *
+   * @param username The owner of the vault.
+   * @return The {@link ChangeLog} of the user.
+   */
+  private static ChangeLog getChangeLog(String username) {
+    return changeLogs.computeIfAbsent(username, key -> new ChangeLog(INITIAL_VERSION));
+  }
+
+  /**
+   * Lists the names of the entries of the user's vault, one page at a time. Names are served from a
+   * sorted in-memory index built on first use, so listing never scans the store again.
+   *
+   * @param prefix Only names starting with this prefix are listed, may be empty.
+   * @param cursor The cursor returned with the previous page, or null for the first page.
+   * @param limit The maximum amount of names in the page.
+   * @return The requested {@link Page}.
+   * @throws PassSecureException If the user is not logged in or the vault cannot be read.
+   */
+  public Page listVaultEntries(String prefix, String cursor, int limit) throws PassSecureException {
+    NavigableSet<String> index = getEntryIndex(getLoggedInUser(), vault);
+    Iterator<String> names =
+        (cursor != null && cursor.compareTo(prefix) >= 0
+                ? index.tailSet(cursor, false)
+                : index.tailSet(prefix, true))
+            .iterator();
+
+    List<String> page = new ArrayList<>(limit);
+    while (names.hasNext()) {
+      String name = names.next();
+      if (!name.startsWith(prefix)) break;
+
+      if (page.size() == limit) return new Page(page, page.getLast());
+      page.add(name);
+    }
+
+    return new Page(page, null);
+  }
+
+  /**
+   * Retrieves the sorted index of the entry names of a user's vault, building it from the store on
+   * first access.
+   *
+   * @param username The owner of the entries.
+   * @param vault The opened {@link VaultStore.UserVault} of the user.
+   * @return The index of the user's entries.
+   * @throws PassSecureException If the vault cannot be read.
+   */
+  private static NavigableSet<String> getEntryIndex(String username, VaultStore.UserVault vault)
+      throws PassSecureException {
+    NavigableSet<String> index = entryIndexes.get(username);
+    if (index != null) return index;
+
+    // The read lock keeps writers out until the index is published, so none of their updates is
+    // missed
+    NavigableSet<String> listed = new ConcurrentSkipListSet<>();
+    Lock lock = getLock(username).readLock();
+    lock.lock();
+    try {
+      listed.addAll(vault.listEntries());
+      index = entryIndexes.putIfAbsent(username, listed);
+      return index == null ? listed : index;
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Keeps the entry index of a user up to date after a write. Indexes that were not built yet are
+   * left alone, they will be built from the store when first needed.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the written entry.
+   * @param exists Whether the entry exists after the write.
+   */
+  private static void updateEntryIndex(String username, String name, boolean exists) {
+    NavigableSet<String> index = entryIndexes.get(username);
+    if (index == null) return;
+
+    if (exists) index.add(name);
+    else index.remove(name);
+  }
+
+  /**
+   * Checks if an entry of the user's vault may exist, without touching the store once the user's
+   * entry filter is built.
+   *
+   * @param name The name of the entry.
+   * @return False if the entry definitely does not exist.
+   * @throws PassSecureException If the user's entries cannot be listed to build the filter.
+   */
+  private boolean mightContainEntry(String name) throws PassSecureException {
+    return getEntryFilter(username, vault).mightContain(name);
+  }
+
+  /**
+   * Retrieves the Bloom filter of the entry names of a user's vault, building it on first access
+   * from the entry index if it is loaded, or from the store otherwise.
+   *
+   * @param username The owner of the entries.
+   * @param vault The opened {@link VaultStore.UserVault} of the user.
+   * @return The entry filter of the user.
+   * @throws PassSecureException If the user's entries cannot be listed.
+   */
+  private static BloomFilter getEntryFilter(String username, VaultStore.UserVault vault)
+      throws PassSecureException {
+    BloomFilter filter = entryFilters.get(username);
+    if (filter != null) return filter;
 
-    if (entry.toFile().exists() && !overwrite) {
-      throw new PassSecureException(PassSecureException.Type.ENTRY_ALREADY_EXISTS);
+    // The read lock keeps writers out until the filter is published, so none of their names is
+    // missed
+    Lock lock = getLock(username).readLock();
+    lock.lock();
+    try {
+      NavigableSet<String> index = entryIndexes.get(username);
+      Collection<String> names = index != null ? index : vault.listEntries();
+
+      BloomFilter built =
+          new BloomFilter(
+              Math.max(2L * names.size(), MIN_ENTRY_FILTER_CAPACITY), FILTER_FALSE_POSITIVE_RATE);
+      for (String name : names) built.add(name);
+
+      filter = entryFilters.putIfAbsent(username, built);
+      return filter == null ? built : filter;
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
     }
+  }
 
+  /**
+   * Records a written entry in a user's entry filter. A filter holding more names than it was sized
+   * for is dropped, to be rebuilt larger on next access. Must hold the user's write lock.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the written entry.
+   */
+  private static void addToEntryFilter(String username, String name) {
+    BloomFilter filter = entryFilters.get(username);
+    if (filter == null) return;
+
+    filter.add(name);
+    if (filter.isSaturated()) entryFilters.remove(username, filter);
+  }
+
+  /**
+   * Builds the Bloom filter of the usernames of the store, so that logins of unknown users are
+   * rejected without touching the store. Must be called once the store is set and before sessions
+   * start.
+   *
+   * @return The usernames found in the store.
+   * @throws IOException If the users cannot be listed.
+   */
+  public static Collection<String> loadUserFilter() throws IOException {
+    Collection<String> usernames = store.listUsers();
+    BloomFilter filter =
+        new BloomFilter(
+            Math.max(2L * usernames.size(), MIN_USER_FILTER_CAPACITY), FILTER_FALSE_POSITIVE_RATE);
+    for (String name : usernames) filter.add(name);
+
+    userFilter = filter;
+    return usernames;
+  }
+
+  /**
+   * Loads the data of a user into memory ahead of its first session: caches its credential, builds
+   * its entry index and filter and, if requested, fills the cache with its entries while the cache
+   * has room. Runs on warm-up threads, concurrently with sessions.
+   *
+   * @param username The user to warm up.
+   * @param withEntries Whether the entries themselves are cached.
+   * @return The amount of entries of the user.
+   * @throws PassSecureException If the user's data cannot be read.
+   */
+  public static int warmUp(String username, boolean withEntries) throws PassSecureException {
+    VaultStore.UserVault vault;
+    try {
+      vault = store.open(username);
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    }
+
+    Lock lock = getLock(username).readLock();
+    NavigableSet<String> index = getEntryIndex(username, vault);
+    getEntryFilter(username, vault);
+
+    lock.lock();
     try {
-      File.write(entry, password);
+      String storedHash = store.getCredential(username);
+      if (storedHash != null) credentials.put(username, CredentialHasher.parse(storedHash));
+      if (!withEntries || index.isEmpty() || cache.isFull()) return index.size();
+
+      List<String> names = new ArrayList<>(index);
+      List<String> values = vault.getEntries(names);
+      for (int i = 0; i < names.size(); ++i) {
+        if (values.get(i) != null) cache.fill(username, names.get(i), values.get(i));
+      }
+      return names.size();
     } catch (IOException e) {
       throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
     }
   }
 
   /**
-   * Sets the path to the vault for the server.
+   * Sets the cache of vault entries shared by every session.
+   *
+   * @param vaultCache The {@link VaultCache} to use.
+   */
+  public static void setCache(VaultCache vaultCache) {
+    cache = vaultCache;
+  }
+
+  /**
+   * Gets the cache of vault entries shared by every session.
+   *
+   * @return The {@link VaultCache} in use.
+   */
+  public static VaultCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Sets the store holding the users and their vaults.
    *
-   * @param vault The {@link Path} to use as the vault directory.
+   * @param vaultStore The {@link VaultStore} to use.
    */
-  public static void setVault(Path vault) {
-    vaultPath = vault;
+  public static void setStore(VaultStore vaultStore) {
+    store = vaultStore;
   }
 
   /**
-   * Registers a new user by creating a vault directory and storing the hashed password.
+   * Registers a new user by creating its vault and storing the hashed password, then logs it in
+   * without hashing the password again.
    *
    * @param username The username of the new user.
    * @param password The password for the new user.
-   * @throws PassSecureException If the user already exists, the vault directory cannot be created,
-   *     or an error occurs during the operation.
+   * @throws PassSecureException If a user is already logged in, the user already exists, the vault
+   *     cannot be created, or an error occurs during the operation.
    */
   public void register(String username, String password) throws PassSecureException {
-    if (getVaultForUser(username).toFile().isDirectory()) {
-      throw new PassSecureException(PassSecureException.Type.USER_ALREADY_EXISTS);
+    if (isLoggedIn) {
+      throw new PassSecureException(PassSecureException.Type.USER_ALREADY_CONNECTED);
     }
 
-    checkForPathTraversal(vaultPath, getVaultForUser(username));
+    checkName(username);
+    checkOwner(username);
+    checkWritable();
 
-    if (!getVaultForUser(username).toFile().mkdirs()) {
-      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    // Hashing is costly, so an existing user is rejected before; the filter spares new ones a read
+    BloomFilter filter = userFilter;
+    if (filter == null || filter.mightContain(username)) {
+      Lock lock = getLock(username).readLock();
+      lock.lock();
+      try {
+        if (store.getCredential(username) != null) {
+          throw new PassSecureException(PassSecureException.Type.USER_ALREADY_EXISTS);
+        }
+      } catch (IOException e) {
+        throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+      } finally {
+        lock.unlock();
+      }
     }
 
+    String passwordHash = hasher.hash(password);
+
+    // A registration of the same user may have won the race while hashing
+    Lock lock = getLock(username).writeLock();
+    lock.lock();
     try {
-      String passwordHash = Cipher.hash(password);
-      File.write(getVaultForUser(username).resolve(username + HASH_EXTENSION), passwordHash);
-    } catch (GeneralSecurityException | IOException e) {
+      if (!store.createUser(username, passwordHash)) {
+        throw new PassSecureException(PassSecureException.Type.USER_ALREADY_EXISTS);
+      }
+
+      registered(username, passwordHash);
+    } catch (IOException e) {
       throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
     }
 
-    login(username, password);
+    startSession(username);
+  }
+
+  /**
+   * Publishes a user created in the store: leaves it out of a running snapshot, adds it to the user
+   * filter and records it for followers. Must hold the user's write lock.
+   *
+   * @param username The new user.
+   * @param credential The credential hash of the user.
+   */
+  private static void registered(String username, String credential) {
+    VaultSnapshot pending = snapshot;
+    if (pending != null) pending.exclude(username);
+
+    // Saturation only raises the false positive rate, never hides a user
+    BloomFilter filter = userFilter;
+    if (filter != null) filter.add(username);
+
+    cacheCredential(username, credential);
+    replicate(ReplicationLog.Operation.REGISTER, username, null, credential);
+  }
+
+  /**
+   * Caches the credential of a user just written to the store. Must hold the user's write lock.
+   *
+   * @param username The user.
+   * @param credential The credential written.
+   */
+  private static void cacheCredential(String username, String credential) {
+    try {
+      credentials.put(username, CredentialHasher.parse(credential));
+    } catch (PassSecureException e) {
+      // A corrupted credential is read again, and rejected, at the next login
+      credentials.invalidate(username);
+    }
   }
 
   /**
@@ -184,20 +1205,60 @@ public class State {
       throw new PassSecureException(PassSecureException.Type.USER_ALREADY_CONNECTED);
     }
 
-    if (!getVaultForUser(username).toFile().isDirectory()) {
+    checkName(username);
+    checkOwner(username);
+
+    BloomFilter filter = userFilter;
+    if (filter != null && !filter.mightContain(username)) {
       throw new PassSecureException(PassSecureException.Type.INVALID_CREDENTIALS);
     }
 
-    checkForPathTraversal(vaultPath, getVaultForUser(username));
-
+    // A registration of the same user in progress holds the write lock until its credential exists
+    Lock lock = getLock(username).readLock();
+    CredentialHasher.Credential credential;
+    lock.lock();
     try {
-      String passwordHash = Cipher.hash(password);
-      String storedHash = File.read(getVaultForUser(username).resolve(username + HASH_EXTENSION));
+      credential = credentials.get(username);
+      if (credential == null) {
+        String storedHash = store.getCredential(username);
+        if (storedHash != null) {
+          credential = CredentialHasher.parse(storedHash);
+          credentials.put(username, credential);
+        }
+      }
+    } catch (IOException e) {
+      throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
+    } finally {
+      lock.unlock();
+    }
 
-      if (!storedHash.equals(passwordHash)) {
+    if (credential == null) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_CREDENTIALS);
+    }
+    if (!credentials.isVerified(username, credential, password)) {
+      if (!hasher.verify(password, credential)) {
         throw new PassSecureException(PassSecureException.Type.INVALID_CREDENTIALS);
       }
-    } catch (GeneralSecurityException | IOException e) {
+      credentials.remember(username, credential, password);
+    }
+    if (primary == null && hasher.needsUpgrade(credential)) {
+      upgradeCredential(username, password, credential);
+    }
+
+    startSession(username);
+  }
+
+  /**
+   * Starts the session of an authenticated user.
+   *
+   * @param username The authenticated user.
+   * @throws PassSecureException If the vault of the user cannot be opened.
+   */
+  private void startSession(String username) throws PassSecureException {
+    // Resolve the user's vault once for the whole session
+    try {
+      this.vault = store.open(username);
+    } catch (IOException e) {
       throw new PassSecureException(PassSecureException.Type.SERVER_ERROR);
     }
 
@@ -205,9 +1266,43 @@ public class State {
     this.username = username;
   }
 
+  /**
+   * Hashes the password of a user again with the current parameters, once it is known to be valid.
+   * The upgrade is skipped if the hashing pool is saturated or the credential changed meanwhile;
+   * the next login tries again.
+   *
+   * @param username The user whose credential is upgraded.
+   * @param password The password of the user, just verified.
+   * @param credential The credential the password was verified against.
+   */
+  private static void upgradeCredential(
+      String username, String password, CredentialHasher.Credential credential) {
+    String passwordHash;
+    try {
+      passwordHash = hasher.hash(password);
+    } catch (PassSecureException e) {
+      return;
+    }
+
+    Lock lock = getLock(username).writeLock();
+    lock.lock();
+    try {
+      if (!credential.encoded().equals(store.getCredential(username))) return;
+
+      store.setCredential(username, passwordHash);
+      cacheCredential(username, passwordHash);
+      replicate(ReplicationLog.Operation.REGISTER, username, null, passwordHash);
+    } catch (IOException e) {
+      System.out.println("[Server] cannot upgrade the credential of " + username + ": " + e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
   /** Disconnects the currently logged-in user. */
   public void disconnect() {
     this.isLoggedIn = false;
     this.username = null;
+    this.vault = null;
   }
 }
@@ -0,0 +1,194 @@
+/**
+ * The {@code VaultCache} class implements a server-wide, size bounded cache of encrypted vault
+ * entries keyed by user and entry name. The least recently used entries are evicted once the total
+ * size exceeds the configured capacity.
+ */
+package ch.heigvd.dai.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class VaultCache {
+
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private final long capacity;
+  private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private long size;
+
+  /**
+   * The key of a cached entry.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   */
+  private record Key(String username, String name) {}
+
+  /**
+   * Constructs a new {@code VaultCache}.
+   *
+   * @param capacity The maximum total size of the cached entries in bytes, 0 disables the cache.
+   */
+  public VaultCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Retrieves a cached entry and records a hit or a miss.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   * @return The cached value, or null if the entry is not cached.
+   */
+  public String get(String username, String name) {
+    if (capacity <= 0) return null;
+
+    String value;
+    lock.lock();
+    try {
+      value = entries.get(new Key(username, name));
+    } finally {
+      lock.unlock();
+    }
+
+    if (value == null) misses.increment();
+    else hits.increment();
+    return value;
+  }
+
+  /**
+   * Caches an entry after it was written, replacing any previous value.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   * @param value The value of the entry.
+   */
+  public void put(String username, String name, String value) {
+    put(username, name, value, true);
+  }
+
+  /**
+   * Caches an entry after it was read from disk, unless a write cached a value in the meantime.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   * @param value The value read from disk.
+   */
+  public void fill(String username, String name, String value) {
+    put(username, name, value, false);
+  }
+
+  /**
+   * Removes an entry from the cache.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   */
+  public void remove(String username, String name) {
+    if (capacity <= 0) return;
+
+    lock.lock();
+    try {
+      String previous = entries.remove(new Key(username, name));
+      if (previous != null) size -= weight(username, name, previous);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Inserts an entry and evicts the least recently used ones until the cache fits its capacity.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   * @param value The value of the entry.
+   * @param replace Whether an existing value is replaced.
+   */
+  private void put(String username, String name, String value, boolean replace) {
+    if (capacity <= 0) return;
+
+    // Entries too large to be worth keeping would only flush the rest of the cache
+    long weight = weight(username, name, value);
+    if (weight > capacity / 8) {
+      remove(username, name);
+      return;
+    }
+
+    lock.lock();
+    try {
+      Key key = new Key(username, name);
+      String previous = replace ? entries.put(key, value) : entries.putIfAbsent(key, value);
+      if (previous != null && !replace) return;
+      if (previous != null) size -= weight(username, name, previous);
+      size += weight;
+
+      Iterator<Map.Entry<Key, String>> eldest = entries.entrySet().iterator();
+      while (size > capacity && eldest.hasNext()) {
+        Map.Entry<Key, String> entry = eldest.next();
+        size -= weight(entry.getKey().username(), entry.getKey().name(), entry.getValue());
+        eldest.remove();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Estimates the memory used by a cached entry.
+   *
+   * @param username The owner of the entry.
+   * @param name The name of the entry.
+   * @param value The value of the entry.
+   * @return The estimated size in bytes.
+   */
+  private static long weight(String username, String name, String value) {
+    return ENTRY_OVERHEAD + username.length() + name.length() + value.length();
+  }
+
+  /**
+   * Gets the amount of lookups that found their entry.
+   *
+   * @return The amount of cache hits.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the amount of lookups that did not find their entry.
+   *
+   * @return The amount of cache misses.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Checks if the cache reached its capacity, in which case any new entry evicts older ones.
+   *
+   * @return True if the cache is full or disabled.
+   */
+  public boolean isFull() {
+    return getSize() >= capacity;
+  }
+
+  /**
+   * Gets the estimated size of the cached entries.
+   *
+   * @return The size in bytes.
+   */
+  public long getSize() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
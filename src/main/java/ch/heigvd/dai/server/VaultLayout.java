@@ -0,0 +1,96 @@
+/**
+ * The {@code VaultLayout} enum defines where the directory of each user lives inside the vault. The
+ * {@code flat} layout keeps every user directly in the vault directory, while the {@code sharded}
+ * layout spreads them over two levels of directories derived from a hash of the username, so that
+ * no directory grows past a few entries even with hundreds of thousands of users.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.CryptoEngine;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+public enum VaultLayout {
+  /** Every user directory is a direct child of the vault directory. */
+  FLAT(0),
+  /** User directories are stored as {@code ab/cd/<username>}, from a hash of the username. */
+  SHARDED(2);
+
+  private static final String CREDENTIAL_EXTENSION = ".hs";
+
+  private final int depth;
+
+  /**
+   * Constructs a layout.
+   *
+   * @param depth The amount of shard directories above each user directory.
+   */
+  VaultLayout(int depth) {
+    this.depth = depth;
+  }
+
+  /**
+   * Resolves the directory of a user.
+   *
+   * @param root The vault directory.
+   * @param username The username of the user.
+   * @return The {@link Path} of the user's directory.
+   */
+  public Path resolve(Path root, String username) {
+    if (depth == 0) return root.resolve(username);
+
+    String hash = hash(username);
+    Path shard = root;
+    for (int i = 0; i < depth; ++i) shard = shard.resolve(hash.substring(2 * i, 2 * i + 2));
+    return shard.resolve(username);
+  }
+
+  /**
+   * Lists the users stored in a vault with this layout. A user is a directory at the expected depth
+   * holding its credential file.
+   *
+   * @param root The vault directory.
+   * @return The usernames, in no particular order.
+   * @throws IOException If the vault cannot be read.
+   */
+  public List<String> listUsers(Path root) throws IOException {
+    List<String> usernames = new ArrayList<>();
+    listUsers(root, depth, usernames);
+    return usernames;
+  }
+
+  /**
+   * Lists the users below a directory.
+   *
+   * @param directory The directory to scan.
+   * @param depth The amount of shard levels left above the user directories.
+   * @param usernames The list receiving the usernames.
+   * @throws IOException If a directory cannot be read.
+   */
+  private void listUsers(Path directory, int depth, List<String> usernames) throws IOException {
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(directory, Files::isDirectory)) {
+      for (Path child : children) {
+        String name = child.getFileName().toString();
+        if (depth > 0) listUsers(child, depth - 1, usernames);
+        else if (Files.exists(child.resolve(name + CREDENTIAL_EXTENSION))) usernames.add(name);
+      }
+    }
+  }
+
+  /**
+   * Hashes a username to pick its shards.
+   *
+   * @param username The username to hash.
+   * @return The hexadecimal SHA-256 of the username.
+   */
+  private static String hash(String username) {
+    return HexFormat.of()
+        .formatHex(CryptoEngine.sha256().digest(username.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * The {@code VaultSnapshot} class captures a consistent point-in-time copy of every user of the
+ * vault while sessions keep writing. It works as a copy-on-write at the entry level: once the
+ * snapshot has started, a write to a user that was not archived yet first preserves the previous
+ * value of the entries it changes, and the archive uses these preserved values instead of the
+ * current ones. Users registered after the start are left out.
+ *
+ * <p>Preserved values of a user are guarded by the lock of that user in {@link State}: writers
+ * preserve values under the write lock, the snapshot archives the user under the read lock.
+ *
+ * <p>The archive is a zip file laid out like a flat file vault, one directory per user holding its
+ * credential hash and one file per entry, so that unzipping it restores a vault usable with the
+ * {@code file} storage.
+ */
+package ch.heigvd.dai.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class VaultSnapshot {
+
+  private static final String HASH_EXTENSION = ".hs";
+  private static final String ENTRY_EXTENSION = ".ps";
+
+  private final ConcurrentHashMap<String, Map<String, String>> preserved =
+      new ConcurrentHashMap<>();
+  private final Set<String> archived = ConcurrentHashMap.newKeySet();
+  private final Set<String> excluded = ConcurrentHashMap.newKeySet();
+  private final Path file;
+  private final Path temporary;
+  private final ZipOutputStream zip;
+  private int users;
+  private long entries;
+
+  /**
+   * The outcome of a snapshot.
+   *
+   * @param file The archive holding the snapshot.
+   * @param users The amount of archived users.
+   * @param entries The amount of archived entries.
+   * @param bytes The size of the archive in bytes.
+   */
+  public record Summary(Path file, int users, long entries, long bytes) {}
+
+  /**
+   * Starts a new snapshot. The archive is written next to its final location and only moved there
+   * once complete, so that an interrupted snapshot never leaves a partial archive behind.
+   *
+   * @param file The archive to write.
+   * @throws IOException If the archive cannot be created.
+   */
+  public VaultSnapshot(Path file) throws IOException {
+    this.file = file;
+    this.temporary =
+        Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+    this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)));
+  }
+
+  /**
+   * Preserves the current value of entries about to be written, unless the user is already archived
+   * or left out of the snapshot. Only the first write to an entry preserves its value. Must hold
+   * the user's write lock.
+   *
+   * @param username The owner of the entries.
+   * @param vault The opened {@link VaultStore.UserVault} of the user.
+   * @param names The names of the entries about to be written.
+   * @throws IOException If the current values cannot be read.
+   */
+  public void preserve(String username, VaultStore.UserVault vault, Collection<String> names)
+      throws IOException {
+    if (archived.contains(username) || excluded.contains(username)) return;
+
+    Map<String, String> values = preserved.computeIfAbsent(username, key -> new HashMap<>());
+    for (String name : names) {
+      if (!values.containsKey(name)) values.put(name, vault.getEntry(name));
+    }
+  }
+
+  /**
+   * Leaves a user registered after the start out of the snapshot. Must hold the user's write lock.
+   *
+   * @param username The new user.
+   */
+  public void exclude(String username) {
+    excluded.add(username);
+  }
+
+  /**
+   * Checks if a user was registered after the start and is left out of the snapshot.
+   *
+   * @param username The user.
+   * @return True if the user must not be archived.
+   */
+  public boolean isExcluded(String username) {
+    return excluded.contains(username);
+  }
+
+  /**
+   * Restores the values preserved for a user and marks it as archived, so that later writes no
+   * longer preserve anything. Must hold the user's read lock.
+   *
+   * @param username The user being archived.
+   * @param current The current entries of the user, by name, updated to their values at the start.
+   */
+  public void restore(String username, SortedMap<String, String> current) {
+    Map<String, String> values = preserved.remove(username);
+    if (values != null) {
+      values.forEach(
+          (name, value) -> {
+            if (value == null) current.remove(name);
+            else current.put(name, value);
+          });
+    }
+    archived.add(username);
+  }
+
+  /**
+   * Appends an archived user to the archive. Runs without holding any lock.
+   *
+   * @param username The user.
+   * @param credential The credential hash of the user.
+   * @param values The entries of the user at the start of the snapshot, by name.
+   * @throws IOException If the archive cannot be written.
+   */
+  public void write(String username, String credential, Map<String, String> values)
+      throws IOException {
+    writeFile(username + "/", null);
+    writeFile(username + "/" + username + HASH_EXTENSION, credential);
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      writeFile(username + "/" + entry.getKey() + ENTRY_EXTENSION, entry.getValue());
+    }
+
+    ++users;
+    entries += values.size();
+  }
+
+  /**
+   * Writes a single file or directory to the archive.
+   *
+   * @param name The path of the file in the archive, ending with a slash for a directory.
+   * @param content The content of the file, null for a directory.
+   * @throws IOException If the archive cannot be written.
+   */
+  private void writeFile(String name, String content) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    if (content != null) zip.write(content.getBytes(StandardCharsets.UTF_8));
+    zip.closeEntry();
+  }
+
+  /**
+   * Completes the archive and moves it to its final location.
+   *
+   * @return The {@link Summary} of the snapshot.
+   * @throws IOException If the archive cannot be completed.
+   */
+  public Summary finish() throws IOException {
+    zip.close();
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    return new Summary(file, users, entries, Files.size(file));
+  }
+
+  /** Discards an incomplete archive. */
+  public void abort() {
+    try {
+      zip.close();
+      Files.deleteIfExists(temporary);
+    } catch (IOException e) {
+      System.out.println("[Server] cannot discard " + temporary + ": " + e);
+    }
+  }
+}
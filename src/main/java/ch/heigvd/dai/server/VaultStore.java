@@ -0,0 +1,131 @@
+/**
+ * The {@code VaultStore} interface abstracts where users, their credential hashes and their vault
+ * entries are kept. Implementations only store and retrieve data: access control and the validation
+ * of user and entry names are left to {@link State}.
+ */
+package ch.heigvd.dai.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface VaultStore {
+
+  /**
+   * Creates a user with its credential hash.
+   *
+   * @param username The username of the new user.
+   * @param credential The credential hash of the user.
+   * @return True if the user was created, false if it already exists.
+   * @throws IOException If the user cannot be created.
+   */
+  boolean createUser(String username, String credential) throws IOException;
+
+  /**
+   * Lists the users of the vault.
+   *
+   * @return The usernames, in no particular order.
+   * @throws IOException If the vault cannot be read.
+   */
+  Collection<String> listUsers() throws IOException;
+
+  /**
+   * Retrieves the credential hash of a user.
+   *
+   * @param username The username of the user.
+   * @return The credential hash, or null if the user does not exist.
+   * @throws IOException If the credential cannot be read.
+   */
+  String getCredential(String username) throws IOException;
+
+  /**
+   * Replaces the credential hash of an existing user.
+   *
+   * @param username The username of the user.
+   * @param credential The new credential hash of the user.
+   * @throws IOException If the credential cannot be written.
+   */
+  void setCredential(String username, String credential) throws IOException;
+
+  /**
+   * Opens the vault of an existing user. The returned handle resolves the location of the user's
+   * entries once, so that entry operations do no per-command lookup of the user.
+   *
+   * @param username The owner of the vault.
+   * @return The {@link UserVault} of the user.
+   * @throws IOException If the vault cannot be opened.
+   */
+  UserVault open(String username) throws IOException;
+
+  /** The entries of a single user, as opened by {@link #open(String)}. */
+  interface UserVault {
+
+    /**
+     * Retrieves an entry.
+     *
+     * @param name The name of the entry.
+     * @return The value of the entry, or null if it does not exist.
+     * @throws IOException If the entry cannot be read.
+     */
+    String getEntry(String name) throws IOException;
+
+    /**
+     * Checks if an entry exists.
+     *
+     * @param name The name of the entry.
+     * @return True if the entry exists.
+     * @throws IOException If the storage cannot be read.
+     */
+    boolean containsEntry(String name) throws IOException;
+
+    /**
+     * Writes an entry, replacing any previous value.
+     *
+     * @param name The name of the entry.
+     * @param value The value of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    void putEntry(String name, String value) throws IOException;
+
+    /**
+     * Removes an entry.
+     *
+     * @param name The name of the entry.
+     * @return True if the entry existed.
+     * @throws IOException If the entry cannot be removed.
+     */
+    boolean removeEntry(String name) throws IOException;
+
+    /**
+     * Lists the names of the entries.
+     *
+     * @return The names of the entries, in no particular order.
+     * @throws IOException If the storage cannot be read.
+     */
+    Collection<String> listEntries() throws IOException;
+
+    /**
+     * Retrieves several entries.
+     *
+     * @param names The names of the entries.
+     * @return The value of each entry in the same order, null for the missing ones.
+     * @throws IOException If the entries cannot be read.
+     */
+    default List<String> getEntries(List<String> names) throws IOException {
+      List<String> values = new ArrayList<>(names.size());
+      for (String name : names) values.add(getEntry(name));
+      return values;
+    }
+
+    /**
+     * Writes several entries as a transaction: if this method fails, none of the entries was
+     * changed.
+     *
+     * @param entries The entries to write, by name.
+     * @throws IOException If the entries cannot be written.
+     */
+    void putEntries(Map<String, String> entries) throws IOException;
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * The {@code Warmup} class loads the vault into memory in the background right after the server
+ * starts, so that the first session of each user does not pay for cold directory lookups and reads.
+ * Users are split among the threads of a fork-join pool while the server already accepts
+ * connections.
+ */
+package ch.heigvd.dai.server;
+
+import ch.heigvd.dai.PassSecureException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Warmup {
+
+  private static final int USERS_PER_TASK = 64;
+
+  /** The amounts of data loaded by the warm-up. */
+  public enum Mode {
+    /** No warm-up, everything is loaded on first use. */
+    NONE,
+    /** Credentials, entry indexes and entry filters. */
+    INDEX,
+    /** Everything {@code index} loads, plus the entries themselves while the cache has room. */
+    ENTRIES
+  }
+
+  private final List<String> usernames;
+  private final boolean withEntries;
+  private final AtomicInteger warmedUsers = new AtomicInteger();
+  private final AtomicLong warmedEntries = new AtomicLong();
+  private final AtomicInteger failedUsers = new AtomicInteger();
+  private final int progressStep;
+
+  /**
+   * Constructs a new {@code Warmup}.
+   *
+   * @param usernames The users to warm up.
+   * @param withEntries Whether the entries themselves are cached.
+   */
+  public Warmup(Collection<String> usernames, boolean withEntries) {
+    this.usernames = new ArrayList<>(usernames);
+    this.withEntries = withEntries;
+    this.progressStep = Math.max(this.usernames.size() / 10, 1);
+  }
+
+  /** Starts the warm-up on a new fork-join pool and returns immediately. */
+  public void start() {
+    ForkJoinPool pool = new ForkJoinPool();
+    pool.execute(
+        () -> {
+          try {
+            long start = System.nanoTime();
+            System.out.println("[Server] Warm-up of " + usernames.size() + " users started");
+
+            new Task(0, usernames.size()).invoke();
+
+            System.out.println(
+                "[Server] Warm-up done in "
+                    + (System.nanoTime() - start) / 1_000_000
+                    + " ms: "
+                    + warmedUsers.get()
+                    + " users, "
+                    + warmedEntries.get()
+                    + " entries, "
+                    + failedUsers.get()
+                    + " failures");
+          } finally {
+            // Release the pool's threads even if a task failed unexpectedly
+            pool.shutdown();
+          }
+        });
+  }
+
+  /**
+   * Warms up a single user and reports progress.
+   *
+   * @param username The user to warm up.
+   */
+  private void warmUp(String username) {
+    try {
+      warmedEntries.addAndGet(State.warmUp(username, withEntries));
+    } catch (PassSecureException e) {
+      failedUsers.incrementAndGet();
+    }
+
+    int warmed = warmedUsers.incrementAndGet();
+    if (warmed % progressStep == 0) {
+      System.out.println("[Server] Warm-up: " + warmed + "/" + usernames.size() + " users");
+    }
+  }
+
+  /** Warms up a range of users, splitting it among the pool until ranges are small enough. */
+  private class Task extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+
+    /**
+     * Constructs a task.
+     *
+     * @param from The index of the first user of the range, inclusive.
+     * @param to The index of the last user of the range, exclusive.
+     */
+    private Task(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= USERS_PER_TASK) {
+        for (int i = from; i < to; ++i) warmUp(usernames.get(i));
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new Task(from, middle), new Task(middle, to));
+    }
+  }
+}
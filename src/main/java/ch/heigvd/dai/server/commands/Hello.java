@@ -0,0 +1,42 @@
+/**
+ * The {@code Hello} class handles the protocol negotiation on the server side. It validates the
+ * requested wire format so that the connection can switch to it once acknowledged.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.State;
+
+public class Hello {
+
+  /**
+   * Processes a "HELLO" command by resolving the protocol requested by the client.
+   *
+   * @param state The current {@link State} of the server, representing the session and user data.
+   * @param command The {@link Command} object containing the negotiation details. It must have a
+   *     type {@code Command.Type.HELLO} and the following required argument:
+   *     <ul>
+   *       <li><b>protocol</b>: The wire format to use, {@code text} or {@code binary}.
+   *     </ul>
+   *
+   * @return The negotiated {@link Command.Protocol}. The caller acknowledges it with the current
+   *     protocol before switching.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, or the requested protocol is missing or unknown.
+   */
+  public static Command.Protocol hello(State state, Command command) throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.HELLO) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Extract and validate the requested protocol
+    Command.Protocol protocol = Command.Protocol.fromName(command.getString("protocol"));
+    if (protocol == null) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    return protocol;
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * The {@code ListEntries} class handles the enumeration of the entries of a user's vault on the
+ * server side. It validates the paging parameters and fetches a page of names from the server
+ * state.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.State;
+
+public class ListEntries {
+
+  private static final int DEFAULT_LIMIT = 100;
+  private static final int MAX_LIMIT = 1000;
+
+  /**
+   * Lists a page of entry names of the user's vault based on the given command.
+   *
+   * @param state The current {@link State} of the server, representing the user's session and data.
+   * @param command The {@link Command} object containing the paging parameters. It must have a type
+   *     {@code Command.Type.LIST} and can contain the following optional arguments:
+   *     <ul>
+   *       <li><b>prefix</b>: Only names starting with this prefix are listed.
+   *       <li><b>limit</b>: The maximum amount of names in the page (default 100, at most 1000).
+   *       <li><b>cursor</b>: The cursor returned with the previous page.
+   *     </ul>
+   *
+   * @return The requested {@link State.Page}.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, the limit is out of range, or the user is not logged in.
+   */
+  public static State.Page list(State state, Command command) throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.LIST) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Extract and validate the optional arguments
+    String prefix = command.getString("prefix");
+    String cursor = command.getString("cursor");
+    int limit = command.getString("limit") == null ? DEFAULT_LIMIT : command.getInt("limit");
+    if (limit <= 0 || limit > MAX_LIMIT) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Retrieve the page from the vault in the server's state
+    return state.listVaultEntries(prefix == null ? "" : prefix, cursor, limit);
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * The {@code MAdd} class handles the logic for adding several entries to a user's password vault on
+ * the server side. It validates the input and updates the server state as a single transaction.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.State;
+import java.util.List;
+import java.util.Map;
+
+public class MAdd {
+
+  private static final int MAX_ENTRIES = 1000;
+
+  /**
+   * Processes a "MADD" command by adding several entries to the user's password vault. Either all
+   * entries are written or none of them.
+   *
+   * @param state The current {@link State} of the server, representing the user's session and data.
+   * @param command The {@link Command} object containing the entries to add. It must have a type
+   *     {@code Command.Type.MADD} and the following required argument:
+   *     <ul>
+   *       <li><b>entries</b>: The comma separated {@code name:password} pairs to add (between 1 and
+   *           1000 pairs).
+   *     </ul>
+   *     Optionally, it can contain:
+   *     <ul>
+   *       <li><b>overwrite</b>: A boolean indicating whether to overwrite existing entries with the
+   *           same names.
+   *     </ul>
+   *
+   * @return The result of each entry, in the requested order. The batch was applied only if none of
+   *     them holds an error.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, the entries are missing or too many, or the user is not logged in.
+   */
+  public static List<State.EntryResult> madd(State state, Command command)
+      throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.MADD) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Extract and validate the required arguments
+    Map<String, String> entries = command.getEntries("entries");
+    boolean overwrite = command.getBoolean("overwrite");
+    if (entries.isEmpty() || entries.size() > MAX_ENTRIES) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Add the entries to the vault in the server's state
+    return state.addVaultEntries(entries, overwrite);
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * The {@code MGet} class handles the retrieval of several password entries from the user's vault on
+ * the server side. It validates the input and fetches the requested entries from the server state
+ * in a single pass.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.State;
+import java.util.List;
+
+public class MGet {
+
+  private static final int MAX_ENTRIES = 1000;
+
+  /**
+   * Retrieves several password entries from the user's vault based on the given command.
+   *
+   * @param state The current {@link State} of the server, representing the user's session and data.
+   * @param command The {@link Command} object containing the details of the entries to retrieve. It
+   *     must have a type {@code Command.Type.MGET} and the following required argument:
+   *     <ul>
+   *       <li><b>names</b>: The comma separated names of the entries to retrieve (between 1 and
+   *           1000 names).
+   *     </ul>
+   *
+   * @return The result of each entry, in the requested order. Missing or invalid entries are
+   *     reported individually.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, the names are missing or too many, or the user is not logged in.
+   */
+  public static List<State.EntryResult> mget(State state, Command command)
+      throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.MGET) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Extract and validate the required argument
+    List<String> names = command.getList("names");
+    if (names.isEmpty() || names.size() > MAX_ENTRIES) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Retrieve the entries from the vault in the server's state
+    return state.getVaultEntries(names);
+  }
+}
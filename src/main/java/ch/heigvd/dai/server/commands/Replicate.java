@@ -0,0 +1,48 @@
+/**
+ * The {@code Replicate} class handles the subscription of a follower to the mutations of the
+ * primary on the server side. It validates the follower's key and position before the connection is
+ * turned into a replication stream.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.ReplicationLog;
+import ch.heigvd.dai.server.State;
+
+public class Replicate {
+
+  /**
+   * Opens the replication log for a follower based on the given command.
+   *
+   * @param state The current {@link State} of the server, representing the session and user data.
+   * @param command The {@link Command} object containing the follower's key and position. It must
+   *     have a type {@code Command.Type.REPLICATE} and contain the following argument:
+   *     <ul>
+   *       <li><b>key</b>: The replication key shared by the primary and its followers.
+   *     </ul>
+   *     and can contain the following optional argument:
+   *     <ul>
+   *       <li><b>since</b>: The sequence number of the last mutation applied by the follower,
+   *           omitted for a follower that needs a dump of the vault.
+   *     </ul>
+   *
+   * @return The {@link ReplicationLog} of the primary.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, the position is negative, the server is not a primary or the key is wrong.
+   */
+  public static ReplicationLog replicate(State state, Command command) throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.REPLICATE) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Validate the optional position
+    if (command.getLong("since") < 0) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Check the key against the server's state
+    return State.openReplication(command.getString("key"));
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * The {@code Snapshot} class handles the online backup of the vault on the server side. It
+ * validates the request and has the server state archive every user while sessions keep running.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.State;
+import ch.heigvd.dai.server.VaultSnapshot;
+import java.util.HashMap;
+
+public class Snapshot {
+
+  /**
+   * Writes a consistent archive of the vault based on the given command.
+   *
+   * @param state The current {@link State} of the server, representing the session and user data.
+   * @param command The {@link Command} object requesting the snapshot. It must have a type {@code
+   *     Command.Type.SNAPSHOT}.
+   * @return The file name of the archive and the amounts of archived users, entries and bytes, by
+   *     name.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, the client is not local, snapshots are disabled, another snapshot is running or
+   *     the archive cannot be written.
+   */
+  public static HashMap<String, String> snapshot(State state, Command command)
+      throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.SNAPSHOT) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Archive the vault through the server's state
+    VaultSnapshot.Summary summary = state.snapshotVault();
+
+    HashMap<String, String> arguments = new HashMap<>();
+    arguments.put("file", summary.file().getFileName().toString());
+    arguments.put("users", String.valueOf(summary.users()));
+    arguments.put("entries", String.valueOf(summary.entries()));
+    arguments.put("bytes", String.valueOf(summary.bytes()));
+    return arguments;
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * The {@code Stats} class exposes the server counters on the server side. It gathers the metrics of
+ * the shared server components so that operators can observe their effectiveness.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.CredentialCache;
+import ch.heigvd.dai.server.State;
+import ch.heigvd.dai.server.VaultCache;
+import java.util.HashMap;
+
+public class Stats {
+
+  /**
+   * Collects the server counters.
+   *
+   * @param state The current {@link State} of the server, representing the session and user data.
+   * @param command The {@link Command} object requesting the counters. It must have a type {@code
+   *     Command.Type.STATS}.
+   * @return The counters, by name.
+   * @throws PassSecureException If the {@code state} or {@code command} is null or the command type
+   *     is invalid.
+   */
+  public static HashMap<String, String> stats(State state, Command command)
+      throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.STATS) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Gather the counters of the shared components
+    HashMap<String, String> counters = new HashMap<>();
+    VaultCache cache = State.getCache();
+    counters.put("cacheHits", String.valueOf(cache.getHits()));
+    counters.put("cacheMisses", String.valueOf(cache.getMisses()));
+    counters.put("cacheBytes", String.valueOf(cache.getSize()));
+    counters.put("shedByAddress", String.valueOf(State.getShedByAddress()));
+    counters.put("shedByUser", String.valueOf(State.getShedByUser()));
+    counters.put("hashRejected", String.valueOf(State.getHasher().getRejected()));
+    CredentialCache credentials = State.getCredentialCache();
+    counters.put("credentialHits", String.valueOf(credentials.getHits()));
+    counters.put("credentialMisses", String.valueOf(credentials.getMisses()));
+    counters.put("verifiedLogins", String.valueOf(credentials.getVerifiedLogins()));
+
+    return counters;
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * The {@code Sync} class handles the incremental synchronisation of a mirror of the user's vault on
+ * the server side. It validates the version held by the mirror and fetches the changes since that
+ * version from the server state.
+ */
+package ch.heigvd.dai.server.commands;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import ch.heigvd.dai.server.State;
+
+public class Sync {
+
+  /**
+   * Retrieves the changes of the user's vault based on the given command.
+   *
+   * @param state The current {@link State} of the server, representing the user's session and data.
+   * @param command The {@link Command} object containing the version of the mirror. It must have a
+   *     type {@code Command.Type.SYNC} and can contain the following optional argument:
+   *     <ul>
+   *       <li><b>since</b>: The version returned by the previous synchronisation, omitted for a
+   *           first synchronisation.
+   *     </ul>
+   *
+   * @return The {@link State.Changes} since that version, or a snapshot of the vault.
+   * @throws PassSecureException If the {@code state} or {@code command} is null, the command type
+   *     is invalid, the version is negative, or the user is not logged in.
+   */
+  public static State.Changes sync(State state, Command command) throws PassSecureException {
+    // Validate the state and command objects
+    if (state == null || command == null || command.getType() != Command.Type.SYNC) {
+      throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+    }
+
+    // Extract and validate the optional version
+    long since = command.getLong("since");
+    if (since < 0) throw new PassSecureException(PassSecureException.Type.INVALID_ARGUMENT);
+
+    // Retrieve the changes from the vault in the server's state
+    return state.syncVaultEntries(since);
+  }
+}
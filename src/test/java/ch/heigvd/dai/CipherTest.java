@@ -0,0 +1,115 @@
+/** Tests of {@link Cipher}. */
+package ch.heigvd.dai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class CipherTest {
+
+  private static final byte[] SALT = {
+    (byte) 0xc9, (byte) 0x36, (byte) 0x78, (byte) 0x99,
+    (byte) 0x52, (byte) 0x3e, (byte) 0xea, (byte) 0xf2
+  };
+
+  @AfterEach
+  void resetKeyCache() {
+    Cipher.setKeyCache(new KeyCache(0));
+  }
+
+  @Test
+  void roundTripsEntries() throws GeneralSecurityException {
+    String encrypted = Cipher.encrypt("s3cr3t é", "password");
+
+    assertEquals(1, Base64.getDecoder().decode(encrypted)[0]);
+    assertEquals("s3cr3t é", Cipher.decrypt(encrypted, "password"));
+  }
+
+  @Test
+  void roundTripsBatchesWithCachedKeys() throws GeneralSecurityException {
+    Cipher.setKeyCache(new KeyCache(60));
+    List<String> encrypted = Cipher.encrypt(List.of("first", "second", ""), "password");
+
+    assertNotEquals(encrypted.get(0), encrypted.get(1));
+    assertEquals(List.of("first", "second", ""), Cipher.decrypt(encrypted, "password"));
+
+    Cipher.clearKeys();
+    assertEquals(List.of("first", "second", ""), Cipher.decrypt(encrypted, "password"));
+  }
+
+  @Test
+  void rejectsWrongPassword() throws GeneralSecurityException {
+    String encrypted = Cipher.encrypt("s3cr3t", "password");
+
+    assertThrows(GeneralSecurityException.class, () -> Cipher.decrypt(encrypted, "wrong"));
+  }
+
+  @Test
+  void decryptsLegacyEntries() throws GeneralSecurityException {
+    String encrypted = legacyEncrypt("legacy entry", "password", randomIv());
+
+    assertEquals("legacy entry", Cipher.decrypt(encrypted, "password"));
+  }
+
+  @Test
+  void decryptsLegacyEntriesStartingWithTheVersionByte() throws GeneralSecurityException {
+    // Legacy entries start with a random IV, whose first byte may be the version byte
+    byte[] iv = randomIv();
+    iv[0] = 0x01;
+    String encrypted = legacyEncrypt("legacy entry of 32 bytes, padded", "password", iv);
+
+    assertEquals("legacy entry of 32 bytes, padded", Cipher.decrypt(encrypted, "password"));
+  }
+
+  @Test
+  void decryptsLegacyAndCurrentEntriesInOneBatch() throws GeneralSecurityException {
+    List<String> encrypted =
+        List.of(legacyEncrypt("old", "password", randomIv()), Cipher.encrypt("new", "password"));
+
+    assertEquals(List.of("old", "new"), Cipher.decrypt(encrypted, "password"));
+  }
+
+  private static byte[] randomIv() {
+    byte[] iv = new byte[16];
+    new SecureRandom().nextBytes(iv);
+    return iv;
+  }
+
+  /**
+   * Encrypts a string the way entries were encrypted before ciphertexts were versioned.
+   *
+   * @param content The plain text content to encrypt.
+   * @param password The password used for encryption.
+   * @param iv The initialization vector.
+   * @return The IV and ciphertext, encoded in Base64.
+   * @throws GeneralSecurityException If a security error occurs during encryption.
+   */
+  private static String legacyEncrypt(String content, String password, byte[] iv)
+      throws GeneralSecurityException {
+    PBEParameterSpec parameters = new PBEParameterSpec(SALT, 100_000, new IvParameterSpec(iv));
+    SecretKey key =
+        SecretKeyFactory.getInstance("PBEWithHmacSHA256AndAES_128")
+            .generateSecret(new PBEKeySpec(password.toCharArray()));
+    javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance("PBEWithHmacSHA256AndAES_128");
+    cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, key, parameters);
+    byte[] ciphertext = cipher.doFinal(content.getBytes(StandardCharsets.UTF_8));
+
+    byte[] combined = new byte[iv.length + ciphertext.length];
+    System.arraycopy(iv, 0, combined, 0, iv.length);
+    System.arraycopy(ciphertext, 0, combined, iv.length, ciphertext.length);
+    return Base64.getEncoder().encodeToString(combined);
+  }
+}
@@ -0,0 +1,223 @@
+/** Tests of the binary frames of {@link Command}. */
+package ch.heigvd.dai;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CommandTest {
+
+  private static byte[] encode(Command command) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    command.write(out, Command.Protocol.BINARY);
+    return out.toByteArray();
+  }
+
+  private static Command decode(byte[] frame) throws IOException, PassSecureException {
+    return Command.read(new ByteArrayInputStream(frame), Command.Protocol.BINARY);
+  }
+
+  private static Command command(Command.Type type, Map<String, String> arguments) {
+    return new Command(type, new HashMap<>(arguments));
+  }
+
+  @Test
+  void encodesFrameWithoutArguments() throws IOException {
+    assertArrayEquals(new byte[] {0x01, 0x00}, encode(new Command(Command.Type.PING)));
+  }
+
+  @Test
+  void encodesTextField() throws IOException {
+    byte[] frame = encode(command(Command.Type.GET, Map.of("name", "ab")));
+
+    assertArrayEquals(new byte[] {0x06, 1, 4, 'n', 'a', 'm', 'e', 0, 2, 'a', 'b'}, frame);
+  }
+
+  @Test
+  void encodesLengthsAsVarints() throws IOException, PassSecureException {
+    for (int length : new int[] {127, 128, 300, 16383, 16384, 1024 * 1024}) {
+      String value = "v".repeat(length);
+      byte[] frame = encode(command(Command.Type.GET, Map.of("name", value)));
+
+      // Opcode, count, name length and name, kind, then the varint length of the value
+      int varintLength = length < 128 ? 1 : length < 16384 ? 2 : 3;
+      assertEquals(1 + 1 + 5 + 1 + varintLength + length, frame.length);
+      assertEquals(value, decode(frame).getString("name"));
+    }
+    // 300 is 0b10_0101100: its low seven bits first, with the continuation bit
+    byte[] frame = encode(command(Command.Type.GET, Map.of("name", "v".repeat(300))));
+    assertArrayEquals(new byte[] {(byte) 0xAC, 0x02}, Arrays.copyOfRange(frame, 8, 10));
+  }
+
+  @Test
+  void roundTripsArguments() throws IOException, PassSecureException {
+    Command command =
+        command(
+            Command.Type.ADD, Map.of("name", "entrée", "password", "bm90IGJhc2U2NA==", "n", ""));
+
+    Command decoded = decode(encode(command));
+
+    assertEquals(Command.Type.ADD, decoded.getType());
+    assertEquals(command.getArguments(), decoded.getArguments());
+  }
+
+  @Test
+  void sendsBase64PasswordsAsRawBytes() throws IOException, PassSecureException {
+    byte[] frame = encode(command(Command.Type.ADD, Map.of("password", "AAEC")));
+
+    assertArrayEquals(
+        new byte[] {0x04, 1, 8, 'p', 'a', 's', 's', 'w', 'o', 'r', 'd', 1, 3, 0, 1, 2}, frame);
+    assertEquals("AAEC", decode(frame).getString("password"));
+  }
+
+  @Test
+  void sendsOtherPasswordsAsText() throws IOException, PassSecureException {
+    // Not Base64, not a multiple of four, and a non-canonical padding
+    for (String password : new String[] {"hunter2!", "abc", "AAF="}) {
+      byte[] frame = encode(command(Command.Type.ADD, Map.of("password", password)));
+
+      assertEquals(0, frame[11]);
+      assertEquals(password, decode(frame).getString("password"));
+    }
+  }
+
+  @Test
+  void leavesLocalArgumentsOut() throws IOException, PassSecureException {
+    Command decoded =
+        decode(
+            encode(
+                command(
+                    Command.Type.ADD,
+                    Map.of("name", "a", "encryptionPassword", "k", "decryptionPassword", "k"))));
+
+    assertEquals(Map.of("name", "a"), decoded.getArguments());
+  }
+
+  @Test
+  void readsConsecutiveFrames() throws IOException, PassSecureException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    command(Command.Type.GET, Map.of("name", "a")).write(out, Command.Protocol.BINARY);
+    new Command(Command.Type.PING).write(out, Command.Protocol.BINARY);
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+    assertEquals("a", Command.read(in, Command.Protocol.BINARY).getString("name"));
+    assertEquals(Command.Type.PING, Command.read(in, Command.Protocol.BINARY).getType());
+    assertNull(Command.read(in, Command.Protocol.BINARY));
+  }
+
+  @Test
+  void rejectsTruncatedFrame() throws IOException {
+    byte[] frame = encode(command(Command.Type.GET, Map.of("name", "abc")));
+
+    assertThrows(EOFException.class, () -> decode(Arrays.copyOf(frame, frame.length - 1)));
+  }
+
+  @Test
+  void consumesFrameOfUnknownOpcode() throws IOException, PassSecureException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] {0x7F, 1, 1, 'a', 0, 1, 'b'});
+    new Command(Command.Type.PING).write(out, Command.Protocol.BINARY);
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+    PassSecureException e =
+        assertThrows(PassSecureException.class, () -> Command.read(in, Command.Protocol.BINARY));
+    assertEquals(PassSecureException.Type.INVALID_COMMAND, e.getType());
+    assertEquals(Command.Type.PING, Command.read(in, Command.Protocol.BINARY).getType());
+  }
+
+  @Test
+  void rejectsMalformedVarint() {
+    byte[] frame = {0x01, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80};
+
+    IOException e = assertThrows(IOException.class, () -> decode(frame));
+    assertEquals("Malformed varint", e.getMessage());
+  }
+
+  @Test
+  void acceptsFiveByteVarint() throws IOException, PassSecureException {
+    byte[] frame = {0x01, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x00};
+
+    assertEquals(Command.Type.PING, decode(frame).getType());
+  }
+
+  @Test
+  void rejectsVarintOverflowingInt() {
+    // The fifth byte may only hold the four highest bits of an int
+    byte[] frame = {0x06, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x1F};
+
+    IOException e = assertThrows(IOException.class, () -> decode(frame));
+    assertEquals("Malformed varint", e.getMessage());
+  }
+
+  @Test
+  void rejectsTooManyArguments() {
+    // A frame claiming 2^31 - 1 arguments
+    byte[] frame = {0x06, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+
+    IOException e = assertThrows(IOException.class, () -> decode(frame));
+    assertEquals("Too many arguments", e.getMessage());
+  }
+
+  @Test
+  void acceptsMaximumArguments() throws IOException, PassSecureException {
+    Map<String, String> arguments = new HashMap<>();
+    for (int i = 0; i < 32; ++i) arguments.put("a" + i, "v" + i);
+
+    assertEquals(arguments, decode(encode(command(Command.Type.GET, arguments))).getArguments());
+  }
+
+  @Test
+  void rejectsTooLongFrame() throws IOException {
+    // Fields within their own limit, but five of them exceed the frame limit
+    Map<String, String> arguments = new HashMap<>();
+    for (int i = 0; i < 5; ++i) arguments.put("a" + i, "v".repeat(1024 * 1024));
+    byte[] frame = encode(command(Command.Type.GET, arguments));
+
+    IOException e = assertThrows(IOException.class, () -> decode(frame));
+    assertEquals("Frame too long", e.getMessage());
+    ByteBuffer buffer = ByteBuffer.wrap(frame);
+    assertEquals(
+        "Frame too long",
+        assertThrows(IOException.class, () -> Command.decode(buffer)).getMessage());
+  }
+
+  @Test
+  void rejectsTooLongField() {
+    // One argument whose name claims 2 MiB
+    byte[] frame = {0x06, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+
+    IOException e = assertThrows(IOException.class, () -> decode(frame));
+    assertEquals("Field too long", e.getMessage());
+  }
+
+  @Test
+  void decodeWaitsForCompleteFrame() throws IOException, PassSecureException {
+    byte[] frame = encode(command(Command.Type.GET, Map.of("name", "v".repeat(200))));
+    ByteBuffer buffer = ByteBuffer.allocate(frame.length);
+
+    for (int i = 0; i < frame.length; ++i) {
+      buffer.put(frame[i]).flip();
+      Command command = Command.decode(buffer);
+      if (i < frame.length - 1) {
+        assertNull(command);
+        assertEquals(0, buffer.position());
+      } else {
+        assertEquals("v".repeat(200), command.getString("name"));
+        assertFalse(buffer.hasRemaining());
+      }
+      buffer.compact();
+    }
+  }
+}
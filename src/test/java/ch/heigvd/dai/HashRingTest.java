@@ -0,0 +1,78 @@
+/** Tests of {@link HashRing}. */
+package ch.heigvd.dai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class HashRingTest {
+
+  private static final int USERS = 30_000;
+
+  @Test
+  void placesUsersIndependentlyOfNodeOrder() {
+    HashRing ring = HashRing.parse("a:1,b:2,c:3");
+    HashRing reordered = HashRing.parse(" c:3, a:1 ,,b:2");
+
+    for (int i = 0; i < USERS; ++i) {
+      assertEquals(ring.nodeFor("user" + i), reordered.nodeFor("user" + i));
+    }
+    assertEquals(List.of("c:3", "a:1", "b:2"), reordered.getNodes());
+  }
+
+  @Test
+  void balancesUsersAmongNodes() {
+    HashRing ring = HashRing.parse("a:1,b:2,c:3,d:4");
+    Map<String, Integer> owned = new HashMap<>();
+    for (int i = 0; i < USERS; ++i) owned.merge(ring.nodeFor("user" + i), 1, Integer::sum);
+
+    assertEquals(4, owned.size());
+    // 160 virtual nodes per node keep each share close to a quarter
+    for (int count : owned.values()) assertTrue(Math.abs(count - USERS / 4) < USERS / 10);
+  }
+
+  @Test
+  void movesOnlyUsersOfAddedNode() {
+    HashRing ring = HashRing.parse("a:1,b:2,c:3");
+    HashRing grown = HashRing.parse("a:1,b:2,c:3,d:4");
+
+    int moved = 0;
+    for (int i = 0; i < USERS; ++i) {
+      String before = ring.nodeFor("user" + i);
+      String after = grown.nodeFor("user" + i);
+      if (!before.equals(after)) {
+        assertEquals("d:4", after);
+        ++moved;
+      }
+    }
+    assertTrue(Math.abs(moved - USERS / 4) < USERS / 10, moved + " users moved");
+  }
+
+  @Test
+  void singleNodeOwnsEveryone() {
+    HashRing ring = HashRing.parse("solo:9000");
+
+    for (int i = 0; i < 1000; ++i) assertEquals("solo:9000", ring.nodeFor("user" + i));
+  }
+
+  @Test
+  void rejectsEmptyCluster() {
+    assertThrows(IllegalArgumentException.class, () -> HashRing.parse(" , "));
+  }
+
+  @Test
+  void parsesNodeAddresses() {
+    assertEquals("localhost", HashRing.getHost("localhost:1234"));
+    assertEquals(1234, HashRing.getPort("localhost:1234"));
+    assertEquals("[::1]", HashRing.getHost("[::1]:80"));
+    assertEquals(80, HashRing.getPort("[::1]:80"));
+    assertThrows(IllegalArgumentException.class, () -> HashRing.getHost("localhost"));
+    assertThrows(IllegalArgumentException.class, () -> HashRing.getPort(":1234"));
+    assertThrows(IllegalArgumentException.class, () -> HashRing.getPort("host:port"));
+  }
+}
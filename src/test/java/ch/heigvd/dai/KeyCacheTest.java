@@ -0,0 +1,62 @@
+/** Tests of {@link KeyCache}. */
+package ch.heigvd.dai;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.SecretKey;
+import org.junit.jupiter.api.Test;
+
+class KeyCacheTest {
+
+  private static final byte[] SALT = new byte[16];
+
+  @Test
+  void handsOutTheCachedKey() throws GeneralSecurityException {
+    KeyCache cache = new KeyCache(60);
+
+    SecretKey key = cache.get("password", SALT, 256);
+
+    assertSame(key, cache.get("password", SALT, 256));
+    assertNotSame(key, cache.get("other", SALT, 256));
+  }
+
+  @Test
+  void wipesKeysOnClear() throws GeneralSecurityException {
+    KeyCache cache = new KeyCache(60);
+    SecretKey key = cache.get("password", SALT, 256);
+    byte[] encoded = key.getEncoded();
+
+    cache.clear();
+
+    assertTrue(key.isDestroyed());
+    SecretKey derived = cache.get("password", SALT, 256);
+    assertNotSame(key, derived);
+    assertArrayEquals(encoded, derived.getEncoded());
+  }
+
+  @Test
+  void sharesTheSaltOfCachedEncryptionKeys() throws GeneralSecurityException {
+    KeyCache cache = new KeyCache(60);
+
+    KeyCache.EncryptionKey first = cache.forEncryption("password", 16, 256);
+    KeyCache.EncryptionKey second = cache.forEncryption("password", 16, 256);
+
+    assertArrayEquals(first.salt(), second.salt());
+    assertSame(first.key(), second.key());
+  }
+
+  @Test
+  void derivesEveryKeyWithoutCache() throws GeneralSecurityException {
+    KeyCache cache = new KeyCache(0);
+
+    SecretKey key = cache.get("password", SALT, 256);
+
+    assertNotSame(key, cache.get("password", SALT, 256));
+    assertFalse(key.isDestroyed());
+  }
+}
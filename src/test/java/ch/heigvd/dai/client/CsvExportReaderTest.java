@@ -0,0 +1,92 @@
+/** Tests of {@link CsvExportReader}. */
+package ch.heigvd.dai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CsvExportReaderTest {
+
+  private static List<ExportReader.Entry> read(String csv) throws IOException {
+    List<ExportReader.Entry> entries = new ArrayList<>();
+    new CsvExportReader(new StringReader(csv)).read(entries::add);
+    return entries;
+  }
+
+  @Test
+  void readsColumnsByName() throws IOException {
+    List<ExportReader.Entry> entries =
+        read("url,username,password,name\nhttps://a.ch/login,alice,secret,Site A\n");
+
+    assertEquals(
+        List.of(
+            new ExportReader.Entry("line 2", "Site A", "https://a.ch/login", "alice", "secret")),
+        entries);
+  }
+
+  @Test
+  void readsQuotedFields() throws IOException {
+    List<ExportReader.Entry> entries =
+        read("name,password\r\n\"a, b\",\"say \"\"hi\"\"\"\r\n\"\",plain\r\n");
+
+    assertEquals(2, entries.size());
+    assertEquals("a, b", entries.get(0).name());
+    assertEquals("say \"hi\"", entries.get(0).password());
+    assertEquals("", entries.get(1).name());
+    assertEquals("plain", entries.get(1).password());
+  }
+
+  @Test
+  void readsMultiLineFields() throws IOException {
+    List<ExportReader.Entry> entries = read("name,password\n\"first\nsecond\",one\nnext,two\n");
+
+    assertEquals(2, entries.size());
+    assertEquals("first\nsecond", entries.get(0).name());
+    assertEquals("line 2", entries.get(0).location());
+    assertEquals("line 4", entries.get(1).location());
+  }
+
+  @Test
+  void skipsByteOrderMarkAndBlankLines() throws IOException {
+    List<ExportReader.Entry> entries = read("\uFEFFtitle,login_password\n\nsite,pw\n\n");
+
+    assertEquals(List.of(new ExportReader.Entry("line 3", "site", "", "", "pw")), entries);
+  }
+
+  @Test
+  void keepsFirstColumnOfAField() throws IOException {
+    List<ExportReader.Entry> entries = read("name,title,password\nfirst,second,pw\n");
+
+    assertEquals("first", entries.getFirst().name());
+  }
+
+  @Test
+  void fillsMissingColumnsWithEmptyFields() throws IOException {
+    List<ExportReader.Entry> entries = read("name,username,password\nonly\n");
+
+    assertEquals(List.of(new ExportReader.Entry("line 2", "only", "", "", "")), entries);
+  }
+
+  @Test
+  void readsEmptyExport() throws IOException {
+    assertTrue(read("").isEmpty());
+  }
+
+  @Test
+  void rejectsExportWithoutPasswordColumn() {
+    IOException e = assertThrows(IOException.class, () -> read("name,url\na,b\n"));
+    assertEquals("No password column", e.getMessage());
+  }
+
+  @Test
+  void rejectsUnterminatedQuotedField() {
+    IOException e = assertThrows(IOException.class, () -> read("name,password\na,b\nc,\"d\ne\n"));
+    assertEquals("Unterminated quoted field at line 3", e.getMessage());
+  }
+}
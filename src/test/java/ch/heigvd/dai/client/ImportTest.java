@@ -0,0 +1,124 @@
+/** Tests of the naming and batching logic of {@link Import}. */
+package ch.heigvd.dai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ch.heigvd.dai.Cipher;
+import ch.heigvd.dai.Command;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ImportTest {
+
+  private static ExportReader.Entry entry(String name, String url, String username) {
+    return new ExportReader.Entry("line 1", name, url, username, "pw");
+  }
+
+  private static Command nok(String message) {
+    HashMap<String, String> arguments = new HashMap<>();
+    arguments.put("message", message);
+    return new Command(Command.Type.NOK, arguments);
+  }
+
+  @Test
+  void hostOfStripsSchemeCredentialsPortAndPath() {
+    assertEquals(
+        "a.example.ch", Import.hostOf(" https://user:pw@a.example.ch:8443/login?x=1#top "));
+    assertEquals("example.ch", Import.hostOf("example.ch/path"));
+    assertEquals("[::1]", Import.hostOf("http://[::1]/"));
+    assertEquals("", Import.hostOf(""));
+  }
+
+  @Test
+  void sanitizeReplacesReservedCharacters() {
+    assertEquals("a_b_c_d_e_f_g", Import.sanitize("a,b:c/d\\e f\tg"));
+    assertEquals("_option", Import.sanitize("-option"));
+    assertEquals("_", Import.sanitize(""));
+    assertEquals("_..", Import.sanitize(".."));
+    assertEquals("_.", Import.sanitize("."));
+    assertEquals("x__", Import.sanitize("x\u0001\u007f"));
+  }
+
+  @Test
+  void sanitizeLeavesRoomForSuffix() {
+    String name = Import.sanitize("a".repeat(500));
+
+    assertEquals(192, name.length());
+  }
+
+  @Test
+  void nameOfCombinesUsernameAndLabel() {
+    Import importer = new Import();
+
+    assertEquals("alice@Site", importer.nameOf(entry("Site", "https://ignored.ch", "alice")));
+    assertEquals("bob@a.ch", importer.nameOf(entry("", "https://a.ch/login", "bob")));
+    assertEquals("carol", importer.nameOf(entry(" ", "", "carol")));
+    assertEquals("b.ch", importer.nameOf(entry("", "b.ch", "")));
+    assertEquals("My_Bank", importer.nameOf(entry("My Bank", "", " ")));
+  }
+
+  @Test
+  void nameOfDeduplicatesNames() {
+    Import importer = new Import();
+
+    assertEquals("alice@Site", importer.nameOf(entry("Site", "", "alice")));
+    assertEquals("alice@Site~2", importer.nameOf(entry("Site", "", "alice")));
+    assertEquals("alice@Site~3", importer.nameOf(entry("Site", "", "alice")));
+    // A suffixed name taken by the export itself is skipped
+    assertEquals("x~2", importer.nameOf(entry("x~2", "", "")));
+    assertEquals("x", importer.nameOf(entry("x", "", "")));
+    assertEquals("x~3", importer.nameOf(entry("x", "", "")));
+  }
+
+  @Test
+  void encodedLengthMatchesCiphertext() throws Exception {
+    for (String password : List.of("", "a", "ab", "abc", "pässwörd", "x".repeat(1000))) {
+      String encrypted = Cipher.encrypt(password, "key");
+
+      assertEquals(encrypted.length(), Import.encodedLength(password));
+      assertEquals(
+          Cipher.encryptedLength(password.getBytes(StandardCharsets.UTF_8).length),
+          Base64.getDecoder().decode(encrypted).length);
+    }
+  }
+
+  @Test
+  void splitKeepsAcceptedEntriesOfAbortedBatch() {
+    Import.Batch batch = new Import.Batch();
+    batch.add("line 2", "a", "va", 2);
+    batch.add("line 3", "b", "vb", 2);
+    batch.add("line 4", "c", "vc", 2);
+    batch.attempts = 2;
+    List<Import.Failure> rejected = new ArrayList<>();
+
+    Import.Batch retry =
+        Import.split(
+            batch,
+            List.of(
+                new Command(Command.Type.OK), nok("entry_exists"), new Command(Command.Type.OK)),
+            rejected);
+
+    assertEquals(List.of("a", "c"), retry.names);
+    assertEquals(List.of("line 2", "line 4"), retry.locations);
+    assertEquals(List.of("va", "vc"), retry.values);
+    assertEquals(2, retry.attempts);
+    assertEquals(List.of(new Import.Failure("line 3", "b", "entry_exists")), rejected);
+  }
+
+  @Test
+  void splitOfFullyRejectedBatchIsEmpty() {
+    Import.Batch batch = new Import.Batch();
+    batch.add("line 2", "a", "va", 2);
+    List<Import.Failure> rejected = new ArrayList<>();
+
+    Import.Batch retry = Import.split(batch, List.of(nok("invalid_name")), rejected);
+
+    assertEquals(0, retry.size());
+    assertEquals(1, rejected.size());
+    assertEquals("invalid_name", rejected.getFirst().message());
+  }
+}
@@ -0,0 +1,130 @@
+/** Tests of {@link JsonExportReader}. */
+package ch.heigvd.dai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class JsonExportReaderTest {
+
+  private static List<ExportReader.Entry> read(String json) throws IOException {
+    List<ExportReader.Entry> entries = new ArrayList<>();
+    new JsonExportReader(new StringReader(json)).read(entries::add);
+    return entries;
+  }
+
+  @Test
+  void readsArrayOfLogins() throws IOException {
+    List<ExportReader.Entry> entries =
+        read(
+            "[\n"
+                + "  {\"title\": \"Site A\", \"url\": \"https://a.ch\", \"user\": \"alice\","
+                + " \"password\": \"one\"},\n"
+                + "  {\"name\": \"Site B\", \"password\": \"two\", \"port\": 443, \"shared\": true}\n"
+                + "]");
+
+    assertEquals(
+        List.of(
+            new ExportReader.Entry("line 2", "Site A", "https://a.ch", "alice", "one"),
+            new ExportReader.Entry("line 3", "Site B", "", "", "two")),
+        entries);
+  }
+
+  @Test
+  void readsNestedLoginsWithUrisFallback() throws IOException {
+    List<ExportReader.Entry> entries =
+        read(
+            "{\"encrypted\": false, \"items\": [{\"name\": \"Bank\", \"notes\": null,"
+                + " \"login\": {\"username\": \"bob\", \"password\": \"pw\","
+                + " \"uris\": [{\"match\": null, \"uri\": \"https://bank.ch\"},"
+                + " {\"uri\": \"https://other.ch\"}]}}]}");
+
+    assertEquals(
+        List.of(new ExportReader.Entry("line 1", "Bank", "https://bank.ch", "bob", "pw")), entries);
+  }
+
+  @Test
+  void skipsObjectsThatAreNotLogins() throws IOException {
+    List<ExportReader.Entry> entries =
+        read(
+            "[{\"name\": \"Note\", \"notes\": \"text\"},"
+                + " {\"name\": \"Site\", \"password\": \"pw\","
+                + " \"passwordHistory\": [{\"password\": \"old\", \"lastUsedDate\": \"2020\"}]}]");
+
+    assertEquals(List.of(new ExportReader.Entry("line 1", "Site", "", "", "pw")), entries);
+  }
+
+  @Test
+  void readsSingleLogin() throws IOException {
+    List<ExportReader.Entry> entries = read("{\"username\": \"alice\", \"password\": \"pw\"}");
+
+    assertEquals(List.of(new ExportReader.Entry("line 1", "", "", "alice", "pw")), entries);
+  }
+
+  @Test
+  void unescapesStrings() throws IOException {
+    List<ExportReader.Entry> entries =
+        read(
+            "[{\"name\": \"caf\\u00e9 \\\"A\\\"\\/\\\\\", \"password\": \"a\\tb\\nc\\uD83D\\uDE00\"}]");
+
+    assertEquals("café \"A\"/\\", entries.getFirst().name());
+    assertEquals("a\tb\nc\uD83D\uDE00", entries.getFirst().password());
+  }
+
+  @Test
+  void skipsByteOrderMark() throws IOException {
+    List<ExportReader.Entry> entries = read("\uFEFF[{\"name\": \"a\", \"password\": \"b\"}]");
+
+    assertEquals(1, entries.size());
+  }
+
+  @Test
+  void readsEmptyDocument() throws IOException {
+    assertTrue(read("  \n").isEmpty());
+    assertTrue(read("[]").isEmpty());
+  }
+
+  @Test
+  void rejectsMalformedDocuments() {
+    assertEquals(
+        "Expected ',' or ']' at line 2",
+        assertThrows(IOException.class, () -> read("[{\"name\": \"a\", \"password\": \"b\"}\n}"))
+            .getMessage());
+    assertEquals(
+        "Unterminated string at line 1",
+        assertThrows(IOException.class, () -> read("[\"abc")).getMessage());
+    assertEquals(
+        "Invalid unicode escape at line 1",
+        assertThrows(IOException.class, () -> read("[\"\\u12G4\"]")).getMessage());
+    assertEquals(
+        "Unexpected content after the document at line 1",
+        assertThrows(IOException.class, () -> read("[] []")).getMessage());
+  }
+
+  @Test
+  void rejectsDeeplyNestedDocuments() {
+    String json = "[".repeat(100) + "]".repeat(100);
+
+    IOException e = assertThrows(IOException.class, () -> read(json));
+    assertEquals("Document nested too deeply at line 1", e.getMessage());
+  }
+
+  @Test
+  void handsOutLoginsReadBeforeAnError() {
+    List<ExportReader.Entry> entries = new ArrayList<>();
+
+    assertThrows(
+        IOException.class,
+        () ->
+            new JsonExportReader(
+                    new StringReader("[{\"name\": \"a\", \"password\": \"b\"}, {\"name\": "))
+                .read(entries::add));
+    assertEquals(1, entries.size());
+  }
+}
@@ -0,0 +1,70 @@
+/** Tests of {@link BloomFilter}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+  @Test
+  void neverMissesAddedValues() {
+    BloomFilter filter = new BloomFilter(10_000, 0.01);
+    for (int i = 0; i < 10_000; ++i) filter.add("user" + i);
+
+    for (int i = 0; i < 10_000; ++i) assertTrue(filter.mightContain("user" + i));
+  }
+
+  @Test
+  void boundsFalsePositiveRate() {
+    BloomFilter filter = new BloomFilter(10_000, 0.01);
+    for (int i = 0; i < 10_000; ++i) filter.add("user" + i);
+
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; ++i) {
+      if (filter.mightContain("other" + i)) ++falsePositives;
+    }
+    // Twice the configured rate leaves room for the variance of the sample
+    assertTrue(falsePositives < 2_000, falsePositives + " false positives");
+  }
+
+  @Test
+  void emptyFilterContainsNothing() {
+    BloomFilter filter = new BloomFilter(0, 0.01);
+
+    assertFalse(filter.mightContain(""));
+    assertFalse(filter.mightContain("alice"));
+  }
+
+  @Test
+  void reportsSaturation() {
+    BloomFilter filter = new BloomFilter(2, 0.01);
+    filter.add("a");
+    filter.add("b");
+    assertFalse(filter.isSaturated());
+
+    filter.add("c");
+    assertTrue(filter.isSaturated());
+  }
+
+  @Test
+  void addsConcurrently() throws InterruptedException {
+    BloomFilter filter = new BloomFilter(80_000, 0.01);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; ++t) {
+      int offset = t * 10_000;
+      threads.add(
+          Thread.ofPlatform()
+              .start(
+                  () -> {
+                    for (int i = 0; i < 10_000; ++i) filter.add("user" + (offset + i));
+                  }));
+    }
+    for (Thread thread : threads) thread.join();
+
+    for (int i = 0; i < 80_000; ++i) assertTrue(filter.mightContain("user" + i));
+  }
+}
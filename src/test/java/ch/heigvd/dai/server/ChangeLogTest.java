@@ -0,0 +1,48 @@
+/** Tests of {@link ChangeLog}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ChangeLogTest {
+
+  @Test
+  void returnsLastChangeOfEachEntry() {
+    ChangeLog log = new ChangeLog(100);
+    log.record("a", false);
+    log.record("b", false);
+    log.record("a", true);
+
+    Map<String, Boolean> changed = log.since(100);
+
+    assertEquals(103, log.getVersion());
+    assertEquals(List.of("a", "b"), List.copyOf(changed.keySet()));
+    assertEquals(Map.of("a", true, "b", false), changed);
+    assertEquals(Map.of("a", true), log.since(102));
+    assertEquals(Map.of(), log.since(103));
+  }
+
+  @Test
+  void needsSnapshotOutsideTheLog() {
+    ChangeLog log = new ChangeLog(100);
+    log.record("a", false);
+
+    assertNull(log.since(99));
+    assertNull(log.since(102));
+  }
+
+  @Test
+  void dropsOldestChangesOnceFull() {
+    ChangeLog log = new ChangeLog(0);
+    for (int i = 0; i < 1025; ++i) log.record("entry" + i, false);
+
+    assertNull(log.since(0));
+    assertNotNull(log.since(1));
+    assertEquals(1024, log.since(1).size());
+  }
+}
@@ -0,0 +1,98 @@
+/** Tests of {@link CredentialCache}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.heigvd.dai.PassSecureException;
+import org.junit.jupiter.api.Test;
+
+class CredentialCacheTest {
+
+  private static CredentialHasher.Credential credential(String encoded) throws PassSecureException {
+    return CredentialHasher.parse("$pbkdf2-sha512$1000$AAAA$" + encoded);
+  }
+
+  @Test
+  void cachesCredentials() throws PassSecureException {
+    CredentialCache cache = new CredentialCache(4);
+    CredentialHasher.Credential credential = credential("AAAA");
+
+    assertNull(cache.get("alice"));
+    cache.put("alice", credential);
+
+    assertSame(credential, cache.get("alice"));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedCredentials() throws PassSecureException {
+    CredentialCache cache = new CredentialCache(2);
+    cache.put("alice", credential("AAAA"));
+    cache.put("bob", credential("BBBB"));
+    cache.get("alice");
+
+    cache.put("carol", credential("CCCC"));
+
+    assertNull(cache.get("bob"));
+    assertNotNull(cache.get("alice"));
+    assertNotNull(cache.get("carol"));
+  }
+
+  @Test
+  void remembersVerifiedPasswords() throws PassSecureException {
+    CredentialCache cache = new CredentialCache(4);
+    CredentialHasher.Credential credential = credential("AAAA");
+    cache.put("alice", credential);
+
+    assertFalse(cache.isVerified("alice", credential, "password"));
+    cache.remember("alice", credential, "password");
+
+    assertTrue(cache.isVerified("alice", credential, "password"));
+    assertFalse(cache.isVerified("alice", credential, "wrong"));
+    assertEquals(1, cache.getVerifiedLogins());
+  }
+
+  @Test
+  void forgetsPasswordsOfReplacedCredentials() throws PassSecureException {
+    CredentialCache cache = new CredentialCache(4);
+    CredentialHasher.Credential credential = credential("AAAA");
+    cache.put("alice", credential);
+    cache.remember("alice", credential, "password");
+
+    CredentialHasher.Credential replaced = credential("BBBB");
+    cache.put("alice", replaced);
+
+    assertFalse(cache.isVerified("alice", credential, "password"));
+    assertFalse(cache.isVerified("alice", replaced, "password"));
+  }
+
+  @Test
+  void forgetsInvalidatedCredentials() throws PassSecureException {
+    CredentialCache cache = new CredentialCache(4);
+    CredentialHasher.Credential credential = credential("AAAA");
+    cache.put("alice", credential);
+    cache.remember("alice", credential, "password");
+
+    cache.invalidate("alice");
+
+    assertNull(cache.get("alice"));
+    assertFalse(cache.isVerified("alice", credential, "password"));
+  }
+
+  @Test
+  void doesNotCacheWhenDisabled() throws PassSecureException {
+    CredentialCache cache = new CredentialCache(0);
+    CredentialHasher.Credential credential = credential("AAAA");
+    cache.put("alice", credential);
+    cache.remember("alice", credential, "password");
+
+    assertNull(cache.get("alice"));
+    assertFalse(cache.isVerified("alice", credential, "password"));
+  }
+}
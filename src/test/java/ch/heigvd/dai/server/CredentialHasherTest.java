@@ -0,0 +1,61 @@
+/** Tests of {@link CredentialHasher}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.heigvd.dai.Cipher;
+import ch.heigvd.dai.PassSecureException;
+import org.junit.jupiter.api.Test;
+
+class CredentialHasherTest {
+
+  private final CredentialHasher hasher = new CredentialHasher(1_000, 1, 4);
+
+  @Test
+  void verifiesNewCredentials() throws PassSecureException {
+    String encoded = hasher.hash("password");
+    CredentialHasher.Credential credential = CredentialHasher.parse(encoded);
+
+    assertTrue(encoded.startsWith("$pbkdf2-sha512$1000$"));
+    assertFalse(credential.isLegacy());
+    assertTrue(hasher.verify("password", credential));
+    assertFalse(hasher.verify("wrong", credential));
+    assertFalse(hasher.needsUpgrade(credential));
+  }
+
+  @Test
+  void saltsEveryCredential() throws PassSecureException {
+    assertNotEquals(hasher.hash("password"), hasher.hash("password"));
+  }
+
+  @Test
+  void verifiesAndUpgradesLegacyCredentials() throws PassSecureException {
+    CredentialHasher.Credential credential = CredentialHasher.parse(Cipher.hash("password"));
+
+    assertTrue(credential.isLegacy());
+    assertTrue(hasher.verify("password", credential));
+    assertFalse(hasher.verify("wrong", credential));
+    assertTrue(hasher.needsUpgrade(credential));
+  }
+
+  @Test
+  void upgradesCredentialsWithFewerIterations() throws PassSecureException {
+    CredentialHasher.Credential credential =
+        CredentialHasher.parse(new CredentialHasher(500, 1, 1).hash("password"));
+
+    assertEquals(500, credential.iterations());
+    assertTrue(hasher.verify("password", credential));
+    assertTrue(hasher.needsUpgrade(credential));
+  }
+
+  @Test
+  void rejectsCorruptedCredentials() {
+    assertThrows(PassSecureException.class, () -> CredentialHasher.parse("$pbkdf2-sha512$1000$"));
+    assertThrows(
+        PassSecureException.class, () -> CredentialHasher.parse("$pbkdf2-sha512$x$AAAA$AAAA"));
+  }
+}
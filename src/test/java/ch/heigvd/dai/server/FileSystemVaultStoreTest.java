@@ -0,0 +1,77 @@
+/** Tests of {@link FileSystemVaultStore}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileSystemVaultStoreTest {
+
+  @TempDir private Path root;
+
+  private FileSystemVaultStore newStore(VaultLayout layout) {
+    return new FileSystemVaultStore(root, layout, new Durability(Durability.Mode.NONE));
+  }
+
+  private List<String> filesOf(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).sorted().toList();
+    }
+  }
+
+  @Test
+  void leavesNoTemporaryFileAfterWrites() throws IOException {
+    FileSystemVaultStore store = newStore(VaultLayout.FLAT);
+    store.createUser("alice", "hash");
+    VaultStore.UserVault vault = store.open("alice");
+    vault.putEntry("entry", "1");
+    vault.putEntry("entry", "2");
+    store.setCredential("alice", "other");
+
+    assertEquals(List.of("alice.hs", "entry.ps"), filesOf(root.resolve("alice")));
+    assertEquals("2", vault.getEntry("entry"));
+    assertEquals("other", store.getCredential("alice"));
+  }
+
+  @Test
+  void ignoresAndDeletesLeftoverTemporaryFiles() throws IOException {
+    for (VaultLayout layout : List.of(VaultLayout.FLAT, VaultLayout.SHARDED)) {
+      FileSystemVaultStore store = newStore(layout);
+      String username = "user-" + layout;
+      store.createUser(username, "hash");
+      store.open(username).putEntry("entry", "1");
+      // Left by a write interrupted between the creation and the rename of its temporary file
+      Path directory = store.getUserVault(username);
+      Files.writeString(directory.resolve(".pass-secure-123.tmp"), "partial");
+      Files.writeString(directory.resolve(".pass-secure-456.tmp"), "");
+
+      assertEquals(List.of("entry"), List.copyOf(store.open(username).listEntries()));
+      assertTrue(store.listUsers().contains(username));
+
+      newStore(layout).start();
+
+      assertEquals(List.of("entry.ps", username + ".hs"), filesOf(directory));
+      assertEquals("1", store.open(username).getEntry("entry"));
+    }
+  }
+
+  @Test
+  void keepsEntriesNamedLikeTemporaryFiles() throws IOException {
+    FileSystemVaultStore store = newStore(VaultLayout.FLAT);
+    store.createUser("alice", "hash");
+    store.open("alice").putEntry(".pass-secure-1.tmp", "1");
+
+    store.start();
+
+    assertEquals("1", store.open("alice").getEntry(".pass-secure-1.tmp"));
+    assertFalse(store.open("alice").listEntries().isEmpty());
+  }
+}
@@ -0,0 +1,186 @@
+/** Tests of the replay, compaction and segment eviction of {@link LogVaultStore}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogVaultStoreTest {
+
+  @TempDir private Path root;
+
+  private LogVaultStore newStore() {
+    return new LogVaultStore(root, VaultLayout.FLAT, new Durability(Durability.Mode.NONE));
+  }
+
+  private VaultStore.UserVault newUser(LogVaultStore store, String username) throws IOException {
+    assertTrue(store.createUser(username, "credential"));
+    return store.open(username);
+  }
+
+  private Path segmentOf(String username) {
+    return root.resolve(username).resolve(username + ".log");
+  }
+
+  @Test
+  void replaysEntriesAfterRestart() throws IOException {
+    VaultStore.UserVault vault = newUser(newStore(), "alice");
+    vault.putEntries(Map.of("a", "1", "b", "2", "c", "3"));
+    vault.putEntry("a", "4");
+    assertTrue(vault.removeEntry("b"));
+    assertFalse(vault.removeEntry("missing"));
+
+    VaultStore.UserVault replayed = newStore().open("alice");
+
+    assertEquals("4", replayed.getEntry("a"));
+    assertNull(replayed.getEntry("b"));
+    assertEquals("3", replayed.getEntry("c"));
+    assertEquals(Set.of("a", "c"), new HashSet<>(replayed.listEntries()));
+  }
+
+  @Test
+  void truncatesTornRecordOnReplay() throws IOException {
+    newUser(newStore(), "alice").putEntries(Map.of("a", "1", "b", "2"));
+    long intact = Files.size(segmentOf("alice"));
+    // A record cut short by a crash: its header announces more bytes than were written
+    try (FileChannel channel = FileChannel.open(segmentOf("alice"), StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[] {1, 0, 0, 0, 1, 0, 0, 0, 9, 'c'}));
+    }
+
+    VaultStore.UserVault replayed = newStore().open("alice");
+
+    assertEquals(intact, Files.size(segmentOf("alice")));
+    assertEquals(10, Files.size(segmentOf("alice").resolveSibling("alice.log.corrupt")));
+    assertEquals(Set.of("a", "b"), new HashSet<>(replayed.listEntries()));
+    replayed.putEntry("c", "3");
+    assertEquals("3", newStore().open("alice").getEntry("c"));
+  }
+
+  @Test
+  void truncatesCorruptedRecordOnReplay() throws IOException {
+    VaultStore.UserVault vault = newUser(newStore(), "alice");
+    vault.putEntry("a", "1");
+    long intact = Files.size(segmentOf("alice"));
+    vault.putEntry("b", "2");
+    // Flip the last byte of the value of the second record, its CRC no longer matches
+    try (FileChannel channel = FileChannel.open(segmentOf("alice"), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'x'}), Files.size(segmentOf("alice")) - 5);
+    }
+
+    VaultStore.UserVault replayed = newStore().open("alice");
+
+    assertEquals(intact, Files.size(segmentOf("alice")));
+    assertEquals(List.of("a"), replayed.listEntries());
+  }
+
+  @Test
+  void truncatesZeroFilledTailOnReplay() throws IOException {
+    newUser(newStore(), "alice").putEntry("a", "1");
+    long intact = Files.size(segmentOf("alice"));
+    // Blocks allocated by a crash before their data was written read back as zeros
+    try (FileChannel channel = FileChannel.open(segmentOf("alice"), StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.allocate(100));
+    }
+
+    VaultStore.UserVault replayed = newStore().open("alice");
+
+    assertEquals(intact, Files.size(segmentOf("alice")));
+    assertEquals(List.of("a"), replayed.listEntries());
+  }
+
+  @Test
+  void refusesSegmentCorruptedInTheMiddle() throws IOException {
+    VaultStore.UserVault vault = newUser(newStore(), "alice");
+    vault.putEntry("a", "1");
+    vault.putEntry("b", "2");
+    vault.putEntry("c", "3");
+    long length = Files.size(segmentOf("alice"));
+    // Flip the value of the second record, which the third one follows
+    try (FileChannel channel = FileChannel.open(segmentOf("alice"), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'x'}), length / 3 + 10);
+    }
+
+    IOException e = assertThrows(IOException.class, () -> newStore().open("alice"));
+
+    assertTrue(e.getMessage().startsWith("Corrupted record at offset " + length / 3));
+    assertEquals(length, Files.size(segmentOf("alice")));
+    // Repairing the record gives every entry back
+    try (FileChannel channel = FileChannel.open(segmentOf("alice"), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'2'}), length / 3 + 10);
+    }
+    assertEquals("3", newStore().open("alice").getEntry("c"));
+  }
+
+  @Test
+  void compactsDeadRecords() throws IOException {
+    LogVaultStore store = newStore();
+    VaultStore.UserVault vault = newUser(store, "alice");
+    String value = "v".repeat(1000);
+    for (int i = 0; i < 200; ++i) vault.putEntry("e" + i % 10, value + i);
+    vault.removeEntry("e9");
+    long before = Files.size(segmentOf("alice"));
+
+    store.compact();
+
+    assertTrue(Files.size(segmentOf("alice")) < before / 10);
+    assertFalse(Files.exists(segmentOf("alice").resolveSibling("alice.log.compact")));
+    for (int i = 0; i < 9; ++i) assertEquals(value + (190 + i), vault.getEntry("e" + i));
+    assertNull(vault.getEntry("e9"));
+
+    // The compacted segment is the one appended to and replayed
+    vault.putEntry("new", "n");
+    VaultStore.UserVault replayed = newStore().open("alice");
+    assertEquals("n", replayed.getEntry("new"));
+    assertEquals(value + 193, replayed.getEntry("e3"));
+    assertEquals(10, replayed.listEntries().size());
+  }
+
+  @Test
+  void leavesSegmentsWithFewDeadRecords() throws IOException {
+    LogVaultStore store = newStore();
+    VaultStore.UserVault vault = newUser(store, "alice");
+    for (int i = 0; i < 10; ++i) vault.putEntry("e" + i, "v".repeat(100));
+    vault.putEntry("e0", "new");
+    long before = Files.size(segmentOf("alice"));
+
+    store.compact();
+
+    assertEquals(before, Files.size(segmentOf("alice")));
+  }
+
+  @Test
+  void reopensEvictedSegments() throws IOException {
+    LogVaultStore store = newStore();
+    List<VaultStore.UserVault> vaults = new ArrayList<>();
+    for (int i = 0; i < 300; ++i) {
+      VaultStore.UserVault vault = newUser(store, "user" + i);
+      vault.putEntry("entry", "value" + i);
+      vaults.add(vault);
+    }
+
+    // The first segments were closed to open the last ones, their handles reopen them
+    for (int i = 0; i < 300; ++i) {
+      VaultStore.UserVault vault = vaults.get(i);
+      assertEquals("value" + i, vault.getEntry("entry"));
+      vault.putEntry("other", "other" + i);
+      assertEquals(List.of("entry", "other"), vault.listEntries().stream().sorted().toList());
+    }
+    assertEquals("other0", newStore().open("user0").getEntry("other"));
+  }
+}
@@ -0,0 +1,90 @@
+/** Tests of {@link RateLimiter}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+  @Test
+  void allowsBurstThenSheds() {
+    RateLimiter limiter = new RateLimiter(1, 3);
+
+    for (int i = 0; i < 3; ++i) assertEquals(0, limiter.acquire("client"));
+    long delay = limiter.acquire("client");
+
+    assertTrue(delay > 900 && delay <= 1000, "retry after " + delay + " ms");
+    assertEquals(1, limiter.getShed());
+  }
+
+  @Test
+  void defaultsBurstToOneSecondOfCommands() {
+    RateLimiter limiter = new RateLimiter(5, 0);
+
+    for (int i = 0; i < 5; ++i) assertEquals(0, limiter.acquire("client"));
+    assertTrue(limiter.acquire("client") > 0);
+  }
+
+  @Test
+  void allowsAtLeastOneCommandAtLowRates() {
+    RateLimiter limiter = new RateLimiter(0.5, 0);
+
+    assertEquals(0, limiter.acquire("client"));
+    long delay = limiter.acquire("client");
+    assertTrue(delay > 1900 && delay <= 2000, "retry after " + delay + " ms");
+  }
+
+  @Test
+  void keepsKeysApart() {
+    RateLimiter limiter = new RateLimiter(1, 1);
+
+    assertEquals(0, limiter.acquire("alice"));
+    assertTrue(limiter.acquire("alice") > 0);
+    assertEquals(0, limiter.acquire("bob"));
+    assertEquals(1, limiter.getShed());
+  }
+
+  @Test
+  void releasesTokens() {
+    RateLimiter limiter = new RateLimiter(0.001, 2);
+    assertEquals(0, limiter.acquire("client"));
+    assertEquals(0, limiter.acquire("client"));
+
+    limiter.release("client");
+    assertEquals(0, limiter.acquire("client"));
+    assertTrue(limiter.acquire("client") > 0);
+
+    // A release never raises a bucket above its burst
+    limiter.release("other");
+    limiter.release("client");
+    limiter.release("client");
+    limiter.release("client");
+    assertEquals(0, limiter.acquire("client"));
+    assertEquals(0, limiter.acquire("client"));
+    assertTrue(limiter.acquire("client") > 0);
+  }
+
+  @Test
+  void refillsOverTime() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(100, 1);
+    assertEquals(0, limiter.acquire("client"));
+    assertTrue(limiter.acquire("client") > 0);
+
+    Thread.sleep(30);
+
+    assertEquals(0, limiter.acquire("client"));
+  }
+
+  @Test
+  void keepsEmptyBucketsWhenSweeping() {
+    RateLimiter limiter = new RateLimiter(0.001, 1);
+    assertEquals(0, limiter.acquire("victim"));
+
+    // Enough keys to trigger sweeps, which only drop buckets refilled to capacity
+    for (int i = 0; i < (1 << 16) + 10; ++i) limiter.acquire("key" + i);
+
+    assertTrue(limiter.acquire("victim") > 0);
+  }
+}
@@ -0,0 +1,154 @@
+/** Tests of {@link ReplicationLog}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ch.heigvd.dai.Command;
+import ch.heigvd.dai.PassSecureException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ReplicationLogTest {
+
+  private static ReplicationLog.Record record(long sequence, String name, String value) {
+    ReplicationLog.Operation operation =
+        value == null ? ReplicationLog.Operation.REMOVE : ReplicationLog.Operation.PUT;
+    return new ReplicationLog.Record(sequence, operation, "alice", name, value);
+  }
+
+  @Test
+  void returnsRecordsAfterSequence() throws InterruptedException {
+    ReplicationLog log = new ReplicationLog(100);
+    log.append(ReplicationLog.Operation.PUT, "alice", "a", "1");
+    log.append(ReplicationLog.Operation.PUT, "alice", "b", "2");
+    log.append(ReplicationLog.Operation.REMOVE, "alice", "a", null);
+
+    assertEquals(103, log.getSequence());
+    assertEquals(
+        List.of(record(101, "a", "1"), record(102, "b", "2"), record(103, "a", null)),
+        log.since(100, 0));
+    assertEquals(List.of(record(103, "a", null)), log.since(102, 0));
+    assertEquals(List.of(), log.since(103, 0));
+  }
+
+  @Test
+  void needsDumpOutsideTheLog() throws InterruptedException {
+    ReplicationLog log = new ReplicationLog(100);
+    log.append(ReplicationLog.Operation.PUT, "alice", "a", "1");
+
+    assertNull(log.since(99, 0));
+    assertNull(log.since(102, 0));
+  }
+
+  @Test
+  void waitsForNextRecord() throws Exception {
+    ReplicationLog log = new ReplicationLog(0);
+    assertEquals(List.of(), log.since(0, 10));
+
+    CompletableFuture<List<ReplicationLog.Record>> next =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return log.since(0, 10_000);
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    Thread.sleep(50);
+    log.append(ReplicationLog.Operation.PUT, "alice", "a", "1");
+
+    assertEquals(List.of(record(1, "a", "1")), next.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void convertsRecordsToCommandsAndBack() throws PassSecureException {
+    for (ReplicationLog.Record record :
+        List.of(
+            new ReplicationLog.Record(7, ReplicationLog.Operation.REGISTER, "bob", null, "hash"),
+            record(8, "a", "1"),
+            record(9, "a", null))) {
+      assertEquals(record, ReplicationLog.Record.fromCommand(record.toCommand()));
+    }
+
+    assertNull(ReplicationLog.Record.fromCommand(new Command(Command.Type.OK)));
+  }
+
+  @Test
+  void rejectsIncompleteRecords() {
+    for (Map<String, String> arguments :
+        List.of(
+            Map.of("operation", "put", "username", "alice", "name", "a"),
+            Map.of("operation", "remove", "username", "alice"),
+            Map.of("operation", "register", "name", "a", "value", "hash"),
+            Map.of("operation", "rename", "username", "alice", "name", "a"))) {
+      Command command = new Command(Command.Type.OK, new HashMap<>(arguments));
+
+      assertThrows(PassSecureException.class, () -> ReplicationLog.Record.fromCommand(command));
+    }
+  }
+
+  @Test
+  void replaysDumpAndLogOnFollower() throws Exception {
+    CredentialHasher defaultHasher = State.getHasher();
+    InMemoryVaultStore primary = new InMemoryVaultStore();
+    InMemoryVaultStore follower = new InMemoryVaultStore();
+    try {
+      State.setHasher(new CredentialHasher(1_000, 1, 4));
+      State.setStore(primary);
+      State.setReplicationKey("key");
+      ReplicationLog log = State.openReplication("key");
+
+      State session = new State(InetAddress.getLoopbackAddress());
+      session.register("replicated", "password");
+      session.addVaultEntry("kept", "1", false);
+      session.addVaultEntry("removed", "2", false);
+      session.addVaultEntry("overwritten", "3", false);
+
+      // Mutations recorded while the dump runs are replayed on top of it
+      long sequence = log.getSequence();
+      List<ReplicationLog.Record> dump = new ArrayList<>();
+      State.dumpVault(sequence, dump::add);
+      session.removeVaultEntry("removed");
+      session.addVaultEntry("overwritten", "4", true);
+      session.addVaultEntry("added", "5", false);
+      session.disconnect();
+
+      List<ReplicationLog.Record> tail = log.since(sequence, 0);
+      assertEquals(3, tail.size());
+      State.setReplicationKey(null);
+      State.setStore(follower);
+
+      // Applying the tail twice must be harmless, like a follower resuming from an older sequence
+      for (List<ReplicationLog.Record> records : List.of(dump, tail, tail)) {
+        for (ReplicationLog.Record record : records) {
+          State.applyRecord(ReplicationLog.Record.fromCommand(record.toCommand()));
+        }
+      }
+
+      assertEquals(primary.getCredential("replicated"), follower.getCredential("replicated"));
+      VaultStore.UserVault expected = primary.open("replicated");
+      VaultStore.UserVault replicated = follower.open("replicated");
+      assertEquals(new TreeSet<>(expected.listEntries()), new TreeSet<>(replicated.listEntries()));
+      for (String name : List.of("kept", "overwritten", "added")) {
+        assertEquals(expected.getEntry(name), replicated.getEntry(name));
+      }
+      assertEquals("4", replicated.getEntry("overwritten"));
+      assertFalse(replicated.containsEntry("removed"));
+    } finally {
+      State.setReplicationKey(null);
+      State.setHasher(defaultHasher);
+      State.setStore(new FileSystemVaultStore(Path.of("./")));
+    }
+  }
+}
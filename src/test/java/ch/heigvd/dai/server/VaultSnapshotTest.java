@@ -0,0 +1,133 @@
+/** Tests of {@link VaultSnapshot}. */
+package ch.heigvd.dai.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VaultSnapshotTest {
+
+  @TempDir private Path root;
+
+  private static SortedMap<String, String> entriesOf(VaultStore.UserVault vault)
+      throws IOException {
+    SortedMap<String, String> entries = new TreeMap<>();
+    for (String name : vault.listEntries()) entries.put(name, vault.getEntry(name));
+    return entries;
+  }
+
+  private static Map<String, String> read(Path archive) throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        files.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+    return files;
+  }
+
+  @Test
+  void archivesEntriesAsOfTheStart() throws IOException {
+    InMemoryVaultStore store = new InMemoryVaultStore();
+    store.createUser("alice", "hash");
+    VaultStore.UserVault vault = store.open("alice");
+    vault.putEntry("kept", "1");
+    vault.putEntry("overwritten", "2");
+    vault.putEntry("removed", "3");
+    VaultSnapshot snapshot = new VaultSnapshot(root.resolve("snapshot.zip"));
+
+    // Writes after the start preserve the values they replace, once
+    snapshot.preserve("alice", vault, List.of("overwritten", "removed", "added"));
+    vault.putEntry("overwritten", "4");
+    vault.removeEntry("removed");
+    vault.putEntry("added", "5");
+    snapshot.preserve("alice", vault, List.of("overwritten"));
+    vault.putEntry("overwritten", "6");
+
+    SortedMap<String, String> entries = entriesOf(vault);
+    snapshot.restore("alice", entries);
+
+    assertEquals(Map.of("kept", "1", "overwritten", "2", "removed", "3"), entries);
+  }
+
+  @Test
+  void stopsPreservingOnceArchived() throws IOException {
+    InMemoryVaultStore store = new InMemoryVaultStore();
+    store.createUser("alice", "hash");
+    VaultStore.UserVault vault = store.open("alice");
+    vault.putEntry("entry", "1");
+    VaultSnapshot snapshot = new VaultSnapshot(root.resolve("snapshot.zip"));
+    snapshot.restore("alice", entriesOf(vault));
+
+    snapshot.preserve("alice", vault, List.of("entry"));
+    vault.putEntry("entry", "2");
+    SortedMap<String, String> entries = entriesOf(vault);
+    snapshot.restore("alice", entries);
+
+    assertEquals(Map.of("entry", "2"), entries);
+  }
+
+  @Test
+  void excludesUsersRegisteredAfterTheStart() throws IOException {
+    VaultSnapshot snapshot = new VaultSnapshot(root.resolve("snapshot.zip"));
+
+    snapshot.exclude("bob");
+
+    assertTrue(snapshot.isExcluded("bob"));
+    assertFalse(snapshot.isExcluded("alice"));
+    snapshot.abort();
+  }
+
+  @Test
+  void writesArchiveLaidOutLikeFileVault() throws IOException {
+    Path file = root.resolve("snapshot.zip");
+    VaultSnapshot snapshot = new VaultSnapshot(file);
+    snapshot.write("alice", "hash", new TreeMap<>(Map.of("a", "1", "b", "2")));
+    snapshot.write("bob", "other", Map.of());
+
+    VaultSnapshot.Summary summary = snapshot.finish();
+
+    assertEquals(file, summary.file());
+    assertEquals(2, summary.users());
+    assertEquals(2, summary.entries());
+    assertEquals(Files.size(file), summary.bytes());
+    assertEquals(
+        Map.of(
+            "alice/", "",
+            "alice/alice.hs", "hash",
+            "alice/a.ps", "1",
+            "alice/b.ps", "2",
+            "bob/", "",
+            "bob/bob.hs", "other"),
+        read(file));
+    try (Stream<Path> files = Files.list(root)) {
+      assertEquals(List.of(file), files.toList());
+    }
+  }
+
+  @Test
+  void leavesNothingBehindWhenAborted() throws IOException {
+    VaultSnapshot snapshot = new VaultSnapshot(root.resolve("snapshot.zip"));
+    snapshot.write("alice", "hash", Map.of("a", "1"));
+
+    snapshot.abort();
+
+    try (Stream<Path> files = Files.list(root)) {
+      assertEquals(0, files.count());
+    }
+  }
+}